@@ -0,0 +1,114 @@
+package com.bridgephase.store;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures scanning a product and paying a transaction at a
+ * {@link CashRegister} of an inventory of 1000 products.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CashRegisterBenchmark {
+
+	private static final int PRODUCTS = 1000;
+
+	private static final String[] UPCS = new String[PRODUCTS];
+
+	static {
+		for (int p = 0; p < PRODUCTS; p++) {
+			UPCS[p] = "U" + p;
+		}
+	}
+
+	/**
+	 * @param metrics the metrics recorded by the register and its inventory, or
+	 *                null
+	 */
+	private static CashRegister register(final StoreMetrics metrics) {
+		final Product[] products = new Product[PRODUCTS];
+		for (int p = 0; p < PRODUCTS; p++) {
+			// enough stock to never run out while benchmarking
+			products[p] = new Product(UPCS[p], "Product " + p, 0.50, 1.00, Integer.MAX_VALUE / 2);
+		}
+		final Inventory inventory = new Inventory(products);
+		inventory.setMetrics(metrics);
+		final CashRegister register = new CashRegister(inventory);
+		register.setMetrics(metrics);
+		return register;
+	}
+
+	/**
+	 * A register scanning the products of the inventory in turn into one
+	 * transaction per iteration, with or without recording {@link StoreMetrics}
+	 */
+	@State(Scope.Thread)
+	public static class Scanning {
+
+		@Param({ "false", "true" })
+		boolean metrics;
+
+		private CashRegister register;
+
+		private int next;
+
+		@Setup
+		public void setUp() {
+			register = register(metrics ? new StoreMetrics() : null);
+		}
+
+		@Setup(Level.Iteration)
+		public void beginTransaction() {
+			register.cancelTransaction();
+			register.beginTransaction();
+		}
+	}
+
+	/**
+	 * A register with a transaction of {@link #basketSize} products, scanned before
+	 * every invocation, to pay
+	 */
+	@State(Scope.Thread)
+	public static class Paying {
+
+		/**
+		 * The number of distinct products of the transaction
+		 */
+		@Param({ "1", "10", "100" })
+		int basketSize;
+
+		private final CashRegister register = register(null);
+
+		@Setup(Level.Invocation)
+		public void scan() {
+			register.beginTransaction();
+			for (int p = 0; p < basketSize; p++) {
+				register.scan(UPCS[p]);
+			}
+		}
+	}
+
+	@Benchmark
+	public boolean scan(final Scanning scanning) {
+		scanning.next = scanning.next + 1 == PRODUCTS ? 0 : scanning.next + 1;
+		return scanning.register.scan(UPCS[scanning.next]);
+	}
+
+	/**
+	 * Pays a transaction, which adjusts the quantity of each of its products
+	 */
+	@Benchmark
+	public BigDecimal pay(final Paying paying) {
+		return paying.register.pay(paying.register.getTotal());
+	}
+}
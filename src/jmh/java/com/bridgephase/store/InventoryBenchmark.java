@@ -0,0 +1,168 @@
+package com.bridgephase.store;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures {@link Inventory#replenish(java.io.InputStream) replenishing} an
+ * inventory from small and large CSVs and
+ * {@link Inventory#adjustQuantity(String, Integer) adjusting quantities} from
+ * several threads at once. The adjustment throughput is measured from 1 to 64
+ * threads, with and without holding the monitor of the inventory around each
+ * adjustment as the synchronized <code>adjustQuantity</code> of earlier
+ * releases did.
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class InventoryBenchmark {
+
+	/**
+	 * A CSV of {@link #lines} products
+	 */
+	@State(Scope.Benchmark)
+	public static class Csv {
+
+		@Param({ "10", "100000" })
+		int lines;
+
+		private byte[] csv;
+
+		@Setup
+		public void setUp() {
+			final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+			for (int p = 0; p < lines; p++) {
+				csv.append("U").append(p).append(",Product ").append(p).append(",0.50,1.00,").append(p % 100)
+						.append('\n');
+			}
+			this.csv = csv.toString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * An inventory whose quantities are adjusted by all the benchmark threads, of
+	 * {@link #products} products: the fewer the products, the more the threads
+	 * contend for the same product
+	 */
+	@State(Scope.Benchmark)
+	public static class Contended {
+
+		@Param({ "1", "16", "10000" })
+		int products;
+
+		private String[] upcs;
+
+		/**
+		 * Whether each adjustment holds the monitor of the inventory
+		 */
+		@Param({ "false", "true" })
+		boolean monitor;
+
+		private Inventory inventory;
+
+		@Setup
+		public void setUp() {
+			final Product[] stock = new Product[products];
+			upcs = new String[products];
+			for (int p = 0; p < products; p++) {
+				upcs[p] = "U" + p;
+				stock[p] = new Product(upcs[p], "Product " + p, 0.50, 1.00, 1_000_000);
+			}
+			inventory = new Inventory(stock);
+		}
+	}
+
+	/**
+	 * Replenishes a new inventory, so every line of the CSV adds a product
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Inventory replenish(final Csv csv) {
+		final Inventory inventory = new Inventory();
+		inventory.replenish(new ByteArrayInputStream(csv.csv));
+		return inventory;
+	}
+
+	/**
+	 * Adjusts the quantity of a random product up or down by one, so quantities
+	 * stay around their initial value
+	 */
+	private static Optional<Product> adjust(final Contended contended) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final String upc = contended.upcs[random.nextInt(contended.products)];
+		final int delta = random.nextBoolean() ? 1 : -1;
+		if (contended.monitor) {
+			synchronized (contended.inventory) {
+				return contended.inventory.adjustQuantity(upc, delta);
+			}
+		}
+		return contended.inventory.adjustQuantity(upc, delta);
+	}
+
+	@Benchmark
+	@Threads(1)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity1(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(2)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity2(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(4)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity4(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(8)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity8(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(16)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity16(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(32)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity32(final Contended contended) {
+		return adjust(contended);
+	}
+
+	@Benchmark
+	@Threads(64)
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Optional<Product> adjustQuantity64(final Contended contended) {
+		return adjust(contended);
+	}
+}
@@ -0,0 +1,73 @@
+package com.bridgephase.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares a cold start of an inventory of {@link #products} products from a
+ * comma separated file with one from the {@link InventorySnapshot snapshot}
+ * exported from it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InventorySnapshotBenchmark {
+
+	@Param({ "100000", "1000000" })
+	int products;
+
+	private Path directory;
+
+	private Path csv;
+
+	private Path snapshot;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("snapshot-benchmark");
+		final StringBuilder lines = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int p = 0; p < products; p++) {
+			lines.append(100_000_000_000L + p).append(",Product ").append(p).append(",0.50,1.00,").append(p % 1000)
+					.append('\n');
+		}
+		csv = Files.write(directory.resolve("inventory.csv"), lines.toString().getBytes(StandardCharsets.UTF_8));
+		snapshot = directory.resolve("inventory.snapshot");
+		final Inventory inventory = new Inventory();
+		inventory.replenish(csv);
+		inventory.exportSnapshot(snapshot);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(csv);
+		Files.delete(snapshot);
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public Inventory replenishCsv() {
+		final Inventory inventory = new Inventory();
+		inventory.replenish(csv);
+		return inventory;
+	}
+
+	@Benchmark
+	public Inventory importSnapshot() {
+		final Inventory inventory = new Inventory();
+		inventory.importSnapshot(snapshot);
+		return inventory;
+	}
+}
@@ -0,0 +1,180 @@
+package com.bridgephase.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link Inventory#adjustQuantities(Map) logging} the sales of an
+ * inventory whose mutations are written ahead to an
+ * {@link InventoryWriteAheadLog}, and recovering an inventory from a checkpoint
+ * and a log tail of {@link Recovery#deltas} quantity deltas. The sizes of
+ * interest are 1,000,000 products and 10,000,000 deltas; the small sizes are for
+ * quick runs, e.g. <code>-p products=10000 -p deltas=100000</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class InventoryWriteAheadLogBenchmark {
+
+	/**
+	 * @return a CSV of the given number of products, whose UPCs are their numbers
+	 */
+	private static String csv(final int products) {
+		final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int p = 0; p < products; p++) {
+			csv.append(p).append(",Product ").append(p).append(",0.50,1.00,1000000\n");
+		}
+		return csv.toString();
+	}
+
+	private static Set<Path> files(final Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.collect(Collectors.toSet());
+		}
+	}
+
+	private static void delete(final Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * A logged inventory of {@link #products} products and the sales of 10
+	 * products each to log, spread over the products
+	 */
+	@State(Scope.Thread)
+	public static class Logged {
+
+		@Param({ "1000000", "10000" })
+		int products;
+
+		private Path directory;
+
+		private InventoryWriteAheadLog log;
+
+		private Inventory inventory;
+
+		private List<Map<String, Integer>> sales;
+
+		private int next;
+
+		@Setup
+		public void setUp() throws IOException {
+			directory = Files.createTempDirectory("wal-benchmark");
+			log = new InventoryWriteAheadLog(directory);
+			inventory = new Inventory(log);
+			inventory.replenish(new ByteArrayInputStream(csv(products).getBytes(StandardCharsets.UTF_8)));
+			sales = Stream.iterate(0, s -> s + 1).limit(1024).map(s -> {
+				final Map<String, Integer> sale = new HashMap<>();
+				for (int i = 0; i < 10; i++) {
+					sale.put(Integer.toString((int) (((s * 10L + i) * 2654435761L) % products)), -1);
+				}
+				return sale;
+			}).collect(Collectors.toList());
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			log.close();
+			delete(directory);
+		}
+	}
+
+	/**
+	 * A log directory with a checkpoint of {@link #products} products followed by
+	 * {@link #deltas} quantity deltas, logged in sales of 10 products
+	 */
+	@State(Scope.Thread)
+	public static class Recovery {
+
+		@Param({ "1000000", "10000" })
+		int products;
+
+		@Param({ "10000000", "100000" })
+		int deltas;
+
+		private Path directory;
+
+		private Set<Path> files;
+
+		@Setup
+		public void setUp() throws IOException {
+			directory = Files.createTempDirectory("wal-benchmark");
+			try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(directory, Long.MAX_VALUE)) {
+				final Inventory inventory = new Inventory(log);
+				inventory.replenish(new ByteArrayInputStream(csv(products).getBytes(StandardCharsets.UTF_8)));
+				log.checkpoint();
+				final Map<String, Integer> sale = new HashMap<>();
+				for (int d = 0; d < deltas; d++) {
+					sale.put(Integer.toString((int) ((d * 2654435761L) % products)), -1);
+					if (sale.size() == 10 || d == deltas - 1) {
+						inventory.adjustQuantities(sale);
+						sale.clear();
+					}
+				}
+			}
+			files = files(directory);
+		}
+
+		/**
+		 * Deletes the log file that each recovery starts, so that every recovery
+		 * replays the same files
+		 */
+		@TearDown(Level.Invocation)
+		public void deleteNewFiles() throws IOException {
+			for (Path path : files(directory)) {
+				if (!files.contains(path)) {
+					Files.delete(path);
+				}
+			}
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			delete(directory);
+		}
+	}
+
+	/**
+	 * Logs and applies a sale of 10 products, waiting until the log is written
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void adjustQuantities(final Logged logged) {
+		logged.inventory.adjustQuantities(logged.sales.get(logged.next++ & 1023));
+	}
+
+	/**
+	 * Recovers an inventory from the checkpoint and the log tail
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public List<Product> recover(final Recovery recovery) throws IOException {
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(recovery.directory)) {
+			return new Inventory(log).list();
+		}
+	}
+}
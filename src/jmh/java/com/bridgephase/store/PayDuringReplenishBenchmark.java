@@ -0,0 +1,112 @@
+package com.bridgephase.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the latency of a sale at a {@link CashRegister} while another thread
+ * replenishes the inventory from a feed of {@link #rows} products over and
+ * over, with and without an {@link InventoryWriteAheadLog}. Compare the sale
+ * percentiles with those of a run without the replenishing thread, e.g. with
+ * <code>-tg 0,1</code>.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+public class PayDuringReplenishBenchmark {
+
+	@Param({ "200000" })
+	int rows;
+
+	@Param({ "false", "true" })
+	boolean logged;
+
+	private Path directory;
+
+	private InventoryWriteAheadLog log;
+
+	private Inventory inventory;
+
+	private CashRegister register;
+
+	private byte[] feed;
+
+	private int sales;
+
+	@Setup
+	public void setUp() throws IOException {
+		if (logged) {
+			directory = Files.createTempDirectory("replenish-benchmark");
+			log = new InventoryWriteAheadLog(directory);
+		}
+		inventory = logged ? new Inventory(log) : new Inventory();
+		final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int p = 0; p < 10; p++) {
+			csv.append("S").append(p).append(",Sold ").append(p).append(",0.50,1.00,1000000000\n");
+		}
+		inventory.replenish(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+		register = new CashRegister(inventory);
+		final StringBuilder feed = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int r = 0; r < rows; r++) {
+			feed.append("F").append(r).append(",Feed ").append(r).append(",0.50,1.00,10\n");
+		}
+		this.feed = feed.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		if (logged) {
+			log.close();
+			try (Stream<Path> paths = Files.walk(directory)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replenishes the whole feed, which adds to the quantities of its products
+	 * from the second replenishment on
+	 */
+	@Benchmark
+	@Group("replenishing")
+	@GroupThreads(1)
+	public Inventory replenish() {
+		inventory.replenish(new ByteArrayInputStream(feed));
+		return inventory;
+	}
+
+	/**
+	 * Scans two of the products not in the feed and pays
+	 */
+	@Benchmark
+	@Group("replenishing")
+	@GroupThreads(1)
+	public BigDecimal sale() {
+		register.beginTransaction();
+		register.scan("S" + sales++ % 10);
+		register.scan("S" + sales % 10);
+		return register.pay(register.getTotal());
+	}
+}
@@ -0,0 +1,44 @@
+package com.bridgephase.store;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link Transaction#getTotal() total} of transactions of various
+ * basket sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TransactionBenchmark {
+
+	/**
+	 * The number of distinct products of the transaction
+	 */
+	@Param({ "1", "10", "100", "1000" })
+	int basketSize;
+
+	private Transaction transaction;
+
+	@Setup
+	public void setUp() {
+		transaction = new Transaction();
+		for (int p = 0; p < basketSize; p++) {
+			transaction.add(new Product("U" + p, "Product " + p, 0.50, 1.00 + p / 100.0, 10), 1 + p % 3);
+		}
+	}
+
+	@Benchmark
+	public BigDecimal getTotal() {
+		return transaction.getTotal();
+	}
+}
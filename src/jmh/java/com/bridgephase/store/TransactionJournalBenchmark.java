@@ -0,0 +1,74 @@
+package com.bridgephase.store;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the throughput of {@link TransactionJournal#append(Transaction)
+ * appending} paid transactions to one journal from several registers at once,
+ * each append waiting until its transaction is forced to the storage device.
+ * The benchmarks differ only by their number of registers (threads), so that
+ * group commit under contention can be compared with one force per sale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class TransactionJournalBenchmark {
+
+	private Path directory;
+
+	private TransactionJournal journal;
+
+	private Transaction transaction;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal-benchmark");
+		journal = new TransactionJournal(directory.resolve("journal"));
+		transaction = new Transaction();
+		transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 2);
+		transaction.add(new Product("B234", "Peach", 0.35, 0.75, 200), 1);
+		transaction.pay(BigDecimal.TEN);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		journal.close();
+		Files.delete(directory.resolve("journal"));
+		Files.delete(directory);
+	}
+
+	/**
+	 * Appends from one register, so every sale is forced on its own
+	 */
+	@Benchmark
+	@Threads(1)
+	public void append1() {
+		journal.append(transaction);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void append8() {
+		journal.append(transaction);
+	}
+
+	@Benchmark
+	@Threads(32)
+	public void append32() {
+		journal.append(transaction);
+	}
+}
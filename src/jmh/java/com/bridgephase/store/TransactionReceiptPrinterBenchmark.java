@@ -0,0 +1,50 @@
+package com.bridgephase.store;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Measures {@link TransactionReceiptPrinter#print(Transaction, java.io.OutputStream)
+ * printing the receipt} of paid transactions of various basket sizes to a
+ * stream that discards it, i.e. the cost of formatting the receipt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TransactionReceiptPrinterBenchmark {
+
+	/**
+	 * The number of distinct products of the transaction
+	 */
+	@Param({ "1", "10", "100" })
+	int basketSize;
+
+	private final TransactionReceiptPrinter printer = new TransactionReceiptPrinter();
+
+	private Transaction transaction;
+
+	@Setup
+	public void setUp() {
+		transaction = new Transaction();
+		for (int p = 0; p < basketSize; p++) {
+			transaction.add(new Product("U" + p, "Product " + p, 0.50, 1.00 + p / 100.0, 10), 1 + p % 3);
+		}
+		transaction.pay(new BigDecimal(1_000_000));
+	}
+
+	@Benchmark
+	public void print() {
+		printer.print(transaction, ByteStreams.nullOutputStream());
+	}
+}
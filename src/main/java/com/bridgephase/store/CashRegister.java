@@ -4,9 +4,9 @@ import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.Optional;
-import java.util.Map.Entry;
 
 import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.collect.Maps;
 
 import static com.google.common.base.Preconditions.*;
 
@@ -14,40 +14,101 @@ import static com.google.common.base.Preconditions.*;
  * Models a Cash Register. One cash register instance can only have one
  * transaction underway at a time. There is no facility to save/suspend/restore
  * transactions.
- * 
- * TODO: Thread safety: This system only supports one cash register per
- * inventory. If an inventory will be shared between multiple cash registers
- * then updates to products in inventory will need to be synchronized.
+ * <p>
+ * Several cash registers may share one inventory. To keep them from selling
+ * the same last unit of a product, give them the same
+ * {@link StockReservations}: each scan then reserves the product for the
+ * transaction until it is paid or its hold expires. A cash register itself is
+ * used by one lane at a time; see {@link RegisterPool}.
  */
 public class CashRegister {
 	private Optional<Transaction> transaction = Optional.empty();
 	private final IInventory inventory;
+	private final Optional<TransactionJournal> journal;
+	private final Optional<StockReservations> reservations;
+	private Optional<StockReservations.Hold> hold = Optional.empty();
 	private final TransactionPrinter receiptPrinter = new TransactionReceiptPrinter();
+	private StoreMetrics metrics;
 
 	public CashRegister(IInventory inventory) {
+		this(inventory, null);
+	}
+
+	/**
+	 * @param inventory the inventory
+	 * @param journal   the journal to which paid transactions are appended, or
+	 *                  null if paid transactions are not persisted
+	 */
+	public CashRegister(IInventory inventory, TransactionJournal journal) {
+		this(inventory, journal, null);
+	}
+
+	/**
+	 * @param reservations the reservations of the stock of the inventory
+	 */
+	public CashRegister(StockReservations reservations) {
+		this(checkNotNull(reservations,
+				"The 'StockReservations reservations' argument is required; it must not be null").getInventory(), null,
+				reservations);
+	}
+
+	/**
+	 * @param inventory    the inventory
+	 * @param journal      the journal to which paid transactions are appended, or
+	 *                     null if paid transactions are not persisted
+	 * @param reservations the reservations of the stock of the inventory, or null
+	 *                     if scanned products are not reserved
+	 */
+	public CashRegister(IInventory inventory, TransactionJournal journal, StockReservations reservations) {
 		super();
+		checkArgument(reservations == null || reservations.getInventory() == inventory,
+				"The reservations must be of the stock of the inventory of this cash register");
 		this.inventory = inventory;
+		this.journal = Optional.ofNullable(journal);
+		this.reservations = Optional.ofNullable(reservations);
 	}
 
 	public void beginTransaction() {
 		checkState(!transaction.isPresent() || transaction.get().isPaid(), "Transaction has already been started");
-		transaction.ifPresent((transaction) -> {
-			// TODO: we really should persist this paid transaction somewhere
-		});
 		transaction = Optional.of(new Transaction());
+		hold = reservations.map(StockReservations::open);
+	}
+
+	/**
+	 * Cancels the transaction underway, if it has not been paid, releasing the
+	 * reservations of its products. A new transaction may be begun afterwards.
+	 */
+	public void cancelTransaction() {
+		if (transaction.isPresent() && !transaction.get().isPaid()) {
+			transaction = Optional.empty();
+			hold.ifPresent(StockReservations.Hold::release);
+			hold = Optional.empty();
+		}
 	}
 
 	public boolean scan(final String upc) {
 		checkState(transaction.isPresent(), "Transaction has not been started; start transaction before scanning products");
 		checkArgument(upc != null, "The 'String upc' argument is required; it must not be null");
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
 		final Product product = inventory.find(upc).orElse(null);
+		final boolean scanned;
 		if (product != null) {
-			// add 1 of this product to the transaction
-			return transaction.get().add(product, 1);
+			// add 1 of this product to the transaction; it is added even if it cannot be
+			// reserved, since the customer has it in hand
+			final boolean reserved = !hold.isPresent() || hold.get().reserve(upc, 1);
+			scanned = transaction.get().add(product, 1) && reserved;
 		} else {
 			// product record with given upc is not in inventory
-			return false;
+			scanned = false;
+			if (metrics != null) {
+				metrics.unknownUpcScanned();
+			}
+		}
+		if (metrics != null) {
+			metrics.getScanLatency().recordSince(start);
 		}
+		return scanned;
 	}
 
 	public BigDecimal getTotal() {
@@ -64,16 +125,29 @@ public class CashRegister {
 	 *                                  has already been paid
 	 * @throws IllegalArgumentException if the amountPaid is null or less than the
 	 *                                  total transaction amount
+	 * @throws UncheckedIOException     if an IOException occurs while appending
+	 *                                  the paid transaction to the journal
 	 */
 	public BigDecimal pay(BigDecimal amountPaid) {
 		checkState(transaction.isPresent(),
 				"Transaction has not been started; cannot pay for a transaction that has not been started");
 		final Transaction transaction = this.transaction.get();
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
 		final BigDecimal change = transaction.pay(amountPaid);
-		// adjust inventory for each quantity of item sold
-		for (Entry<String, TransactionLineItem> entry : transaction.getLineItems().entrySet()) {
-      inventory.adjustQuantity(entry.getKey(), 0 - entry.getValue().getQuantity());
-    }
+		if (hold.isPresent()) {
+			// adjust inventory for each quantity of item sold and release the reservations
+			hold.get().commit(Maps.transformValues(transaction.getLineItems(), TransactionLineItem::getQuantity));
+		} else {
+			// adjust inventory for each quantity of item sold, in one batch
+			inventory.adjustQuantities(
+					Maps.transformValues(transaction.getLineItems(), lineItem -> 0 - lineItem.getQuantity()));
+		}
+		// persist the paid transaction
+		journal.ifPresent(journal -> journal.append(transaction));
+		if (metrics != null) {
+			metrics.getPayLatency().recordSince(start);
+		}
 		return change;
 	}
 
@@ -87,6 +161,23 @@ public class CashRegister {
 	 * @throws IllegalArgumentException if the output stream is null
 	 */
 	public void printReceipt(OutputStream out) {
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
 		receiptPrinter.print(this.transaction.get(), out);
+		if (metrics != null) {
+			metrics.getPrintReceiptLatency().recordSince(start);
+		}
+	}
+
+	/**
+	 * Records the latency of the scans, payments and receipts of this cash
+	 * register, and the number of scans of unknown UPCs, in the given metrics. The
+	 * metrics of the inventory are recorded by the inventory, see
+	 * {@link Inventory#setMetrics(StoreMetrics)}.
+	 * 
+	 * @param metrics the metrics to record, or null to stop recording metrics
+	 */
+	public void setMetrics(StoreMetrics metrics) {
+		this.metrics = metrics;
 	}
 }
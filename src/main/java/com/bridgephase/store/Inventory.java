@@ -10,12 +10,35 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import com.bridgephase.store.Inventory.ProductParser.ByteLine;
 import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
@@ -29,6 +52,13 @@ import com.google.common.collect.ImmutableList;
  * <p>
  * The {@link #adjustQuantity(String, Integer) adjustQuantity} method is used to
  * adjust the quantity of a given product (e.g. after completion of sale)
+ * <p>
+ * The catalog is versioned: each replenishment (or snapshot import) becomes
+ * visible at once, as a new {@link #getVersion() version}, when it completes,
+ * so readers never observe a half-applied replenishment. A reader that needs
+ * several consistent reads (e.g. a large report) {@link #pin() pins} a version
+ * and reads from the pinned view while replenishments continue. Quantity
+ * adjustments are not versioned; every read sees the current quantities.
  * 
  * <p>
  * Note: This inventory is thread-safe.
@@ -36,62 +66,419 @@ import com.google.common.collect.ImmutableList;
 public class Inventory implements IInventory {
 
 	/**
-	 * ConcurrentMap is used so that multiple-threads can update the inventory in a
-	 * thread-safe manner. This allows this inventory can be shared safely between
-	 * multiple cash registers and callers to the replenish methods.
+	 * A concurrent index is used so that multiple-threads can update the inventory
+	 * in a thread-safe manner. This allows this inventory can be shared safely
+	 * between multiple cash registers and callers to the replenish methods.
+	 * <p>
+	 * The index value is the {@link Stock} of a product, which keeps the quantity
+	 * in an atomic counter so that a sale does not replace the index value.
+	 */
+	private final StockIndex products;
+
+	/**
+	 * The UPCs of the products in ascending order, from which a
+	 * {@link #page(String, int, Predicate) page} starts without scanning the
+	 * inventory, or null until the first page. The index is built on the first
+	 * page so that an inventory that is never paged does not pay a skip list node
+	 * per product. Products are never removed, so a UPC is only added when its
+	 * product is new.
+	 */
+	private volatile NavigableSet<String> upcs;
+
+	/**
+	 * The number of data lines parsed by each task of a
+	 * {@link #replenish(InputStream, ForkJoinPool) parallel replenishment}
 	 */
-	private final ConcurrentMap<String, Product> products = new ConcurrentHashMap<>();
+	static final int CHUNK_LINES = 4096;
+
+	/**
+	 * The most bytes of a file mapped at once by {@link #replenish(Path)}
+	 */
+	static final int MAX_MAPPED_BYTES = 1 << 30;
+
+	/**
+	 * The approximate number of bytes parsed by each task of a
+	 * {@link #replenish(Path, ForkJoinPool) parallel replenishment}
+	 */
+	static final int CHUNK_BYTES = 1 << 20;
 
 	private final ProductParser parser = new ProductParser();
 
+	/**
+	 * The log of the mutations of this inventory, or null if mutations are not
+	 * logged
+	 */
+	private final InventoryWriteAheadLog log;
+
+	/**
+	 * The publisher of low-stock events, or null if they are not published
+	 */
+	private volatile StockEventPublisher events;
+
+	private final InventoryChangeFeed changes = new InventoryChangeFeed();
+
+	/**
+	 * The metrics to record, or null if metrics are not recorded
+	 */
+	private volatile StoreMetrics metrics;
+
+	/**
+	 * Held while the parsed records of a chunk of a replenishment (or a whole
+	 * snapshot import) are merged, so that the records of a chunk are not
+	 * interleaved with those of a concurrent replenishment, and while a
+	 * replenishment is committed. Parsing holds no lock, and quantity adjustments
+	 * never take this lock.
+	 */
+	private final ProfiledLock replenishLock = new ProfiledLock("inventory replenish");
+
+	/**
+	 * The version of the catalog, i.e. the number of replenishments committed
+	 */
+	private volatile long version;
+
+	/**
+	 * The number of open {@link InventoryView views} of each pinned version.
+	 * Guarded by the monitor of the map, which also orders the pinning of a
+	 * version against the commit of the next one.
+	 */
+	private final NavigableMap<Long, Integer> pins = new TreeMap<>();
+
+	/**
+	 * Creates an empty inventory whose mutations are not logged
+	 */
+	public Inventory() {
+		this(StockIndex.concurrent(), null);
+	}
+
 	Inventory(final Product... products) {
+		this(StockIndex.concurrent(), null);
 		checkNotNull(products, "The 'Product[] products' argument is required; it must not be null");
 		int i = 0;
 		for (Product product : products) {
 			checkNotNull(product,
 					"All elements in the 'Product[] products' array are required; the element at index %d is null; it must not be null",
 					i);
-			final Product versionedProduct = new Product(product);
-			this.products.merge(product.getUpc(), versionedProduct, Product::merge);
+			merge(new Product(product), Replenishment.INITIAL, 0);
 			i++;
 		}
 	}
 
+	/**
+	 * Creates an inventory that is recovered from the given write-ahead log and
+	 * that logs every replenishment and quantity adjustment made to it from now
+	 * on.
+	 * 
+	 * @param log the write-ahead log of the inventory
+	 * @throws IllegalStateException if the log has already been recovered by
+	 *                               another inventory or has been closed
+	 * @throws UncheckedIOException  if an IOException occurs while reading the log
+	 */
+	public Inventory(final InventoryWriteAheadLog log) {
+		this(StockIndex.concurrent(),
+				checkNotNull(log, "The 'InventoryWriteAheadLog log' argument is required; it must not be null"));
+	}
+
+	/**
+	 * @param products the index of the stock of the products
+	 * @param log      the write-ahead log from which the inventory is recovered, or
+	 *                 null if mutations are not logged
+	 */
+	Inventory(final StockIndex products, final InventoryWriteAheadLog log) {
+		this.products = products;
+		this.log = log;
+		if (log == null) {
+			return;
+		}
+		log.recover(new InventoryWriteAheadLog.Replay() {
+			@Override
+			public void merge(Product product) {
+				mergeStock(product, Replenishment.INITIAL, 0);
+			}
+
+			@Override
+			public void adjust(String upc, int delta) {
+				final Stock stock = products.get(upc);
+				if (stock != null) {
+					stock.adjust(delta, Stock.LATEST);
+				}
+			}
+			// a checkpoint includes the records of the replenishments in progress, which
+			// are logged before the checkpoint
+		}, () -> list(Stock.LATEST));
+	}
+
 	/**
 	 * This implementation of replenishment will insert or update any existing
 	 * products in this inventory. Any existing products that are not included in
 	 * the replenishment will remain in inventory unchanged. The quantity on a
 	 * replenishment {@link Product} is {@link Product#merge(Product, Product) added
 	 * to the existing quantity}.
+	 * <p>
+	 * The input is parsed {@link #CHUNK_LINES} lines at a time without holding a
+	 * lock, so sales continue during the replenishment and concurrent
+	 * replenishments parse in parallel. The records merged become visible at once,
+	 * as a new {@link #getVersion() version} of the catalog, when the
+	 * replenishment completes (or fails).
 	 * 
 	 * @see Product#merge(Product, Product)
 	 * @throws UncheckedIOException if IOException occurs while reading from input
 	 *                              Stream
 	 */
 	@Override
-	synchronized public void replenish(InputStream inputStream) {
+	public void replenish(InputStream inputStream) {
 		checkNotNull(inputStream, "The inputSteam argument is required; it must not be null");
 		// not going to close input stream here
 		// it is the responsibility of the caller to close the input stream.
 		final BufferedReader r = new BufferedReader(new InputStreamReader(inputStream));
+		final Replenishment replenishment = new Replenishment();
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
 		int lineNumber = 1;
 		try {
 			// first line is required to be the header (no blank/empty lines allowed before
 			// header)
 			if (parser.readHeader(r.readLine())) {
 				lineNumber++;
+				// parse a chunk of lines before merging it, so that the parsing does not
+				// hold the replenish lock
+				Chunk chunk = new Chunk(lineNumber);
 				for (String line; (line = r.readLine()) != null; lineNumber++) {
-					if (line.trim().isEmpty()) {
-						// we'll allow and ignore any blank, empty lines
-						continue;
-					} else {
-						final Product parsed = parser.parse(lineNumber, line);
-						products.merge(parsed.getUpc(), new Product(parsed), Product::merge);
+					chunk.lines.add(line);
+					if (chunk.lines.size() == CHUNK_LINES) {
+						merge(chunk.call(), replenishment);
+						chunk = new Chunk(lineNumber + 1);
+					}
+				}
+				merge(chunk.call(), replenishment);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading input stream: lineNumber=" + lineNumber, e);
+		} finally {
+			writeLog();
+			commit(replenishment);
+			if (metrics != null) {
+				metrics.getReplenishLatency().recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * Replenishes this inventory like {@link #replenish(InputStream)}, but parses
+	 * the data lines on the given pool. The calling thread reads the input stream
+	 * and splits it into chunks of {@link #CHUNK_LINES} lines, the chunks are
+	 * parsed in parallel and the parsed products are merged in input order, so the
+	 * result (including the products merged before a line that fails to parse and
+	 * the line number reported for that line) is the same as that of a serial
+	 * replenishment.
+	 * 
+	 * @param inputStream the stream from where to read the inventory
+	 * @param pool        the pool on which to parse the data lines
+	 * @see #replenish(InputStream)
+	 * @throws UncheckedIOException if IOException occurs while reading from input
+	 *                              Stream
+	 */
+	public void replenish(InputStream inputStream, ForkJoinPool pool) {
+		checkNotNull(inputStream, "The inputSteam argument is required; it must not be null");
+		checkNotNull(pool, "The 'ForkJoinPool pool' argument is required; it must not be null");
+		final BufferedReader r = new BufferedReader(new InputStreamReader(inputStream));
+		// bound the number of chunks read ahead of the merge
+		final int maxPending = 2 * pool.getParallelism();
+		final Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>(maxPending + 1);
+		final Replenishment replenishment = new Replenishment();
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
+		int lineNumber = 1;
+		try {
+			if (parser.readHeader(r.readLine())) {
+				lineNumber++;
+				Chunk chunk = new Chunk(lineNumber);
+				for (String line; (line = r.readLine()) != null; lineNumber++) {
+					chunk.lines.add(line);
+					if (chunk.lines.size() == CHUNK_LINES) {
+						pending.add(pool.submit(chunk));
+						chunk = new Chunk(lineNumber + 1);
+						while (pending.size() > maxPending) {
+							merge(pending.remove().join(), replenishment);
+						}
 					}
 				}
+				pending.add(pool.submit(chunk));
+				while (!pending.isEmpty()) {
+					merge(pending.remove().join(), replenishment);
+				}
 			}
 		} catch (IOException e) {
 			throw new UncheckedIOException("Error reading input stream: lineNumber=" + lineNumber, e);
+		} finally {
+			// only left over when a chunk failed to parse or reading failed
+			pending.forEach(task -> task.cancel(false));
+			writeLog();
+			commit(replenishment);
+			if (metrics != null) {
+				metrics.getReplenishLatency().recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * This implementation memory-maps the file and parses the products directly
+	 * from the mapped bytes, without decoding the file into a string for each line.
+	 * Lines are terminated by "\n" or "\r\n" and text is decoded as UTF-8.
+	 * 
+	 * @see #replenish(InputStream)
+	 * @throws UncheckedIOException if IOException occurs while reading the file
+	 */
+	@Override
+	public void replenish(Path path) {
+		checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+		replenish(path, null, MAX_MAPPED_BYTES, CHUNK_BYTES);
+	}
+
+	/**
+	 * Replenishes this inventory like {@link #replenish(Path)}, but splits the
+	 * mapped file into line-aligned chunks of about {@link #CHUNK_BYTES} bytes
+	 * that are parsed on the given pool and merged in file order, so the result is
+	 * the same as that of a serial replenishment.
+	 * 
+	 * @param path the file from where to read the inventory
+	 * @param pool the pool on which to parse the chunks
+	 * @see #replenish(Path)
+	 * @throws UncheckedIOException if IOException occurs while reading the file
+	 */
+	public void replenish(Path path, ForkJoinPool pool) {
+		checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+		checkNotNull(pool, "The 'ForkJoinPool pool' argument is required; it must not be null");
+		replenish(path, pool, MAX_MAPPED_BYTES, CHUNK_BYTES);
+	}
+
+	/**
+	 * Replenishes this inventory from the given file, mapping at most the given
+	 * number of bytes at once. The chunks of a mapped window are parsed on the
+	 * calling thread if pool is null. The line numbers of chunks are only known
+	 * once the preceding chunks are parsed, so a line that fails to parse is
+	 * parsed again with its line number when its chunk is merged.
+	 * 
+	 * @param path        the file from where to read the inventory
+	 * @param pool        the pool on which to parse the chunks, or null
+	 * @param mappedBytes the most bytes of the file to map at once
+	 * @param chunkBytes  the approximate number of bytes in each chunk
+	 */
+	void replenish(final Path path, final ForkJoinPool pool, final int mappedBytes, final int chunkBytes) {
+		final int maxPending = pool == null ? 0 : 2 * pool.getParallelism();
+		final Deque<ForkJoinTask<ByteChunk>> pending = new ArrayDeque<>(maxPending + 1);
+		final Replenishment replenishment = new Replenishment();
+		final StoreMetrics metrics = this.metrics;
+		final long startNanos = metrics == null ? 0 : System.nanoTime();
+		int lineNumber = 1;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				final int length = (int) Math.min(size - position, mappedBytes);
+				final MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, length);
+				// a line that continues past this window is parsed from the next window
+				int limit = length;
+				if (position + length < size) {
+					limit = lastIndexOf(window, (byte) '\n', length) + 1;
+					checkArgument(limit > 0, "Line exceeds the maximum length of %s bytes: position=%s", mappedBytes,
+							position);
+				}
+				int start = 0;
+				if (position == 0) {
+					// first line is required to be the header
+					final int eol = indexOf(window, (byte) '\n', 0, limit);
+					final int end = eol < 0 ? limit : eol;
+					parser.readHeader(new ByteLine().wrap(window, 0, stripCarriageReturn(window, 0, end)).toString());
+					lineNumber++;
+					start = eol < 0 ? limit : eol + 1;
+				}
+				while (start < limit) {
+					final int next = start + chunkBytes >= limit ? -1
+							: indexOf(window, (byte) '\n', start + chunkBytes - 1, limit);
+					final int end = next < 0 ? limit : next + 1;
+					final ByteChunk chunk = new ByteChunk(window, start, end);
+					if (pool == null) {
+						lineNumber = merge(chunk.call(), lineNumber, replenishment);
+					} else {
+						pending.add(pool.submit(chunk));
+						while (pending.size() > maxPending) {
+							lineNumber = merge(pending.remove().join(), lineNumber, replenishment);
+						}
+					}
+					start = end;
+				}
+				position += limit;
+			}
+			while (!pending.isEmpty()) {
+				lineNumber = merge(pending.remove().join(), lineNumber, replenishment);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading file: path=" + path, e);
+		} finally {
+			// only left over when a chunk failed to parse or reading failed
+			pending.forEach(task -> task.cancel(false));
+			writeLog();
+			commit(replenishment);
+			if (metrics != null) {
+				metrics.getReplenishLatency().recordSince(startNanos);
+			}
+		}
+	}
+
+	/**
+	 * Writes an {@link InventorySnapshot binary snapshot} of the products of this
+	 * inventory to the given file, atomically replacing the file if it exists. A
+	 * snapshot is loaded by {@link #importSnapshot(Path)} much faster than a comma
+	 * separated file is replenished. The snapshot is of a {@link #pin() pinned}
+	 * version, so it has none of the records of a replenishment in progress.
+	 * 
+	 * @param path the snapshot file
+	 * @throws UncheckedIOException if an IOException occurs while writing the file
+	 */
+	public void exportSnapshot(Path path) {
+		checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+		try (InventoryView view = pin()) {
+			InventorySnapshot.write(path, () -> view.stream().iterator());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error writing snapshot: path=" + path, e);
+		}
+	}
+
+	/**
+	 * Replenishes this inventory from a snapshot written by
+	 * {@link #exportSnapshot(Path)}. Each product of the snapshot is merged like a
+	 * replenishment record, so importing a snapshot into an empty inventory
+	 * restores the exported inventory. The snapshot is verified against its
+	 * checksum before any product is merged, so nothing of a snapshot that is not
+	 * intact is merged (or logged), and the products merged become visible at once
+	 * when the import completes.
+	 * 
+	 * @param path the snapshot file
+	 * @see #replenish(InputStream)
+	 * @throws UncheckedIOException if an IOException occurs while reading the file
+	 *                              or the file is not an intact snapshot
+	 */
+	public void importSnapshot(Path path) {
+		replenishLock.lock(ProfiledLock.Operation.IMPORT_SNAPSHOT);
+		try {
+			checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+			final Replenishment replenishment = new Replenishment();
+			final long oldestPin = oldestPin();
+			final StoreMetrics metrics = this.metrics;
+			final long start = metrics == null ? 0 : System.nanoTime();
+			try {
+				InventorySnapshot.read(path, product -> merge(product, replenishment, oldestPin));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error reading snapshot: path=" + path, e);
+			} finally {
+				writeLog();
+				commit(replenishment);
+				if (metrics != null) {
+					metrics.getReplenishLatency().recordSince(start);
+				}
+			}
+		} finally {
+			replenishLock.unlock();
 		}
 	}
 
@@ -105,32 +492,611 @@ public class Inventory implements IInventory {
 	 */
 	@Override
 	public List<Product> list() {
-		return ImmutableList.copyOf(this.products.values());
+		final long pin = pinVersion();
+		try {
+			return list(pin);
+		} finally {
+			unpin(pin);
+		}
+	}
+
+	/**
+	 * @param pin the version of the catalog to read
+	 * @return the products visible at the given version
+	 */
+	List<Product> list(final long pin) {
+		final ImmutableList.Builder<Product> list = ImmutableList.builderWithExpectedSize(products.size());
+		products.forEach(stock -> stock.snapshot(pin).ifPresent(list::add));
+		return list.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The stream walks the index of this inventory; only the products not yet
+	 * consumed are reachable from it. The stream reads the version of the catalog
+	 * current when it was created without pinning it, so a stream consumed while
+	 * several replenishments complete may see some of their records; use the
+	 * stream of a {@link #pin() pinned} view when that matters.
+	 */
+	@Override
+	public Stream<Product> stream() {
+		return stream(version);
+	}
+
+	/**
+	 * @param pin the version of the catalog to read
+	 * @return a stream of the products visible at the given version
+	 */
+	Stream<Product> stream(final long pin) {
+		return products.stream().flatMap(stock -> stock.snapshot(pin).stream());
+	}
+
+	@Override
+	public void forEach(final Consumer<? super Product> action) {
+		checkNotNull(action, "The 'Consumer<? super Product> action' argument is required; it must not be null");
+		final long pin = pinVersion();
+		try {
+			products.forEach(stock -> stock.snapshot(pin).ifPresent(action));
+		} finally {
+			unpin(pin);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The page is read from the sorted UPCs of this inventory, so only the
+	 * products up to the end of the page are visited. The sorted UPCs are indexed
+	 * by the first page, which visits every product once.
+	 */
+	@Override
+	public List<Product> page(final String afterUpc, final int limit, final Predicate<? super Product> filter) {
+		checkArgument(limit >= 0, "The 'int limit' argument must not be negative: limit=%s", limit);
+		checkNotNull(filter, "The 'Predicate<? super Product> filter' argument is required; it must not be null");
+		final long pin = pinVersion();
+		try {
+			return page(afterUpc, limit, filter, pin);
+		} finally {
+			unpin(pin);
+		}
+	}
+
+	/**
+	 * @param pin the version of the catalog to read
+	 * @return a page of the products visible at the given version
+	 * @see #page(String, int, Predicate)
+	 */
+	List<Product> page(final String afterUpc, final int limit, final Predicate<? super Product> filter,
+			final long pin) {
+		final NavigableSet<String> sorted = upcs();
+		final ImmutableList.Builder<Product> page = ImmutableList.builder();
+		int size = 0;
+		for (final Iterator<String> upcs = (afterUpc == null ? sorted : sorted.tailSet(afterUpc, false))
+				.iterator(); size < limit && upcs.hasNext();) {
+			final Optional<Product> product = products.get(upcs.next()).snapshot(pin);
+			if (product.isPresent() && filter.test(product.get())) {
+				page.add(product.get());
+				size++;
+			}
+		}
+		return page.build();
+	}
+
+	/**
+	 * @return the sorted UPCs of the products, indexed on the first call
+	 */
+	private NavigableSet<String> upcs() {
+		NavigableSet<String> upcs = this.upcs;
+		if (upcs == null) {
+			synchronized (products) {
+				upcs = this.upcs;
+				if (upcs == null) {
+					upcs = new ConcurrentSkipListSet<>();
+					// published before it is filled, so a product merged meanwhile is added
+					// either by its merge or below
+					this.upcs = upcs;
+					final NavigableSet<String> index = upcs;
+					products.forEach(stock -> index.add(stock.getUpc()));
+				}
+			}
+		}
+		return upcs;
 	}
 
 	@Override
 	public Optional<Product> find(String upc) {
-		return Optional.ofNullable(products.get(upc));
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
+		final Optional<Product> product = find(upc, version);
+		if (metrics != null) {
+			metrics.getFindLatency().recordSince(start);
+		}
+		return product;
 	}
 
+	/**
+	 * @param upc the UPC
+	 * @param pin the version of the catalog to read
+	 * @return the product with the given UPC at the given version, or empty
+	 */
+	Optional<Product> find(final String upc, final long pin) {
+		final Stock stock = products.get(upc);
+		return stock == null ? Optional.empty() : stock.snapshot(pin);
+	}
+
+	/**
+	 * @return the version of the catalog, i.e. the number of replenishments (and
+	 *         snapshot imports) completed, which only grows
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Pins the current version of the catalog. The view reads the products and
+	 * details of that version however many replenishments complete meanwhile,
+	 * with the current quantities. The records of a version are kept (and not
+	 * collapsed) while a view pins it, so views are to be closed once read.
+	 * 
+	 * @return a view of the current version of the catalog
+	 */
+	public InventoryView pin() {
+		return new InventoryView(this, pinVersion());
+	}
+
+	/**
+	 * @return the current version, pinned until it is {@link #unpin(long)
+	 *         unpinned}
+	 */
+	private long pinVersion() {
+		synchronized (pins) {
+			final long version = this.version;
+			pins.merge(version, 1, Integer::sum);
+			return version;
+		}
+	}
+
+	/**
+	 * Unpins a version pinned by {@link #pinVersion()}
+	 */
+	void unpin(final long version) {
+		synchronized (pins) {
+			pins.computeIfPresent(version, (pinned, count) -> count == 1 ? null : count - 1);
+		}
+	}
+
+	/**
+	 * @return the oldest pinned version, or the current version if none is pinned
+	 */
+	private long oldestPin() {
+		synchronized (pins) {
+			return pins.isEmpty() ? version : Math.min(pins.firstKey(), version);
+		}
+	}
+
+	/**
+	 * Makes the records merged by the given replenishment visible as the next
+	 * version of the catalog
+	 */
+	private void commit(final Replenishment replenishment) {
+		replenishLock.lock(ProfiledLock.Operation.COMMIT);
+		try {
+			synchronized (pins) {
+				final long version = this.version + 1;
+				replenishment.commit(version);
+				this.version = version;
+			}
+		} finally {
+			replenishLock.unlock();
+		}
+	}
+
+	/**
+	 * Adjustments are not serialized on this inventory. Each adjustment is a single
+	 * atomic add on the {@link Stock} of the given UPC, so adjustments to
+	 * different products proceed in parallel, no {@link Product} is created to
+	 * record the new quantity, and concurrent adjustments and replenishments of the
+	 * same product never lose a delta. A product is only adjusted once the
+	 * replenishment that added it has completed.
+	 */
 	@Override
-	synchronized public Optional<Product> adjustQuantity(final String upc, final Integer delta) {
+	public Optional<Product> adjustQuantity(final String upc, final Integer delta) {
 		checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
 		checkNotNull(delta, "The 'Integer delta' argument is required; it must not be null");
-		final Optional<Product> product = Optional.ofNullable(products.computeIfPresent(upc, (key, oldProduct) -> {
-			return new Product(upc, oldProduct.getName(), oldProduct.getWholesalePrice(), oldProduct.getRetailPrice(),
-					oldProduct.getQuantity() + delta);
-		}));
-    if (product.isPresent() && product.get().getQuantity() <= 0) {
-      // TODO: time to replenish inventory of this product - e.g. send OutOfStock message to
-      // Purchasing queue
-    }
-    return product;
+		final StoreMetrics metrics = this.metrics;
+		final long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			final long pin = version;
+			final Stock stock = products.get(upc);
+			if (stock == null || !stock.isVisible(pin)) {
+				return Optional.empty();
+			}
+			final int quantity;
+			if (log == null) {
+				quantity = stock.adjust(delta, pin);
+			} else {
+				log.lock().lock(ProfiledLock.Operation.ADJUST_QUANTITY);
+				try {
+					log.adjust(upc, delta);
+					log.write();
+					quantity = stock.adjust(delta, pin);
+				} finally {
+					log.lock().unlock();
+				}
+			}
+			adjusted(stock, upc, delta, quantity, pin);
+			return stock.snapshot(pin, quantity);
+		} finally {
+			if (metrics != null) {
+				metrics.getAdjustQuantityLatency().recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The quantities are adjusted in one pass over the map without building a
+	 * {@link Product} snapshot for each adjusted product. No locks are taken, so
+	 * the order of the adjustments does not matter here.
+	 */
+	@Override
+	public void adjustQuantities(final Map<String, Integer> deltas) {
+		checkNotNull(deltas, "The 'Map<String, Integer> deltas' argument is required; it must not be null");
+		if (log == null) {
+			adjust(deltas);
+		} else {
+			// log the whole batch with one write
+			log.lock().lock(ProfiledLock.Operation.ADJUST_QUANTITIES);
+			try {
+				adjust(deltas);
+			} finally {
+				try {
+					log.write();
+				} finally {
+					log.lock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adjusts the quantities by the given deltas, logging each adjustment if
+	 * mutations are logged. Callers must hold the lock of the log.
+	 * 
+	 * @param deltas the delta amount to adjust the quantity by, keyed by UPC
+	 */
+	private void adjust(final Map<String, Integer> deltas) {
+		final long pin = version;
+		for (final Map.Entry<String, Integer> delta : deltas.entrySet()) {
+			checkNotNull(delta.getKey(), "The 'String upc' argument is required; it must not be null");
+			checkNotNull(delta.getValue(), "The 'Integer delta' argument is required; it must not be null");
+			final Stock stock = products.get(delta.getKey());
+			if (stock == null || !stock.isVisible(pin)) {
+				continue;
+			}
+			if (log != null) {
+				log.adjust(delta.getKey(), delta.getValue());
+			}
+			adjusted(stock, delta.getKey(), delta.getValue(), stock.adjust(delta.getValue(), pin), pin);
+		}
+	}
+
+	/**
+	 * Triggers the stock event publisher, if any, and publishes the change to the
+	 * subscribers of the changes of this inventory, if any, after the quantity of a
+	 * product was adjusted
+	 */
+	private void adjusted(final Stock stock, final String upc, final int delta, final int quantity, final long pin) {
+		final StockEventPublisher events = this.events;
+		if (events != null) {
+			events.trigger(upc, quantity);
+		}
+		if (changes.hasSubscribers()) {
+			changes.publish(new InventoryChange(InventoryChange.Type.ADJUST, stock.snapshot(pin, quantity).get(), delta));
+		}
+	}
+
+	/**
+	 * Returns the publisher of the changes of this inventory: a change for each
+	 * replenishment record merged and for each quantity adjusted from the time a
+	 * subscriber subscribes, so that a subscriber can keep track of the inventory
+	 * without reading all of it again. Records are published as they are merged,
+	 * i.e. before their replenishment completes. Changes are buffered for each subscriber and
+	 * delivered as the subscriber requests them; a subscriber that falls too far
+	 * behind is signalled an {@link InventoryChangesDroppedException}.
+	 * 
+	 * @return the publisher of the changes of this inventory
+	 * @see InventoryChange
+	 */
+	public Flow.Publisher<InventoryChange> changes() {
+		return changes;
+	}
+
+	/**
+	 * Publishes a {@link StockEvent} through the given publisher whenever an
+	 * adjustment leaves the quantity of a product at or below its low-stock
+	 * threshold (e.g. to send an OutOfStock message to the Purchasing queue). The
+	 * adjustment does not wait for the event to be delivered.
+	 * 
+	 * @param events the publisher of the stock events of this inventory, or null
+	 *               to stop publishing stock events
+	 */
+	public void setStockEventPublisher(final StockEventPublisher events) {
+		this.events = events;
+	}
+
+	/**
+	 * Records the latency of finds, quantity adjustments and replenishments of
+	 * this inventory, and the number of replenishment records merged, in the given
+	 * metrics
+	 * 
+	 * @param metrics the metrics to record, or null to stop recording metrics
+	 */
+	public void setMetrics(final StoreMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Starts or stops measuring the time that the operations of this inventory
+	 * wait for and hold its locks: the lock held while replenishments merge and,
+	 * if mutations are logged, the lock of the log, which every mutation holds
+	 * while it is logged and applied. Adjustments of an inventory whose mutations
+	 * are not logged take no lock.
+	 * 
+	 * @param profiling whether to profile the locks
+	 * @see #getLocks()
+	 */
+	public void setLockProfiling(final boolean profiling) {
+		replenishLock.setProfiling(profiling);
+		if (log != null) {
+			log.lock().setProfiling(profiling);
+		}
+	}
+
+	/**
+	 * @return the locks of this inventory, whose wait and hold times and worst
+	 *         stalls are measured while {@link #setLockProfiling(boolean) lock
+	 *         profiling} is enabled
+	 */
+	public List<ProfiledLock> getLocks() {
+		return log == null ? ImmutableList.of(replenishLock) : ImmutableList.of(replenishLock, log.lock());
+	}
+
+	/**
+	 * Merges the given replenishment record into the stock of its product as
+	 * defined by {@link Product#merge(Product, Product)}
+	 *
+	 * @param product       the replenishment record
+	 * @param replenishment the replenishment of the record
+	 * @param oldestPin     the oldest pinned version of the catalog
+	 */
+	private void merge(final Product product, final Replenishment replenishment, final long oldestPin) {
+		final StoreMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.rowReplenished();
+		}
+		if (log == null) {
+			mergeStock(product, replenishment, oldestPin);
+		} else {
+			log.lock().lock(ProfiledLock.Operation.MERGE);
+			try {
+				log.merge(product);
+				mergeStock(product, replenishment, oldestPin);
+			} finally {
+				log.lock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Writes the mutations buffered by the log, if mutations are logged
+	 */
+	private void writeLog() {
+		if (log != null) {
+			log.lock().lock(ProfiledLock.Operation.WRITE_LOG);
+			try {
+				log.write();
+			} finally {
+				log.lock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Merges the given replenishment record into the stock of its product without
+	 * logging it
+	 *
+	 * @param product       the replenishment record
+	 * @param replenishment the replenishment of the record
+	 * @param oldestPin     the oldest pinned version of the catalog
+	 */
+	private void mergeStock(final Product product, final Replenishment replenishment, final long oldestPin) {
+		if (products.merge(product, replenishment, oldestPin)) {
+			// read after the merge, so that an index published meanwhile has the UPC
+			final NavigableSet<String> upcs = this.upcs;
+			if (upcs != null) {
+				upcs.add(product.getUpc());
+			}
+		}
+		if (changes.hasSubscribers()) {
+			changes.publish(new InventoryChange(InventoryChange.Type.MERGE,
+					products.get(product.getUpc()).snapshot(Stock.LATEST).get(), product.getQuantity()));
+		}
+	}
+
+	/**
+	 * Merges the products parsed from the given chunk
+	 * 
+	 * @param chunk         a parsed chunk
+	 * @param replenishment the replenishment of the chunk
+	 * @throws ProductParser.ProductParseException if a line of the chunk failed to
+	 *                                             parse
+	 * @throws IllegalArgumentException            if a line of the chunk failed to
+	 *                                             parse
+	 */
+	private void merge(final Chunk chunk, final Replenishment replenishment) {
+		replenishLock.lock(ProfiledLock.Operation.REPLENISH);
+		try {
+			final long oldestPin = oldestPin();
+			for (Product product : chunk.products) {
+				merge(product, replenishment, oldestPin);
+			}
+		} finally {
+			replenishLock.unlock();
+		}
+		if (chunk.failure != null) {
+			throw chunk.failure;
+		}
+	}
+
+	/**
+	 * A chunk of consecutive data lines of a
+	 * {@link Inventory#replenish(InputStream, ForkJoinPool) parallel
+	 * replenishment}. Parsing stops at the first line that fails; the products
+	 * parsed before that line and the failure are kept so that they can be
+	 * merged and rethrown in input order.
+	 */
+	private class Chunk implements Callable<Chunk> {
+		private final int firstLineNumber;
+		private final List<String> lines = new ArrayList<>(CHUNK_LINES);
+		private final List<Product> products = new ArrayList<>(CHUNK_LINES);
+		private RuntimeException failure;
+
+		Chunk(int firstLineNumber) {
+			this.firstLineNumber = firstLineNumber;
+		}
+
+		@Override
+		public Chunk call() {
+			try {
+				for (int i = 0; i < lines.size(); i++) {
+					final String line = lines.get(i);
+					if (!line.trim().isEmpty()) {
+						products.add(parser.parse(firstLineNumber + i, line));
+					}
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Merges the products parsed from the given chunk
+	 * 
+	 * @param chunk           a parsed chunk
+	 * @param firstLineNumber the line number of the first line of the chunk
+	 * @param replenishment   the replenishment of the chunk
+	 * @return the line number of the line after the chunk
+	 * @throws ProductParser.ProductParseException if a line of the chunk failed to
+	 *                                             parse
+	 * @throws IllegalArgumentException            if a line of the chunk failed to
+	 *                                             parse
+	 */
+	private int merge(final ByteChunk chunk, final int firstLineNumber, final Replenishment replenishment) {
+		replenishLock.lock(ProfiledLock.Operation.REPLENISH);
+		try {
+			final long oldestPin = oldestPin();
+			for (Product product : chunk.products) {
+				merge(product, replenishment, oldestPin);
+			}
+		} finally {
+			replenishLock.unlock();
+		}
+		if (chunk.failure != null) {
+			// report the failed line with its line number
+			parser.parse(firstLineNumber + chunk.failedLine,
+					new ByteLine().wrap(chunk.buffer, chunk.failedStart, chunk.failedEnd));
+			throw chunk.failure;
+		}
+		return firstLineNumber + chunk.lines;
+	}
+
+	/**
+	 * A line-aligned chunk of a file mapped by {@link Inventory#replenish(Path)}.
+	 * Parsing stops at the first line that fails; the products parsed before that
+	 * line and the position of the failed line are kept so that they can be merged
+	 * and reported in file order.
+	 */
+	private class ByteChunk implements Callable<ByteChunk> {
+		private final ByteBuffer buffer;
+		private final int start;
+		private final int end;
+		private final List<Product> products = new ArrayList<>();
+		private int lines;
+		private RuntimeException failure;
+		private int failedLine;
+		private int failedStart;
+		private int failedEnd;
+
+		ByteChunk(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public ByteChunk call() {
+			final ByteLine line = new ByteLine();
+			for (int lineStart = start; lineStart < end; lines++) {
+				final int eol = indexOf(buffer, (byte) '\n', lineStart, end);
+				final int lineEnd = stripCarriageReturn(buffer, lineStart, eol < 0 ? end : eol);
+				line.wrap(buffer, lineStart, lineEnd);
+				// we'll allow and ignore any blank, empty lines
+				if (!line.isBlank()) {
+					try {
+						products.add(parser.parse(lines, line));
+					} catch (RuntimeException e) {
+						failure = e;
+						failedLine = lines;
+						failedStart = lineStart;
+						failedEnd = lineEnd;
+						return this;
+					}
+				}
+				lineStart = eol < 0 ? end : eol + 1;
+			}
+			return this;
+		}
+	}
+
+	private static int indexOf(final ByteBuffer buffer, final byte b, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf(final ByteBuffer buffer, final byte b, final int to) {
+		for (int i = to - 1; i >= 0; i--) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the end of the line from start to end without a trailing '\r'
+	 */
+	private static int stripCarriageReturn(final ByteBuffer buffer, final int start, final int end) {
+		return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
 	}
 
 	/**
 	 * Handles header line and data line parsing of {@link Inventory}
 	 * {@link Inventory#replenish(InputStream) replenishment}
+	 * <p>
+	 * Data lines are scanned in place (see {@link Line}): values are not split
+	 * into strings, prices are parsed directly into {@link Money} minor units and
+	 * the quantity into a primitive, and each thread
+	 * reuses its own {@link Product.Builder}. Apart from the parsed product (and
+	 * its UPC and name) parsing a line does not allocate.
 	 */
 	static class ProductParser {
 		@SuppressWarnings("serial")
@@ -169,15 +1135,37 @@ public class Inventory implements IInventory {
 			}
 		}
 
+		/**
+		 * The most decimal digits that always fit in a long and an int respectively
+		 */
+		private static final int MAX_LONG_DIGITS = 18, MAX_INT_DIGITS = 9;
+
+		/**
+		 * Powers of ten that fit in a long
+		 */
+		private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+		static {
+			POWERS_OF_TEN[0] = 1;
+			for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+				POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+			}
+		}
+
 		private final List<Field> fields = ImmutableList.copyOf(Field.values());
 		private final String expectedHeader = Joiner.on(',')
 				.join(Arrays.stream(Field.values()).map(e -> e.headerName).toArray());
 
 		/**
-		 * The {@link Splitter} used for parsing product data lines
+		 * The {@link Splitter} used for parsing header lines
 		 */
 		private final Splitter splitter = Splitter.on(',').trimResults();
 
+		/**
+		 * The line and product builder reused by each thread that parses string lines
+		 */
+		private final ThreadLocal<CharLine> lines = ThreadLocal.withInitial(CharLine::new);
+		private final ThreadLocal<Product.Builder> builders = ThreadLocal.withInitial(Product.Builder::new);
+
 		/**
 		 * Parses the given data line of text into a {@link Product}
 		 * 
@@ -187,35 +1175,66 @@ public class Inventory implements IInventory {
 		 */
 		Product parse(final int lineNumber, final String line) {
 			checkNotNull(line, "The 'String line' argument is required; it must not be null");
-			Product.Builder product = new Product.Builder();
+			final CharLine chars = lines.get().wrap(line);
+			try {
+				return parse(lineNumber, chars);
+			} finally {
+				// do not hold on to the line
+				chars.wrap(null);
+			}
+		}
+
+		/**
+		 * Parses the given data line into a {@link Product}. Values are trimmed like
+		 * {@link Splitter#trimResults()}.
+		 * 
+		 * @param lineNumber the line number
+		 * @param line       the data line
+		 * @return the Product parsed from the given data line
+		 */
+		Product parse(final int lineNumber, final Line line) {
+			checkNotNull(line, "The 'Line line' argument is required; it must not be null");
+			final Product.Builder product = builders.get();
+			final int length = line.length();
 			int fieldNum = 0;
-			for (String value : splitter.split(line)) {
+			int from = 0;
+			while (true) {
+				final int comma = line.indexOf(',', from);
+				final int to = comma < 0 ? length : comma;
 				if (fieldNum < fields.size()) {
-					Field field = fields.get(fieldNum);
+					final Field field = fields.get(fieldNum);
+					final int valueFrom = line.trimStart(from, to);
+					final int valueTo = line.trimEnd(valueFrom, to);
 					switch (field) {
 					case UPC:
-						product.withUpc(value);
+						product.withUpc(line.toString(valueFrom, valueTo));
 						break;
 					case NAME:
-						product.withName(value);
+						product.withName(line.toString(valueFrom, valueTo));
 						break;
 					case WHOLESALE_PRICE:
-						product.withWholesalePrice(parseBigDecimal(lineNumber, field.getNumber(), "wholesale price", value));
+						product.withWholesalePrice(
+								parsePrice(lineNumber, field.getNumber(), "wholesale price", line, valueFrom, valueTo));
 						break;
 					case RETAIL_PRICE:
-						product.withRetailPrice(parseBigDecimal(lineNumber, field.getNumber(), "retail price", value));
+						product.withRetailPrice(
+								parsePrice(lineNumber, field.getNumber(), "retail price", line, valueFrom, valueTo));
 						break;
 					case QUANTITY:
-						product.withQuantity(parseInteger(lineNumber, field.getNumber(), "quantity", value));
+						product.withQuantity(parseInt(lineNumber, field.getNumber(), "quantity", line, valueFrom, valueTo));
 						break;
 					default:
 						throw new IllegalArgumentException("Line contains an unsupported Field: " + field);
 					}
 				}
 				fieldNum++;
+				if (comma < 0) {
+					break;
+				}
+				from = comma + 1;
 			}
 			checkArgument(fieldNum == fields.size(),
-					"Line does not contain the correct number of fields: expected=" + fields.size() + ", actual=" + fieldNum);
+					"Line does not contain the correct number of fields: expected=%s, actual=%s", fields.size(), fieldNum);
 			return product.build();
 		}
 
@@ -282,5 +1301,239 @@ public class Inventory implements IInventory {
 			}
 		}
 
+		/**
+		 * Parses a plain decimal value (an optional sign, digits and an optional
+		 * decimal point) directly into {@link Money} minor units, rounding like
+		 * {@link Money#of(BigDecimal)}. Any other value (e.g. with an exponent, too
+		 * many digits or invalid) is parsed by {@link BigDecimal#BigDecimal(String)}
+		 * so that the result (or error) is always the same.
+		 */
+		private long parsePrice(int lineNumber, int fieldNumber, String fieldName, Line line, int from, int to) {
+			int i = from;
+			final boolean negative = i < to && line.charAt(i) == '-';
+			if (i < to && (negative || line.charAt(i) == '+')) {
+				i++;
+			}
+			long unscaled = 0;
+			int digits = 0;
+			int scale = -1;
+			for (; i < to; i++) {
+				final int c = line.charAt(i);
+				if (c >= '0' && c <= '9') {
+					unscaled = unscaled * 10 + (c - '0');
+					digits++;
+					if (scale >= 0) {
+						scale++;
+					}
+				} else if (c == '.' && scale < 0) {
+					scale = 0;
+				} else {
+					break;
+				}
+			}
+			if (i == to && digits > 0 && digits <= MAX_LONG_DIGITS && Money.SCALE >= 0) {
+				scale = Math.max(scale, 0);
+				if (scale > Money.SCALE) {
+					// round half up, i.e. away from zero if the first dropped digit is 5 or more
+					final long divisor = POWERS_OF_TEN[scale - Money.SCALE];
+					final long rounded = unscaled / divisor + (unscaled % divisor >= divisor / 2 ? 1 : 0);
+					return negative ? -rounded : rounded;
+				} else if (digits + Money.SCALE - scale <= MAX_LONG_DIGITS) {
+					final long scaled = unscaled * POWERS_OF_TEN[Money.SCALE - scale];
+					return negative ? -scaled : scaled;
+				}
+			}
+			return Money.of(parseBigDecimal(lineNumber, fieldNumber, fieldName, line.toString(from, to)));
+		}
+
+		/**
+		 * Parses a plain integer value (an optional sign and digits) directly into an
+		 * int; any other value is parsed by {@link Integer#valueOf(String)} so that
+		 * the result (or error) is always the same.
+		 */
+		private int parseInt(int lineNumber, int fieldNumber, String fieldName, Line line, int from, int to) {
+			int i = from;
+			final boolean negative = i < to && line.charAt(i) == '-';
+			if (i < to && (negative || line.charAt(i) == '+')) {
+				i++;
+			}
+			long value = 0;
+			int digits = 0;
+			for (; i < to; i++) {
+				final int c = line.charAt(i);
+				if (c >= '0' && c <= '9') {
+					value = value * 10 + (c - '0');
+					digits++;
+				} else {
+					break;
+				}
+			}
+			if (i == to && digits > 0 && digits <= MAX_INT_DIGITS) {
+				return (int) (negative ? -value : value);
+			}
+			return parseInteger(lineNumber, fieldNumber, fieldName, line.toString(from, to));
+		}
+
+		/**
+		 * A line of input scanned in place by the parser. Only ASCII characters are
+		 * significant to the parser; only the text values of a product are copied out
+		 * of the line. Instances are reusable views and are not thread-safe.
+		 */
+		abstract static class Line {
+
+			abstract int length();
+
+			/**
+			 * @return the character at the given index (for ASCII characters) or a value
+			 *         that is not an ASCII character
+			 */
+			abstract int charAt(int index);
+
+			/**
+			 * @return true if the given character is whitespace that is trimmed from
+			 *         values
+			 */
+			abstract boolean isWhitespace(int c);
+
+			/**
+			 * @return the text of the line from index from to index to
+			 */
+			abstract String toString(int from, int to);
+
+			int indexOf(final char c, final int from) {
+				final int length = length();
+				for (int i = from; i < length; i++) {
+					if (charAt(i) == c) {
+						return i;
+					}
+				}
+				return -1;
+			}
+
+			int trimStart(int from, final int to) {
+				while (from < to && isWhitespace(charAt(from))) {
+					from++;
+				}
+				return from;
+			}
+
+			int trimEnd(final int from, int to) {
+				while (to > from && isWhitespace(charAt(to - 1))) {
+					to--;
+				}
+				return to;
+			}
+
+			@Override
+			public String toString() {
+				return toString(0, length());
+			}
+		}
+
+		/**
+		 * A reusable view of a line of characters
+		 */
+		static final class CharLine extends Line {
+			private CharSequence chars;
+
+			CharLine wrap(final CharSequence chars) {
+				this.chars = chars;
+				return this;
+			}
+
+			@Override
+			int length() {
+				return chars.length();
+			}
+
+			@Override
+			int charAt(final int index) {
+				return chars.charAt(index);
+			}
+
+			/**
+			 * The characters matched by {@link CharMatcher#whitespace()} (i.e. trimmed by
+			 * {@link Splitter#trimResults()})
+			 */
+			@Override
+			boolean isWhitespace(final int c) {
+				return CharMatcher.whitespace().matches((char) c);
+			}
+
+			@Override
+			String toString(final int from, final int to) {
+				return chars.subSequence(from, to).toString();
+			}
+		}
+
+		/**
+		 * A reusable view of a line of bytes (e.g. of a memory-mapped file). Multi-byte
+		 * UTF-8 characters never match an ASCII character, so the line is scanned
+		 * byte by byte and only text values are decoded (as UTF-8).
+		 */
+		static final class ByteLine extends Line {
+			private ByteBuffer buffer;
+			private int start;
+			private int end;
+			private byte[] scratch = new byte[64];
+
+			/**
+			 * @param buffer the buffer containing the line
+			 * @param start  the index of the first byte of the line
+			 * @param end    the index after the last byte of the line (excluding the line
+			 *               terminator)
+			 * @return this line
+			 */
+			ByteLine wrap(final ByteBuffer buffer, final int start, final int end) {
+				this.buffer = buffer;
+				this.start = start;
+				this.end = end;
+				return this;
+			}
+
+			@Override
+			int length() {
+				return end - start;
+			}
+
+			@Override
+			int charAt(final int index) {
+				return buffer.get(start + index) & 0xff;
+			}
+
+			/**
+			 * @return true if the line is empty or only contains whitespace and control
+			 *         characters (like {@link String#trim()})
+			 */
+			boolean isBlank() {
+				for (int i = start; i < end; i++) {
+					if ((buffer.get(i) & 0xff) > ' ') {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			/**
+			 * The ASCII characters matched by {@link CharMatcher#whitespace()}
+			 */
+			@Override
+			boolean isWhitespace(final int c) {
+				return c == ' ' || (c >= '\t' && c <= '\r');
+			}
+
+			@Override
+			String toString(final int from, final int to) {
+				final int length = to - from;
+				if (scratch.length < length) {
+					scratch = new byte[Math.max(length, 2 * scratch.length)];
+				}
+				for (int i = 0; i < length; i++) {
+					scratch[i] = buffer.get(start + from + i);
+				}
+				return new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+		}
+
 	}
 }
\ No newline at end of file
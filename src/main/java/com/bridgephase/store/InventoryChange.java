@@ -0,0 +1,86 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * A change of a product in an {@link Inventory}, published by
+ * {@link Inventory#changes()}.
+ * <p>
+ * The {@link #getDelta() delta} of a change is exact: the quantity of a product
+ * is the sum of the deltas of its changes. The {@link #getProduct() product}
+ * is the product as of the change; changes of a product that is adjusted
+ * concurrently (e.g. by two cash registers) may be published in a different
+ * order than their adjustments were applied, so a subscriber should take the
+ * quantity from the deltas and the other details from the latest product.
+ */
+public final class InventoryChange {
+
+	public enum Type {
+		/**
+		 * A replenishment record was merged into the product (see
+		 * {@link Product#merge(Product, Product)}); the delta is the quantity of the
+		 * record
+		 */
+		MERGE,
+		/**
+		 * The quantity of the product was adjusted (e.g. by a sale)
+		 */
+		ADJUST
+	}
+
+	private final Type type;
+	private final Product product;
+	private final int delta;
+
+	InventoryChange(final Type type, final Product product, final int delta) {
+		this.type = checkNotNull(type, "The 'Type type' argument is required; it must not be null");
+		this.product = checkNotNull(product, "The 'Product product' argument is required; it must not be null");
+		this.delta = delta;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getUpc() {
+		return product.getUpc();
+	}
+
+	/**
+	 * @return the product as of this change
+	 */
+	public Product getProduct() {
+		return product;
+	}
+
+	/**
+	 * @return the amount by which this change changed the quantity of the product
+	 */
+	public int getDelta() {
+		return delta;
+	}
+
+	@Override
+	public String toString() {
+		return "InventoryChange [type=" + type + ", delta=" + delta + ", product=" + product + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(type, product, delta);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof InventoryChange)) {
+			return false;
+		}
+		final InventoryChange other = (InventoryChange) obj;
+		return type == other.type && product.equals(other.product) && delta == other.delta;
+	}
+}
@@ -0,0 +1,121 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * The {@link Flow.Publisher} of the {@link InventoryChange changes} of an
+ * {@link Inventory}.
+ * <p>
+ * Changes are delivered by a {@link SubmissionPublisher}, which buffers up to
+ * {@link #getBufferSize() a number of} changes for each subscriber and only
+ * delivers as many changes as the subscriber has
+ * {@link Flow.Subscription#request(long) requested}. The inventory offers each
+ * change without waiting, so that a sale never waits for a subscriber: if the
+ * buffer of a subscriber is full, the change is dropped for that subscriber,
+ * and the subscriber is cancelled and signalled an
+ * {@link InventoryChangesDroppedException} in place of its next change. Such a
+ * subscriber should read the inventory again and subscribe again.
+ * <p>
+ * When nobody is subscribed no change is created.
+ */
+final class InventoryChangeFeed implements Flow.Publisher<InventoryChange> {
+
+	private final SubmissionPublisher<InventoryChange> publisher;
+
+	/**
+	 * Creates a feed that delivers changes asynchronously (on the common pool if it
+	 * has more than one thread) with {@link Flow#defaultBufferSize() the default
+	 * buffer size}
+	 */
+	InventoryChangeFeed() {
+		this.publisher = new SubmissionPublisher<>();
+	}
+
+	/**
+	 * @param executor   the executor on which changes are delivered
+	 * @param bufferSize the most changes buffered for each subscriber
+	 */
+	InventoryChangeFeed(final Executor executor, final int bufferSize) {
+		this.publisher = new SubmissionPublisher<>(executor, bufferSize);
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super InventoryChange> subscriber) {
+		checkNotNull(subscriber,
+				"The 'Flow.Subscriber<? super InventoryChange> subscriber' argument is required; it must not be null");
+		publisher.subscribe(new Subscriber(subscriber));
+	}
+
+	/**
+	 * @return whether a change would be delivered to any subscriber
+	 */
+	boolean hasSubscribers() {
+		return publisher.hasSubscribers();
+	}
+
+	int getBufferSize() {
+		return publisher.getMaxBufferCapacity();
+	}
+
+	/**
+	 * Offers the given change to each subscriber without waiting
+	 */
+	void publish(final InventoryChange change) {
+		publisher.offer(change, (subscriber, dropped) -> {
+			((Subscriber) subscriber).dropped = true;
+			return false;
+		});
+	}
+
+	/**
+	 * Forwards the changes to a subscriber until a change is dropped for it
+	 */
+	private static final class Subscriber implements Flow.Subscriber<InventoryChange> {
+		private final Flow.Subscriber<? super InventoryChange> downstream;
+		private Flow.Subscription subscription;
+		private volatile boolean dropped;
+		private boolean failed;
+
+		Subscriber(final Flow.Subscriber<? super InventoryChange> downstream) {
+			this.downstream = downstream;
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			downstream.onSubscribe(subscription);
+		}
+
+		@Override
+		public void onNext(final InventoryChange change) {
+			if (failed) {
+				return;
+			}
+			if (dropped) {
+				failed = true;
+				subscription.cancel();
+				downstream.onError(new InventoryChangesDroppedException());
+				return;
+			}
+			downstream.onNext(change);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			if (!failed) {
+				downstream.onError(throwable);
+			}
+		}
+
+		@Override
+		public void onComplete() {
+			if (!failed) {
+				downstream.onComplete();
+			}
+		}
+	}
+}
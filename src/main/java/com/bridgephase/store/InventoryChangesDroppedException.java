@@ -0,0 +1,14 @@
+package com.bridgephase.store;
+
+/**
+ * Signalled to a subscriber of {@link Inventory#changes()} that fell so far
+ * behind that changes had to be dropped for it. The subscriber is cancelled; it
+ * should read the inventory again and subscribe again.
+ */
+public class InventoryChangesDroppedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public InventoryChangesDroppedException() {
+		super("Inventory changes were dropped because the subscriber fell behind");
+	}
+}
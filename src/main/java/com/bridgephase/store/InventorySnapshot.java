@@ -0,0 +1,275 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * The binary snapshot format of the products of an {@link Inventory}, which
+ * loads much faster than the comma separated replenishment format because
+ * nothing has to be parsed.
+ * <p>
+ * A snapshot is a header (magic number, format version, the {@link Money#SCALE
+ * scale} of its prices and the number of products) followed by one record per
+ * product and the CRC-32 of the records. A record is the UTF-8 upc and name,
+ * each prefixed by its length as an unsigned short, the wholesale and retail
+ * prices as long {@link Money} minor units and the quantity as an int. All
+ * numbers are big-endian.
+ * <p>
+ * Snapshots are read through memory-mapped windows of the file in two passes:
+ * the first verifies the records against the checksum, the second decodes them
+ * in place, so no record of a corrupt snapshot is read.
+ */
+final class InventorySnapshot {
+
+	private static final int MAGIC = 0x42534e50; // "BSNP"
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The header of a snapshot: magic, version, scale and count
+	 */
+	private static final int HEADER_BYTES = Integer.BYTES * 4;
+
+	/**
+	 * The bytes of a record besides its upc and name: their lengths, the prices
+	 * and the quantity
+	 */
+	private static final int FIXED_RECORD_BYTES = Short.BYTES * 2 + Long.BYTES * 2 + Integer.BYTES;
+
+	/**
+	 * The size of the buffer through which a snapshot is written
+	 */
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	private InventorySnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of the given products to the given file, replacing the
+	 * file if it exists. The products are iterated once, so they may be streamed
+	 * from an inventory; the number of products is written to the header once they
+	 * have all been written.
+	 * <p>
+	 * The snapshot is written to a temporary file in the same directory, forced to
+	 * the storage device and then atomically moved to the given file, so a failure
+	 * while writing leaves the file as it was rather than a torn snapshot.
+	 *
+	 * @param path     the snapshot file
+	 * @param products the products
+	 * @return the number of products written
+	 * @throws IOException if an IOException occurs while writing the file
+	 */
+	static int write(final Path path, final Iterable<Product> products) throws IOException {
+		final Path absolute = path.toAbsolutePath();
+		final Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			final int count = write(temporary, products.iterator());
+			Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE);
+			return count;
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static int write(final Path path, final Iterator<Product> products) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+			final CRC32 crc = new CRC32();
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(Money.SCALE).putInt(0);
+			write(channel, buffer, null);
+			int count = 0;
+			while (products.hasNext()) {
+				final Product product = products.next();
+				final byte[] upc = encode(product.getUpc());
+				final byte[] name = encode(product.getName());
+				if (buffer.remaining() < FIXED_RECORD_BYTES + upc.length + name.length) {
+					write(channel, buffer, crc);
+				}
+				buffer.putShort((short) upc.length).put(upc);
+				buffer.putShort((short) name.length).put(name);
+				buffer.putLong(product.getWholesaleMinorUnits()).putLong(product.getRetailMinorUnits())
+						.putInt(product.getQuantity());
+				count++;
+			}
+			write(channel, buffer, crc);
+			buffer.putInt((int) crc.getValue());
+			write(channel, buffer, null);
+			buffer.putInt(count).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, HEADER_BYTES - Integer.BYTES + buffer.position());
+			}
+			channel.force(true);
+			return count;
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel
+	 *
+	 * @param crc the checksum to update with the bytes, or null
+	 */
+	private static void write(final FileChannel channel, final ByteBuffer buffer, final CRC32 crc)
+			throws IOException {
+		buffer.flip();
+		if (crc != null) {
+			crc.update(buffer.array(), 0, buffer.limit());
+		}
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static byte[] encode(final String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		checkArgument(bytes.length <= 0xffff, "Value exceeds the maximum length of 65535 bytes: %s", value);
+		return bytes;
+	}
+
+	/**
+	 * Reads the products of the given snapshot file. The file is verified against
+	 * its checksum before the first product is passed to the consumer, so no
+	 * product of a snapshot that is not intact is consumed.
+	 *
+	 * @param path     the snapshot file
+	 * @param consumer accepts each product of the snapshot, in the order it was
+	 *                 written
+	 * @return the number of products read
+	 * @throws IOException if an IOException occurs while reading the file or the
+	 *                     file is not an intact snapshot
+	 */
+	static int read(final Path path, final Consumer<Product> consumer) throws IOException {
+		return read(path, consumer, Inventory.MAX_MAPPED_BYTES);
+	}
+
+	/**
+	 * Reads the products of the given snapshot file, mapping at most the given
+	 * number of bytes at once
+	 */
+	static int read(final Path path, final Consumer<Product> consumer, final int mappedBytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size < HEADER_BYTES + Integer.BYTES) {
+				throw new IOException("Not an inventory snapshot: size=" + size);
+			}
+			final MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES);
+			final int magic = header.getInt();
+			final int version = header.getInt();
+			final int scale = header.getInt();
+			final int count = header.getInt();
+			if (magic != MAGIC || version != VERSION) {
+				throw new IOException(String.format("Not an inventory snapshot: magic=%x, version=%s", magic, version));
+			}
+			if (scale != Money.SCALE) {
+				throw new IOException(
+						String.format("Inventory snapshot has prices of scale %s, expected %s", scale, Money.SCALE));
+			}
+			// the first pass only checks the records, the second decodes them
+			final CRC32 crc = new CRC32();
+			scan(channel, count, mappedBytes, crc, null);
+			final ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES);
+			channel.read(trailer, size - Integer.BYTES);
+			if (trailer.getInt(0) != (int) crc.getValue()) {
+				throw new IOException("Corrupt inventory snapshot: checksum mismatch");
+			}
+			return scan(channel, count, mappedBytes, null, consumer);
+		}
+	}
+
+	/**
+	 * Scans the records of a snapshot through mapped windows of the file
+	 *
+	 * @param crc      the checksum to update with the records, or null
+	 * @param consumer accepts each decoded product, or null not to decode them
+	 * @return the number of records scanned
+	 */
+	private static int scan(final FileChannel channel, final int count, final int mappedBytes, final CRC32 crc,
+			final Consumer<Product> consumer) throws IOException {
+		final long end = channel.size() - Integer.BYTES;
+		byte[] scratch = new byte[256];
+		long position = HEADER_BYTES;
+		int read = 0;
+		while (read < count) {
+			final int length = (int) Math.min(end - position, mappedBytes);
+			final MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, length);
+			// scan the records that are entirely within this window
+			int start = 0;
+			while (read < count) {
+				final int recordBytes = recordBytes(window, start, length);
+				if (recordBytes < 0) {
+					break;
+				}
+				if (consumer != null) {
+					final int upcLength = Short.toUnsignedInt(window.getShort(start));
+					final int nameLength = Short.toUnsignedInt(window.getShort(start + Short.BYTES + upcLength));
+					if (scratch.length < Math.max(upcLength, nameLength)) {
+						scratch = new byte[Math.max(upcLength, nameLength)];
+					}
+					int offset = start + Short.BYTES;
+					final String upc = decode(window, offset, upcLength, scratch);
+					offset += upcLength + Short.BYTES;
+					final String name = decode(window, offset, nameLength, scratch);
+					offset += nameLength;
+					consumer.accept(new Product(upc, name, window.getLong(offset), window.getLong(offset + Long.BYTES),
+							Integer.valueOf(window.getInt(offset + Long.BYTES * 2))));
+				}
+				start += recordBytes;
+				read++;
+			}
+			if (start == 0) {
+				checkArgument(length < mappedBytes, "Record exceeds the maximum length of %s bytes: position=%s",
+						mappedBytes, position);
+				throw new IOException(String.format("Truncated inventory snapshot: products=%s, read=%s", count, read));
+			}
+			if (crc != null) {
+				window.limit(start);
+				crc.update(window);
+			}
+			position += start;
+		}
+		if (position != end) {
+			throw new IOException(String.format("Inventory snapshot has trailing bytes: position=%s, size=%s",
+					position, end + Integer.BYTES));
+		}
+		return read;
+	}
+
+	/**
+	 * @return the length of the record at the given offset, or -1 if the record
+	 *         does not end before the limit
+	 */
+	private static int recordBytes(final ByteBuffer buffer, final int offset, final int limit) {
+		if (offset + Short.BYTES > limit) {
+			return -1;
+		}
+		final int upcLength = Short.toUnsignedInt(buffer.getShort(offset));
+		final int nameOffset = offset + Short.BYTES + upcLength;
+		if (nameOffset + Short.BYTES > limit) {
+			return -1;
+		}
+		final int nameLength = Short.toUnsignedInt(buffer.getShort(nameOffset));
+		final int recordBytes = FIXED_RECORD_BYTES + upcLength + nameLength;
+		return offset + recordBytes > limit ? -1 : recordBytes;
+	}
+
+	private static String decode(final ByteBuffer buffer, final int offset, final int length, final byte[] scratch) {
+		for (int i = 0; i < length; i++) {
+			scratch[i] = buffer.get(offset + i);
+		}
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,109 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * A read-only view of one version of the catalog of an {@link Inventory},
+ * returned by {@link Inventory#pin()}. Every read of the view sees the products
+ * (and their names and prices) of the replenishments completed when the view
+ * was pinned and none of a later or partially applied replenishment, so a
+ * report built from several reads is consistent, while replenishments continue
+ * without waiting for the view. Quantities are not versioned: every read sees
+ * the current quantity of a product.
+ * <p>
+ * Pinning a version costs a map update, not a copy of the catalog. The
+ * inventory keeps the records of a pinned version until the view is closed, so
+ * views are to be closed once read, e.g. in a try-with-resources statement.
+ * <p>
+ * Note: This view is thread-safe.
+ */
+public final class InventoryView implements AutoCloseable {
+
+	private final Inventory inventory;
+
+	private final long version;
+
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	InventoryView(final Inventory inventory, final long version) {
+		this.inventory = inventory;
+		this.version = version;
+	}
+
+	/**
+	 * @return the version of the catalog of this view
+	 * @see Inventory#getVersion()
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param upc the UPC
+	 * @return the product with the given UPC in this view, or empty if the view
+	 *         does not contain it
+	 * @throws IllegalStateException if this view has been closed
+	 */
+	public Optional<Product> find(final String upc) {
+		checkOpen();
+		return inventory.find(upc, version);
+	}
+
+	/**
+	 * @return an unmodifiable list of the products of this view
+	 * @throws IllegalStateException if this view has been closed
+	 */
+	public List<Product> list() {
+		checkOpen();
+		return inventory.list(version);
+	}
+
+	/**
+	 * @return a stream of the products of this view, which is not to be consumed
+	 *         once the view is closed
+	 * @throws IllegalStateException if this view has been closed
+	 */
+	public Stream<Product> stream() {
+		checkOpen();
+		return inventory.stream(version);
+	}
+
+	/**
+	 * @param afterUpc the UPC after which the page starts, or null for the first
+	 *                 page
+	 * @param limit    the most products in the page
+	 * @param filter   the products to include
+	 * @return the products of this view that match the filter, in ascending order
+	 *         of UPC
+	 * @throws IllegalStateException if this view has been closed
+	 * @see Inventory#page(String, int, Predicate)
+	 */
+	public List<Product> page(final String afterUpc, final int limit, final Predicate<? super Product> filter) {
+		checkArgument(limit >= 0, "The 'int limit' argument must not be negative: limit=%s", limit);
+		checkNotNull(filter, "The 'Predicate<? super Product> filter' argument is required; it must not be null");
+		checkOpen();
+		return inventory.page(afterUpc, limit, filter, version);
+	}
+
+	private void checkOpen() {
+		checkState(!closed.get(), "The inventory view has been closed");
+	}
+
+	/**
+	 * Unpins the version of this view; closing a closed view has no effect
+	 */
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			inventory.unpin(version);
+		}
+	}
+}
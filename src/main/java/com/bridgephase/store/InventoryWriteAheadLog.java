@@ -0,0 +1,591 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the mutations of an {@link Inventory}: the replenishment
+ * records merged into it and the quantity deltas applied to it, so that the
+ * inventory can be recovered after a restart without reprocessing the vendor
+ * files it was replenished from.
+ * <p>
+ * The log is a directory of numbered files. <code>wal-N</code> holds the
+ * mutations logged after <code>checkpoint-N</code>, an
+ * {@link InventorySnapshot inventory snapshot} of every product (with its
+ * quantity) at the moment <code>wal-N</code> was started. {@link Inventory#Inventory(InventoryWriteAheadLog) Opening an
+ * inventory} on a log replays the latest checkpoint followed by the log files
+ * written since, stopping in each file at the first incomplete or corrupt
+ * record (e.g. one torn by a crash).
+ * <p>
+ * A {@link #checkpoint() checkpoint} starts a new log file and then writes the
+ * products of the inventory to a new checkpoint file; once that file is
+ * complete the older files are deleted. A checkpoint is taken on a background
+ * thread each time the current log file grows past the given number of bytes.
+ * Mutations are blocked only while the products are copied and the new log
+ * file is started, not while the checkpoint is written.
+ * <p>
+ * Logged mutations are written to the operating system before the inventory
+ * call that made them returns, so they survive a restart of the JVM; they are
+ * forced to the storage device by {@link #sync()}, each checkpoint and
+ * {@link #close()}.
+ * <p>
+ * Note: This log is thread-safe. The inventory logs a mutation and applies it
+ * while holding the {@link #lock() lock} of this log, so the order of the records is the
+ * order in which the mutations were applied.
+ */
+public class InventoryWriteAheadLog implements Closeable {
+
+	/**
+	 * The default size of a log file that triggers a checkpoint
+	 */
+	public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+	private static final int MAGIC = 0x42574c47; // "BWLG"
+
+	private static final int VERSION = 1;
+
+	/**
+	 * The header of a file: magic, version and the {@link Money#SCALE scale} of
+	 * the prices in the file
+	 */
+	private static final int HEADER_BYTES = Integer.BYTES * 3;
+
+	/**
+	 * The bytes of a record ahead of its payload: the payload length and CRC-32
+	 */
+	private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+
+	private static final byte MERGE = 1;
+
+	private static final byte ADJUST = 2;
+
+	private static final String LOG_PREFIX = "wal-";
+
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+
+	private final Path directory;
+
+	private final long checkpointBytes;
+
+	/**
+	 * Takes the checkpoints triggered by the size of the log
+	 */
+	private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+		final Thread thread = new Thread(runnable, "inventory-checkpoint");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Serializes checkpoints
+	 */
+	private final Object checkpointLock = new Object();
+
+	/**
+	 * Guards the current log file; held while a mutation is logged and applied
+	 */
+	private final ProfiledLock lock = new ProfiledLock("inventory log");
+
+	/**
+	 * The number of the current log file
+	 */
+	private long sequence;
+
+	/**
+	 * The current log file, or null until the log has been recovered
+	 */
+	private Segment segment;
+
+	/**
+	 * The products of the inventory, or null until the log has been recovered
+	 */
+	private Supplier<List<Product>> products;
+
+	private boolean checkpointScheduled;
+
+	/**
+	 * The failure of a write; once a write fails it is unknown which mutations
+	 * were logged, so the log refuses further mutations
+	 */
+	private UncheckedIOException failure;
+
+	private boolean closed;
+
+	/**
+	 * Opens the log in the given directory, creating the directory if it does not
+	 * exist, with a checkpoint every {@link #DEFAULT_CHECKPOINT_BYTES} logged
+	 * bytes.
+	 *
+	 * @param directory the directory of the log
+	 * @throws UncheckedIOException if an IOException occurs while creating the
+	 *                              directory
+	 */
+	public InventoryWriteAheadLog(final Path directory) {
+		this(directory, DEFAULT_CHECKPOINT_BYTES);
+	}
+
+	/**
+	 * @param directory       the directory of the log
+	 * @param checkpointBytes the size of a log file that triggers a checkpoint
+	 * @throws UncheckedIOException if an IOException occurs while creating the
+	 *                              directory
+	 */
+	public InventoryWriteAheadLog(final Path directory, final long checkpointBytes) {
+		this.directory = checkNotNull(directory, "The 'Path directory' argument is required; it must not be null");
+		checkArgument(checkpointBytes > 0, "The 'long checkpointBytes' argument must be positive: %s", checkpointBytes);
+		this.checkpointBytes = checkpointBytes;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error creating inventory log directory: path=" + directory, e);
+		}
+	}
+
+	/**
+	 * The target of the replay of a log
+	 */
+	interface Replay {
+		/**
+		 * Merges the given replenishment record without logging it
+		 */
+		void merge(Product product);
+
+		/**
+		 * Adjusts the quantity of the given product without logging it; a product
+		 * that does not exist is ignored
+		 */
+		void adjust(String upc, int delta);
+	}
+
+	/**
+	 * Replays the latest checkpoint and the log files written since into the
+	 * given target, then starts a new log file for the mutations to come.
+	 *
+	 * @param target   the inventory to recover
+	 * @param products supplies the products of the recovered inventory for
+	 *                 checkpoints
+	 * @throws IllegalStateException if the log has already been recovered or has
+	 *                               been closed
+	 * @throws UncheckedIOException  if an IOException occurs while reading the log
+	 */
+	void recover(final Replay target, final Supplier<List<Product>> products) {
+		lock.lock(ProfiledLock.Operation.RECOVER);
+		try {
+			checkState(!closed, "The inventory log has been closed");
+			checkState(this.products == null, "The inventory log has already been recovered");
+			try {
+				final NavigableMap<Long, Path> logs = list(LOG_PREFIX);
+				final NavigableMap<Long, Path> checkpoints = list(CHECKPOINT_PREFIX);
+				long next = 0;
+				if (!checkpoints.isEmpty()) {
+					next = checkpoints.lastKey();
+					InventorySnapshot.read(checkpoints.lastEntry().getValue(), target::merge);
+				}
+				for (Path log : logs.tailMap(next, true).values()) {
+					final long end = replay(log, target);
+					if (end < Files.size(log)) {
+						truncate(log, end);
+					}
+				}
+				if (!logs.isEmpty()) {
+					next = Math.max(next, logs.lastKey() + 1);
+				}
+				this.sequence = next;
+				this.segment = Segment.create(directory.resolve(LOG_PREFIX + format(next)));
+				this.products = products;
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error recovering inventory log: path=" + directory, e);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Logs the merge of the given replenishment record. The record may be buffered
+	 * until the next {@link #write()}. Callers must hold the lock of this log.
+	 */
+	void merge(final Product product) {
+		checkWritable();
+		try {
+			segment.merge(product);
+		} catch (IOException e) {
+			throw failed(e);
+		}
+	}
+
+	/**
+	 * Logs a quantity delta. The record may be buffered until the next
+	 * {@link #write()}. Callers must hold the lock of this log.
+	 */
+	void adjust(final String upc, final int delta) {
+		checkWritable();
+		try {
+			segment.adjust(upc, delta);
+		} catch (IOException e) {
+			throw failed(e);
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the current log file, and schedules a
+	 * checkpoint if the file has outgrown the checkpoint size. Callers must hold
+	 * the lock of this log.
+	 */
+	void write() {
+		checkWritable();
+		try {
+			segment.write();
+		} catch (IOException e) {
+			throw failed(e);
+		}
+		if (segment.bytes >= checkpointBytes && !checkpointScheduled) {
+			checkpointScheduled = true;
+			try {
+				checkpointer.execute(() -> {
+					try {
+						checkpoint();
+					} catch (RuntimeException e) {
+						// the log keeps growing until a later checkpoint succeeds
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// the log is being closed
+			}
+		}
+	}
+
+	/**
+	 * Forces the logged mutations to the storage device
+	 *
+	 * @throws UncheckedIOException if an IOException occurs while writing the log
+	 */
+	public void sync() {
+		lock.lock(ProfiledLock.Operation.SYNC);
+		try {
+			write();
+			segment.channel.force(false);
+		} catch (IOException e) {
+			throw failed(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Starts a new log file and writes a checkpoint of the inventory from which
+	 * the new log file continues, then deletes the older checkpoints and log
+	 * files.
+	 *
+	 * @throws IllegalStateException if the log has not been recovered or has been
+	 *                               closed
+	 * @throws UncheckedIOException  if an IOException occurs while writing the
+	 *                               checkpoint
+	 */
+	public void checkpoint() {
+		synchronized (checkpointLock) {
+			final List<Product> snapshot;
+			final long next;
+			lock.lock(ProfiledLock.Operation.CHECKPOINT);
+			try {
+				checkState(products != null, "The inventory log has not been recovered");
+				checkWritable();
+				checkpointScheduled = false;
+				try {
+					segment.write();
+					segment.close();
+					next = sequence + 1;
+					segment = Segment.create(directory.resolve(LOG_PREFIX + format(next)));
+					sequence = next;
+				} catch (IOException e) {
+					throw failed(e);
+				}
+				snapshot = products.get();
+			} finally {
+				lock.unlock();
+			}
+			final Path checkpoint = directory.resolve(CHECKPOINT_PREFIX + format(next));
+			final Path temporary = directory.resolve(CHECKPOINT_PREFIX + format(next) + ".tmp");
+			try {
+				// left over if a previous checkpoint failed
+				Files.deleteIfExists(temporary);
+				InventorySnapshot.write(temporary, snapshot);
+				Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE);
+				for (Path old : list(LOG_PREFIX).headMap(next, false).values()) {
+					Files.delete(old);
+				}
+				for (Path old : list(CHECKPOINT_PREFIX).headMap(next, false).values()) {
+					Files.delete(old);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error writing inventory checkpoint: path=" + checkpoint, e);
+			}
+		}
+	}
+
+	/**
+	 * Closes this log once the logged mutations are forced to the storage device.
+	 * Mutations of the inventory fail once its log is closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		checkpointer.shutdown();
+		try {
+			checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		lock.lock(ProfiledLock.Operation.CLOSE);
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (segment != null) {
+				if (failure == null) {
+					segment.write();
+				}
+				segment.close();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the lock that callers hold while they log and apply a mutation
+	 */
+	ProfiledLock lock() {
+		return lock;
+	}
+
+	private void checkWritable() {
+		checkState(!closed, "The inventory log has been closed");
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private UncheckedIOException failed(final IOException e) {
+		failure = new UncheckedIOException("Error writing inventory log: path=" + directory, e);
+		return failure;
+	}
+
+	/**
+	 * @return the numbered files of the log directory with the given prefix, keyed
+	 *         by number
+	 */
+	private NavigableMap<Long, Path> list(final String prefix) throws IOException {
+		final NavigableMap<Long, Path> files = new TreeMap<>();
+		try (Stream<Path> paths = Files.list(directory)) {
+			paths.forEach(path -> {
+				final String name = path.getFileName().toString();
+				if (name.startsWith(prefix) && name.length() > prefix.length()
+						&& name.chars().skip(prefix.length()).allMatch(c -> c >= '0' && c <= '9')) {
+					files.put(Long.valueOf(name.substring(prefix.length())), path);
+				}
+			});
+		}
+		return files;
+	}
+
+	private static String format(final long number) {
+		return String.format("%019d", number);
+	}
+
+	private static void truncate(final Path path, final long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Replays the intact records of the given file into the given target
+	 *
+	 * @return the position following the last intact record
+	 * @throws IOException if an IOException occurs while reading or the file is not
+	 *                     an inventory log
+	 */
+	static long replay(final Path path, final Replay target) throws IOException {
+		final long size = Files.size(path);
+		if (size < HEADER_BYTES) {
+			return 0;
+		}
+		try (InputStream stream = Files.newInputStream(path)) {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+			final int magic = in.readInt();
+			final int version = in.readInt();
+			final int scale = in.readInt();
+			if (magic != MAGIC || version != VERSION) {
+				throw new IOException(String.format("Not an inventory log: magic=%x, version=%s", magic, version));
+			}
+			if (scale != Money.SCALE) {
+				throw new IOException(String.format("Inventory log has prices of scale %s, expected %s", scale,
+						Money.SCALE));
+			}
+			long position = HEADER_BYTES;
+			final CRC32 crc = new CRC32();
+			byte[] payload = new byte[256];
+			while (position + RECORD_HEADER_BYTES <= size) {
+				final int length = in.readInt();
+				final int checksum = in.readInt();
+				if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+					break;
+				}
+				if (payload.length < length) {
+					payload = new byte[Math.max(length, payload.length * 2)];
+				}
+				in.readFully(payload, 0, length);
+				crc.reset();
+				crc.update(payload, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				final ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+				final byte type = record.get();
+				if (type == MERGE) {
+					final String upc = getString(record);
+					final String name = getString(record);
+					target.merge(new Product(upc, name, record.getLong(), record.getLong(), Integer.valueOf(record.getInt())));
+				} else if (type == ADJUST) {
+					target.adjust(getString(record), record.getInt());
+				} else {
+					throw new IOException(String.format("Unknown inventory log record: type=%s, position=%s", type,
+							position));
+				}
+				position += RECORD_HEADER_BYTES + length;
+			}
+			return position;
+		}
+	}
+
+	private static String getString(final ByteBuffer record) {
+		final int length = Short.toUnsignedInt(record.getShort());
+		final String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return value;
+	}
+
+	/**
+	 * A log or checkpoint file being written. Records are encoded into a buffer
+	 * that is written to the file when full or on {@link #write()}.
+	 */
+	private static final class Segment implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		private final CRC32 crc = new CRC32();
+		/**
+		 * The number of bytes written to the file
+		 */
+		private long bytes;
+
+		private Segment(final FileChannel channel) {
+			this.channel = channel;
+		}
+
+		static Segment create(final Path path) throws IOException {
+			final Segment segment = new Segment(FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE));
+			segment.buffer.putInt(MAGIC).putInt(VERSION).putInt(Money.SCALE);
+			segment.write();
+			return segment;
+		}
+
+		void merge(final Product product) throws IOException {
+			final byte[] upc = encode(product.getUpc());
+			final byte[] name = encode(product.getName());
+			final int start = begin(1 + 2 + upc.length + 2 + name.length + Long.BYTES * 2 + Integer.BYTES);
+			buffer.put(MERGE);
+			buffer.putShort((short) upc.length).put(upc);
+			buffer.putShort((short) name.length).put(name);
+			buffer.putLong(product.getWholesaleMinorUnits()).putLong(product.getRetailMinorUnits())
+					.putInt(product.getQuantity());
+			end(start);
+		}
+
+		void adjust(final String upc, final int delta) throws IOException {
+			final byte[] bytes = encode(upc);
+			final int start = begin(1 + 2 + bytes.length + Integer.BYTES);
+			buffer.put(ADJUST);
+			buffer.putShort((short) bytes.length).put(bytes);
+			buffer.putInt(delta);
+			end(start);
+		}
+
+		private static byte[] encode(final String value) {
+			final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			checkArgument(bytes.length <= 0xffff, "Value exceeds the maximum length of 65535 bytes: %s", value);
+			return bytes;
+		}
+
+		/**
+		 * Reserves room for a record with a payload of the given length
+		 *
+		 * @return the position of the record
+		 */
+		private int begin(final int length) throws IOException {
+			if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+				write();
+			}
+			checkArgument(RECORD_HEADER_BYTES + length <= buffer.capacity(),
+					"Record exceeds the maximum length of %s bytes", buffer.capacity());
+			final int start = buffer.position();
+			buffer.position(start + RECORD_HEADER_BYTES);
+			return start;
+		}
+
+		/**
+		 * Fills in the header of the record at the given position
+		 */
+		private void end(final int start) {
+			final int length = buffer.position() - start - RECORD_HEADER_BYTES;
+			crc.reset();
+			crc.update(buffer.array(), start + RECORD_HEADER_BYTES, length);
+			buffer.putInt(start, length);
+			buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+		}
+
+		void write() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				bytes += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds in the style of an HDR histogram:
+ * every power of two is split into {@value #SUB_BUCKETS} linear buckets, so a
+ * percentile is reported within 1/{@value #SUB_BUCKETS} of the recorded
+ * latency over the whole range of a long, in a fixed array of counts.
+ * Recording a latency takes two atomic adds (the count is the sum of the
+ * buckets) and allocates nothing.
+ * <p>
+ * Note: This histogram is thread-safe. The percentiles read while latencies
+ * are recorded are not of one instant, which does not matter for monitoring.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a latency; negative latencies are recorded as 0
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(final long nanos) {
+		final long latency = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(latency));
+		totalNanos.add(latency);
+		// only written while the maximum grows, which is rare once warmed up
+		for (long max; latency > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, latency);) {
+		}
+	}
+
+	/**
+	 * Records the latency from the given {@link System#nanoTime()} until now
+	 *
+	 * @param startNanos the start of the operation
+	 */
+	public void recordSince(final long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	private static int bucket(final long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest latency recorded in the given bucket
+	 */
+	private static long highestOf(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		final long width = 1L << (exponent - SUB_BITS);
+		return (1L << exponent) + (bucket % SUB_BUCKETS + 1) * width - 1;
+	}
+
+	/**
+	 * @return the number of latencies recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the sum of the latencies recorded, in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * @return the largest latency recorded, in nanoseconds, or 0 if none was
+	 */
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	/**
+	 * @return the mean of the latencies recorded, in nanoseconds, or 0 if none was
+	 */
+	public double getMeanNanos() {
+		final long count = getCount();
+		return count == 0 ? 0 : (double) getTotalNanos() / count;
+	}
+
+	/**
+	 * @param percentile the percentile, from 0 to 100 (e.g. 99.9)
+	 * @return the latency, in nanoseconds, at or below which the given percentage
+	 *         of the recorded latencies are, or 0 if none was recorded
+	 */
+	public long getPercentileNanos(final double percentile) {
+		checkArgument(percentile >= 0 && percentile <= 100,
+				"The 'double percentile' argument must be from 0 to 100: percentile=%s", percentile);
+		final long total = getCount();
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < counts.length() && total > 0; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestOf(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+}
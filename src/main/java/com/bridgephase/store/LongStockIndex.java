@@ -0,0 +1,193 @@
+package com.bridgephase.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link StockIndex} that keys numeric UPCs by a <code>long</code> in an
+ * open-addressing hash table, so that the lookup of a numeric UPC neither
+ * hashes a {@link String} nor allocates, and an entry costs a
+ * <code>long</code> and a reference instead of a map node. UPCs that are not
+ * numeric (e.g. <code>A123</code>), or that have more than
+ * {@link #MAX_DIGITS} digits, are kept in a {@link ConcurrentHashMap}.
+ * <p>
+ * A numeric UPC is encoded with four bits per digit, each digit stored plus
+ * one, so that UPCs that differ only in leading zeros have different keys and
+ * no key is 0, which marks an empty slot. Shifting in four bits per digit is
+ * cheaper than accumulating the decimal value of the UPC.
+ * <p>
+ * The table has a single writer (see {@link StockIndex}) and any number of
+ * lock-free readers. The writer stores the value of a slot before releasing its
+ * key, and readers acquire the key before reading the value, so a reader that
+ * finds a key also finds its stock. When the table is full enough it is copied
+ * into a table twice the size, which is then published; a table is never
+ * written once it has been replaced.
+ */
+final class LongStockIndex implements StockIndex {
+
+	/**
+	 * The most digits of a UPC that is keyed by a long (e.g. a 14 digit GTIN)
+	 */
+	static final int MAX_DIGITS = 15;
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Stock[].class);
+
+	/**
+	 * The table of numeric UPCs; replaced (not written) when resized
+	 */
+	private volatile Table table = new Table(INITIAL_CAPACITY);
+
+	/**
+	 * The UPCs that are not keyed by a long
+	 */
+	private final ConcurrentMap<String, Stock> others = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of numeric UPCs in the table, only written by the writer
+	 */
+	private volatile int size;
+
+	/**
+	 * Encodes a numeric UPC as a long key
+	 *
+	 * @param upc the UPC
+	 * @return the key of the UPC, or 0 if the UPC is not numeric or has more than
+	 *         {@link #MAX_DIGITS} digits
+	 */
+	static long encode(final String upc) {
+		final int length = upc.length();
+		if (length == 0 || length > MAX_DIGITS) {
+			return 0;
+		}
+		long key = 0;
+		for (int i = 0; i < length; i++) {
+			final int digit = upc.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return 0;
+			}
+			key = (key << 4) | (digit + 1);
+		}
+		return key;
+	}
+
+	@Override
+	public Stock get(final String upc) {
+		final long key = encode(upc);
+		return key == 0 ? others.get(upc) : table.get(key);
+	}
+
+	@Override
+	public boolean merge(final Product product, final Replenishment replenishment, final long oldestPin) {
+		final long key = encode(product.getUpc());
+		if (key == 0) {
+			final Stock stock = others.get(product.getUpc());
+			if (stock != null) {
+				stock.merge(product, replenishment, oldestPin);
+				return false;
+			}
+			others.put(product.getUpc(), new Stock(product, replenishment));
+			return true;
+		}
+		Table table = this.table;
+		final Stock stock = table.get(key);
+		if (stock != null) {
+			stock.merge(product, replenishment, oldestPin);
+			return false;
+		}
+		// keep the load factor at most 1/2 so that probe sequences stay short
+		if ((size + 1) * 2 > table.keys.length) {
+			table = table.resize();
+			this.table = table;
+		}
+		table.put(key, new Stock(product, replenishment));
+		size = size + 1;
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size + others.size();
+	}
+
+	@Override
+	public void forEach(final Consumer<Stock> action) {
+		final Table table = this.table;
+		for (int i = 0; i < table.keys.length; i++) {
+			if ((long) KEYS.getAcquire(table.keys, i) != 0) {
+				action.accept(table.values[i]);
+			}
+		}
+		others.values().forEach(action);
+	}
+
+	@Override
+	public Stream<Stock> stream() {
+		final Table table = this.table;
+		return Stream.concat(IntStream.range(0, table.keys.length)
+				.filter(i -> (long) KEYS.getAcquire(table.keys, i) != 0).mapToObj(i -> table.values[i]),
+				others.values().stream());
+	}
+
+	/**
+	 * A linear-probing table of the stock of numeric UPCs
+	 */
+	private static final class Table {
+		private final long[] keys;
+		private final Stock[] values;
+		private final int mask;
+
+		Table(final int capacity) {
+			this.keys = new long[capacity];
+			this.values = new Stock[capacity];
+			this.mask = capacity - 1;
+		}
+
+		private int slot(final long key) {
+			// spread the key with the 64-bit golden ratio, taking the high bits
+			return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		}
+
+		Stock get(final long key) {
+			for (int i = slot(key);; i = (i + 1) & mask) {
+				final long k = (long) KEYS.getAcquire(keys, i);
+				if (k == key) {
+					return values[i];
+				}
+				if (k == 0) {
+					return null;
+				}
+			}
+		}
+
+		/**
+		 * Puts a key that is not in the table
+		 */
+		void put(final long key, final Stock stock) {
+			int i = slot(key);
+			while (keys[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			VALUES.setRelease(values, i, stock);
+			KEYS.setRelease(keys, i, key);
+		}
+
+		Table resize() {
+			final Table resized = new Table(keys.length * 2);
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0) {
+					resized.put(keys[i], values[i]);
+				}
+			}
+			return resized;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.bridgephase.store;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Fixed-point arithmetic on amounts of money. An amount is a <code>long</code>
+ * number of minor units (e.g. cents) of the currency of the default locale, so
+ * prices, extended prices and totals are added and multiplied without
+ * {@link BigDecimal} arithmetic. {@link BigDecimal} is only used to convert
+ * amounts at the API boundary (e.g. {@link Product#getRetailPrice()}).
+ * <p>
+ * Converting a {@link BigDecimal} to minor units rounds it to {@link #SCALE}
+ * with {@link #ROUNDING_MODE}, exactly like the scaled {@link BigDecimal}
+ * prices did, and converting back yields a {@link BigDecimal} with scale
+ * {@link #SCALE}. As long as no amount exceeds {@link Long#MAX_VALUE} minor
+ * units the results are the same as those of {@link BigDecimal} arithmetic;
+ * beyond that an {@link ArithmeticException} is thrown.
+ */
+final class Money {
+	/**
+	 * force all amounts to have the scale that matches the default fraction digits
+	 * for the default locale currency
+	 */
+	static final int SCALE = Currency.getInstance(Locale.getDefault()).getDefaultFractionDigits();
+	static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+
+	private Money() {
+	}
+
+	/**
+	 * @param amount an amount
+	 * @return the amount rounded to minor units
+	 * @throws ArithmeticException if the amount does not fit in a long number of
+	 *                             minor units
+	 */
+	static long of(final BigDecimal amount) {
+		return amount.setScale(SCALE, ROUNDING_MODE).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * @param amount an amount in minor units
+	 * @return the amount as a {@link BigDecimal} with scale {@link #SCALE}
+	 */
+	static BigDecimal toBigDecimal(final long amount) {
+		return BigDecimal.valueOf(amount, SCALE);
+	}
+
+	/**
+	 * @param amount   an amount in minor units
+	 * @param quantity a quantity
+	 * @return the amount multiplied by the quantity
+	 * @throws ArithmeticException if the result overflows a long
+	 */
+	static long multiply(final long amount, final int quantity) {
+		return Math.multiplyExact(amount, quantity);
+	}
+
+	/**
+	 * @return the sum of the given amounts in minor units
+	 * @throws ArithmeticException if the result overflows a long
+	 */
+	static long add(final long amount, final long augend) {
+		return Math.addExact(amount, augend);
+	}
+}
@@ -0,0 +1,601 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.bridgephase.store.Inventory.ProductParser;
+import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An inventory for very large catalogs that keeps its products in direct
+ * (off-heap) {@link ByteBuffer ByteBuffers} instead of in {@link Product} and
+ * {@link Stock} objects, so that the heap, and the work of the garbage
+ * collector, does not grow with the size of the catalog. {@link Product}
+ * objects are only created by {@link #find(String) find},
+ * {@link #list() list} and {@link #adjustQuantity(String, Integer)
+ * adjustQuantity}, and are garbage as soon as the caller is done with them.
+ * <p>
+ * Each product is given an ordinal when it is first replenished. The product is
+ * kept in three off-heap structures:
+ * <ul>
+ * <li>its details (the UTF-8 upc and name, each prefixed by its length as an
+ * unsigned short, and the wholesale and retail prices as long {@link Money}
+ * minor units) are appended to a segment of {@link #SEGMENT_BYTES}; a
+ * replenishment that changes the details appends a new record and the old
+ * record is not reclaimed,</li>
+ * <li>the position of its details record and its quantity are kept in chunks of
+ * slots indexed by ordinal; the quantity is adjusted with an atomic add on the
+ * direct buffer, so adjustments never lock and never lose a delta,</li>
+ * <li>an open-addressing hash table maps the {@link String#hashCode() hash} of
+ * the upc to the ordinal, both packed in one long slot; a lookup compares the
+ * upc with the details record only when the hashes match.</li>
+ * </ul>
+ * <p>
+ * Like {@link Inventory}, replenishments are serialized on this inventory and
+ * lookups, listings and adjustments proceed concurrently with them. The writer
+ * stores the details and quantity of a new product before releasing its hash
+ * table slot, and readers acquire the slot before reading them. A hash table
+ * that is full enough is copied into one twice the size, which is then
+ * published.
+ * <p>
+ * Direct buffers are limited by <code>-XX:MaxDirectMemorySize</code>, which
+ * defaults to the maximum heap size; a catalog of ten million products takes
+ * about 860 MB.
+ * <p>
+ * Note: This inventory is thread-safe.
+ */
+public class OffHeapInventory implements IInventory {
+
+	/**
+	 * The size of a segment of details records
+	 */
+	static final int SEGMENT_BYTES = 1 << 26;
+
+	/**
+	 * The log2 of the number of ordinals of a chunk of slots
+	 */
+	static final int CHUNK_SHIFT = 16;
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class,
+			ByteOrder.nativeOrder());
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+			ByteOrder.nativeOrder());
+
+	/**
+	 * The bytes of a details record besides its upc and name: their lengths and
+	 * the prices
+	 */
+	private static final int FIXED_RECORD_BYTES = Short.BYTES * 2 + Long.BYTES * 2;
+
+	private final ProductParser parser = new ProductParser();
+
+	private final int segmentBytes;
+
+	private final int chunkShift;
+
+	/**
+	 * The segments of details records; replaced (not written) when a segment is
+	 * added
+	 */
+	private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+	/**
+	 * The chunks of the positions of the details records by ordinal, each a
+	 * segment number in the high and an offset in the low 32 bits
+	 */
+	private volatile ByteBuffer[] positions = new ByteBuffer[0];
+
+	/**
+	 * The chunks of the quantities by ordinal
+	 */
+	private volatile ByteBuffer[] quantities = new ByteBuffer[0];
+
+	/**
+	 * The hash table of the ordinals; replaced (not written) when resized
+	 */
+	private volatile Table table = new Table(INITIAL_CAPACITY);
+
+	/**
+	 * The number of products, only written by the writer
+	 */
+	private volatile int size;
+
+	/**
+	 * The offset of the next details record in the last segment, only accessed by
+	 * the writer
+	 */
+	private int offset;
+
+	/**
+	 * The ordinals of the first products in ascending order of UPC, from which a
+	 * {@link #page(String, int, Predicate) page} starts without scanning the
+	 * inventory, or null until the first page. Replaced (not written) by a page
+	 * that finds products added since; guarded by its own monitor while replaced.
+	 */
+	private volatile int[] sortedOrdinals;
+
+	private final Object sortedOrdinalsLock = new Object();
+
+	public OffHeapInventory() {
+		this(SEGMENT_BYTES, CHUNK_SHIFT);
+	}
+
+	OffHeapInventory(final Product... products) {
+		this(SEGMENT_BYTES, CHUNK_SHIFT);
+		checkNotNull(products, "The 'Product[] products' argument is required; it must not be null");
+		int i = 0;
+		for (Product product : products) {
+			checkNotNull(product,
+					"All elements in the 'Product[] products' array are required; the element at index %d is null; it must not be null",
+					i);
+			merge(product);
+			i++;
+		}
+	}
+
+	/**
+	 * @param segmentBytes the size of a segment of details records
+	 * @param chunkShift   the log2 of the number of ordinals of a chunk of slots
+	 */
+	OffHeapInventory(final int segmentBytes, final int chunkShift) {
+		checkArgument(segmentBytes >= FIXED_RECORD_BYTES + 0xffff * 2,
+				"The segment must fit the largest details record: segmentBytes=%s", segmentBytes);
+		this.segmentBytes = segmentBytes;
+		this.chunkShift = chunkShift;
+		this.offset = segmentBytes;
+	}
+
+	/**
+	 * This implementation of replenishment will insert or update any existing
+	 * products in this inventory, exactly like
+	 * {@link Inventory#replenish(InputStream)}.
+	 *
+	 * @see Product#merge(Product, Product)
+	 * @throws UncheckedIOException if IOException occurs while reading from input
+	 *                              Stream
+	 */
+	@Override
+	synchronized public void replenish(InputStream inputStream) {
+		checkNotNull(inputStream, "The inputSteam argument is required; it must not be null");
+		final BufferedReader r = new BufferedReader(new InputStreamReader(inputStream));
+		int lineNumber = 1;
+		try {
+			if (parser.readHeader(r.readLine())) {
+				lineNumber++;
+				for (String line; (line = r.readLine()) != null; lineNumber++) {
+					if (!line.trim().isEmpty()) {
+						merge(parser.parse(lineNumber, line));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading input stream: lineNumber=" + lineNumber, e);
+		}
+	}
+
+	@Override
+	public List<Product> list() {
+		final int size = this.size;
+		final ImmutableList.Builder<Product> list = ImmutableList.builderWithExpectedSize(size);
+		for (int ordinal = 0; ordinal < size; ordinal++) {
+			list.add(product(ordinal, null, quantity(ordinal)));
+		}
+		return list.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The stream materializes each product as it is consumed.
+	 */
+	@Override
+	public Stream<Product> stream() {
+		return IntStream.range(0, size).mapToObj(ordinal -> product(ordinal, null, quantity(ordinal)));
+	}
+
+	@Override
+	public void forEach(final Consumer<? super Product> action) {
+		checkNotNull(action, "The 'Consumer<? super Product> action' argument is required; it must not be null");
+		final int size = this.size;
+		for (int ordinal = 0; ordinal < size; ordinal++) {
+			action.accept(product(ordinal, null, quantity(ordinal)));
+		}
+	}
+
+	@Override
+	public Optional<Product> find(String upc) {
+		final int ordinal = ordinal(upc);
+		return ordinal < 0 ? Optional.empty() : Optional.of(product(ordinal, upc, quantity(ordinal)));
+	}
+
+	/**
+	 * Adjustments are not serialized on this inventory. Each adjustment is a single
+	 * atomic add on the off-heap quantity of the given UPC.
+	 */
+	@Override
+	public Optional<Product> adjustQuantity(final String upc, final Integer delta) {
+		checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
+		checkNotNull(delta, "The 'Integer delta' argument is required; it must not be null");
+		final int ordinal = ordinal(upc);
+		if (ordinal < 0) {
+			return Optional.empty();
+		}
+		return Optional.of(product(ordinal, upc, adjust(ordinal, delta)));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The quantities are adjusted in one pass over the map without creating a
+	 * {@link Product} for each adjusted product.
+	 */
+	@Override
+	public void adjustQuantities(final Map<String, Integer> deltas) {
+		checkNotNull(deltas, "The 'Map<String, Integer> deltas' argument is required; it must not be null");
+		for (final Map.Entry<String, Integer> delta : deltas.entrySet()) {
+			checkNotNull(delta.getKey(), "The 'String upc' argument is required; it must not be null");
+			checkNotNull(delta.getValue(), "The 'Integer delta' argument is required; it must not be null");
+			final int ordinal = ordinal(delta.getKey());
+			if (ordinal >= 0) {
+				adjust(ordinal, delta.getValue());
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The page is read from the ordinals of the products sorted by UPC, so only
+	 * the products up to the end of the page are materialized. The ordinals are
+	 * sorted by the first page, which decodes the UPC of every product once, and
+	 * the products added since are sorted and merged in by the next page.
+	 */
+	@Override
+	public List<Product> page(final String afterUpc, final int limit, final Predicate<? super Product> filter) {
+		checkArgument(limit >= 0, "The 'int limit' argument must not be negative: limit=%s", limit);
+		checkNotNull(filter, "The 'Predicate<? super Product> filter' argument is required; it must not be null");
+		final int[] sorted = sortedOrdinals();
+		final ImmutableList.Builder<Product> page = ImmutableList.builder();
+		int size = 0;
+		for (int i = afterUpc == null ? 0 : firstAfter(sorted, afterUpc); size < limit && i < sorted.length; i++) {
+			final Product product = product(sorted[i], null, quantity(sorted[i]));
+			if (filter.test(product)) {
+				page.add(product);
+				size++;
+			}
+		}
+		return page.build();
+	}
+
+	/**
+	 * @return the index of the first of the sorted ordinals whose UPC is greater
+	 *         than the given UPC, or the number of ordinals if there is none
+	 */
+	private int firstAfter(final int[] sorted, final String afterUpc) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (upc(sorted[middle]).compareTo(afterUpc) > 0) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the ordinals of all the products in ascending order of UPC, sorting
+	 *         the products added since the last call
+	 */
+	private int[] sortedOrdinals() {
+		int[] sorted = sortedOrdinals;
+		if (sorted != null && sorted.length == size) {
+			return sorted;
+		}
+		synchronized (sortedOrdinalsLock) {
+			sorted = sortedOrdinals == null ? new int[0] : sortedOrdinals;
+			final int size = this.size;
+			if (sorted.length < size) {
+				final int[] added = IntStream.range(sorted.length, size).boxed()
+						.sorted(Comparator.comparing(this::upc)).mapToInt(Integer::intValue).toArray();
+				sorted = merge(sorted, added);
+			}
+			sortedOrdinals = sorted;
+			return sorted;
+		}
+	}
+
+	/**
+	 * @return the given ordinals, each in ascending order of UPC, merged in
+	 *         ascending order of UPC
+	 */
+	private int[] merge(final int[] sorted, final int[] added) {
+		if (sorted.length == 0) {
+			return added;
+		}
+		final int[] merged = new int[sorted.length + added.length];
+		int i = 0;
+		int j = 0;
+		String upc = upc(sorted[0]);
+		String addedUpc = upc(added[0]);
+		for (int k = 0; k < merged.length; k++) {
+			if (j == added.length || (i < sorted.length && upc.compareTo(addedUpc) <= 0)) {
+				merged[k] = sorted[i++];
+				upc = i < sorted.length ? upc(sorted[i]) : null;
+			} else {
+				merged[k] = added[j++];
+				addedUpc = j < added.length ? upc(added[j]) : null;
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the UPC of the product of the given ordinal
+	 */
+	private String upc(final int ordinal) {
+		final long position = position(ordinal);
+		final ByteBuffer segment = segments[(int) (position >>> 32)];
+		final int offset = (int) position;
+		return decode(segment, offset + Short.BYTES, Short.toUnsignedInt(segment.getShort(offset)));
+	}
+
+	/**
+	 * @return the number of products in this inventory
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Merges the given replenishment record into this inventory as defined by
+	 * {@link Product#merge(Product, Product)}. Callers must hold the monitor of
+	 * this inventory.
+	 *
+	 * @param product the replenishment record
+	 */
+	private void merge(final Product product) {
+		final int existing = ordinal(product.getUpc());
+		if (existing >= 0) {
+			// the latest details win and the quantities are added
+			LONGS.setRelease(positions[existing >>> chunkShift], slot(existing, Long.BYTES), append(product));
+			adjust(existing, product.getQuantity());
+			return;
+		}
+		final int ordinal = size;
+		if (ordinal >>> chunkShift == positions.length) {
+			quantities = grow(quantities, Integer.BYTES << chunkShift);
+			positions = grow(positions, Long.BYTES << chunkShift);
+		}
+		LONGS.setRelease(positions[ordinal >>> chunkShift], slot(ordinal, Long.BYTES), append(product));
+		INTS.setRelease(quantities[ordinal >>> chunkShift], slot(ordinal, Integer.BYTES),
+				product.getQuantity().intValue());
+		Table table = this.table;
+		// keep the load factor at most 1/2 so that probe sequences stay short
+		if ((ordinal + 1) * 2 > table.capacity) {
+			table = table.resize();
+			this.table = table;
+		}
+		table.put(product.getUpc().hashCode(), ordinal);
+		size = ordinal + 1;
+	}
+
+	/**
+	 * Appends the details record of the given product to the last segment, adding
+	 * a segment if the record does not fit
+	 *
+	 * @return the position of the record
+	 */
+	private long append(final Product product) {
+		final byte[] upc = encode(product.getUpc());
+		final byte[] name = encode(product.getName());
+		final int recordBytes = FIXED_RECORD_BYTES + upc.length + name.length;
+		if (offset + recordBytes > segmentBytes) {
+			segments = grow(segments, segmentBytes);
+			offset = 0;
+		}
+		final ByteBuffer segment = segments[segments.length - 1];
+		final long position = ((long) (segments.length - 1) << 32) | offset;
+		segment.putShort(offset, (short) upc.length);
+		put(segment, offset + Short.BYTES, upc);
+		final int nameOffset = offset + Short.BYTES + upc.length;
+		segment.putShort(nameOffset, (short) name.length);
+		put(segment, nameOffset + Short.BYTES, name);
+		final int pricesOffset = nameOffset + Short.BYTES + name.length;
+		segment.putLong(pricesOffset, product.getWholesaleMinorUnits());
+		segment.putLong(pricesOffset + Long.BYTES, product.getRetailMinorUnits());
+		offset += recordBytes;
+		return position;
+	}
+
+	private static ByteBuffer[] grow(final ByteBuffer[] buffers, final int bytes) {
+		final ByteBuffer[] grown = Arrays.copyOf(buffers, buffers.length + 1);
+		grown[buffers.length] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+		return grown;
+	}
+
+	private static byte[] encode(final String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		checkArgument(bytes.length <= 0xffff, "Value exceeds the maximum length of 65535 bytes: %s", value);
+		return bytes;
+	}
+
+	private static void put(final ByteBuffer buffer, final int offset, final byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(offset + i, bytes[i]);
+		}
+	}
+
+	/**
+	 * @return the byte index of the slot of the given ordinal in its chunk
+	 */
+	private int slot(final int ordinal, final int slotBytes) {
+		return (ordinal & ((1 << chunkShift) - 1)) * slotBytes;
+	}
+
+	private int quantity(final int ordinal) {
+		return (int) INTS.getAcquire(quantities[ordinal >>> chunkShift], slot(ordinal, Integer.BYTES));
+	}
+
+	/**
+	 * @return the adjusted quantity
+	 */
+	private int adjust(final int ordinal, final int delta) {
+		return (int) INTS.getAndAdd(quantities[ordinal >>> chunkShift], slot(ordinal, Integer.BYTES), delta) + delta;
+	}
+
+	private long position(final int ordinal) {
+		return (long) LONGS.getAcquire(positions[ordinal >>> chunkShift], slot(ordinal, Long.BYTES));
+	}
+
+	/**
+	 * @param upc the UPC
+	 * @return the ordinal of the product with the given UPC, or -1 if this
+	 *         inventory does not contain the product
+	 */
+	private int ordinal(final String upc) {
+		final int hash = upc.hashCode();
+		final Table table = this.table;
+		for (int i = table.slot(hash);; i = (i + 1) & table.mask) {
+			final long entry = table.get(i);
+			if (entry == 0) {
+				return -1;
+			}
+			if ((int) (entry >>> 32) == hash && upcEquals((int) entry - 1, upc)) {
+				return (int) entry - 1;
+			}
+		}
+	}
+
+	/**
+	 * @return whether the details record of the given ordinal has the given UPC;
+	 *         only allocates if the UPC is not ASCII
+	 */
+	private boolean upcEquals(final int ordinal, final String upc) {
+		final long position = position(ordinal);
+		final ByteBuffer segment = segments[(int) (position >>> 32)];
+		final int offset = (int) position;
+		final int length = Short.toUnsignedInt(segment.getShort(offset));
+		if (length == upc.length()) {
+			for (int i = 0; i < length; i++) {
+				final char c = upc.charAt(i);
+				if (c >= 0x80) {
+					return decode(segment, offset + Short.BYTES, length).equals(upc);
+				}
+				if (segment.get(offset + Short.BYTES + i) != c) {
+					return false;
+				}
+			}
+			return true;
+		}
+		// a UPC of fewer characters than bytes is not ASCII
+		return length > upc.length() && decode(segment, offset + Short.BYTES, length).equals(upc);
+	}
+
+	/**
+	 * Materializes the product of the given ordinal
+	 *
+	 * @param upc the UPC of the product if known, or null to decode it
+	 */
+	private Product product(final int ordinal, final String upc, final int quantity) {
+		final long position = position(ordinal);
+		final ByteBuffer segment = segments[(int) (position >>> 32)];
+		int offset = (int) position;
+		final int upcLength = Short.toUnsignedInt(segment.getShort(offset));
+		offset += Short.BYTES;
+		final String decodedUpc = upc == null ? decode(segment, offset, upcLength) : upc;
+		offset += upcLength;
+		final int nameLength = Short.toUnsignedInt(segment.getShort(offset));
+		offset += Short.BYTES;
+		final String name = decode(segment, offset, nameLength);
+		offset += nameLength;
+		return new Product(decodedUpc, name, segment.getLong(offset), segment.getLong(offset + Long.BYTES),
+				Integer.valueOf(quantity));
+	}
+
+	private static String decode(final ByteBuffer buffer, final int offset, final int length) {
+		final byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A linear-probing table of ordinals in a direct buffer. A slot is the hash of
+	 * the UPC in the high and the ordinal plus one in the low 32 bits, so that no
+	 * slot in use is 0, which marks an empty slot.
+	 */
+	private static final class Table {
+		private final ByteBuffer slots;
+		private final int capacity;
+		private final int mask;
+
+		Table(final int capacity) {
+			this.slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+			this.capacity = capacity;
+			this.mask = capacity - 1;
+		}
+
+		private int slot(final int hash) {
+			// spread the hash with the 64-bit golden ratio, taking the high bits
+			return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		}
+
+		long get(final int i) {
+			return (long) LONGS.getAcquire(slots, i * Long.BYTES);
+		}
+
+		/**
+		 * Puts an ordinal that is not in the table
+		 */
+		void put(final int hash, final int ordinal) {
+			put(((long) hash << 32) | (ordinal + 1L));
+		}
+
+		private void put(final long entry) {
+			int i = slot((int) (entry >>> 32));
+			while (slots.getLong(i * Long.BYTES) != 0) {
+				i = (i + 1) & mask;
+			}
+			LONGS.setRelease(slots, i * Long.BYTES, entry);
+		}
+
+		Table resize() {
+			final Table resized = new Table(capacity * 2);
+			for (int i = 0; i < capacity; i++) {
+				final long entry = slots.getLong(i * Long.BYTES);
+				if (entry != 0) {
+					resized.put(entry);
+				}
+			}
+			return resized;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.UncheckedIOException;
+
+/**
+ * An {@link Inventory} that indexes numeric UPCs (e.g. 12 and 13 digit
+ * UPC/EAN codes) by <code>long</code> keys in a primitive open-addressing hash
+ * table instead of by {@link String} keys in a
+ * {@link java.util.concurrent.ConcurrentHashMap}. Looking up a numeric UPC
+ * (e.g. on every {@link CashRegister#scan(String) scan}) therefore neither
+ * hashes the UPC string nor allocates, and the index takes less memory.
+ * Alphanumeric UPCs (e.g. <code>A123</code>) are still supported; they are
+ * indexed by their string.
+ * <p>
+ * In every other respect this inventory behaves exactly like
+ * {@link Inventory}.
+ *
+ * @see LongStockIndex
+ */
+public class PrimitiveKeyedInventory extends Inventory {
+
+	public PrimitiveKeyedInventory() {
+		super(new LongStockIndex(), null);
+	}
+
+	/**
+	 * Creates an inventory that is recovered from the given write-ahead log and
+	 * that logs every replenishment and quantity adjustment made to it from now
+	 * on.
+	 *
+	 * @param log the write-ahead log of the inventory
+	 * @throws IllegalStateException if the log has already been recovered by
+	 *                               another inventory or has been closed
+	 * @throws UncheckedIOException  if an IOException occurs while reading the log
+	 * @see Inventory#Inventory(InventoryWriteAheadLog)
+	 */
+	public PrimitiveKeyedInventory(final InventoryWriteAheadLog log) {
+		super(new LongStockIndex(),
+				checkNotNull(log, "The 'InventoryWriteAheadLog log' argument is required; it must not be null"));
+	}
+}
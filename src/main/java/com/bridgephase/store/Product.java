@@ -1,9 +1,6 @@
 package com.bridgephase.store;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.Currency;
-import java.util.Locale;
 
 import com.google.common.base.Objects;
 
@@ -14,33 +11,46 @@ import static com.google.common.base.Preconditions.*;
  * for a product (i.e. uniquely identifies a product). The {@link #name} is
  * assumed to not be a key identifier for a product. This means that there may
  * be two products with the same name but with different upc values.
+ * <p>
+ * Prices are held as {@link Money} minor units and only converted to
+ * {@link BigDecimal} (with the scale of the default locale currency) by the
+ * price getters.
  */
 public final class Product {
-  // force all big decimals to be have scale that matches the default fraction
-  // digits for the default locale currency
-  private static final int SCALE = Currency.getInstance(Locale.getDefault()).getDefaultFractionDigits();
-  private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+  // all prices have the scale that matches the default fraction digits for the
+  // default locale currency
+  static final int SCALE = Money.SCALE;
 
   private final String upc;
   private final String name;
-  private final BigDecimal wholesalePrice;
-  private final BigDecimal retailPrice;
+  private final long wholesalePrice;
+  private final long retailPrice;
   private final Integer quantity;
 
   public Product(String upc, String name, BigDecimal wholesalePrice, BigDecimal retailPrice, Integer quantity) {
+    this(upc, name,
+      Money.of(checkNotNull(wholesalePrice,
+        "The 'BigDecimal wholesalePrice' argument is required; it must not be null")),
+      Money.of(checkNotNull(retailPrice, "The 'BigDecimal retailPrice' argument is required; it must not be null")),
+      quantity);
+  }
+
+  /**
+   * @param wholesalePrice the wholesale price in {@link Money} minor units
+   * @param retailPrice    the retail price in {@link Money} minor units
+   */
+  Product(String upc, String name, long wholesalePrice, long retailPrice, Integer quantity) {
     super();
     this.upc = checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
     this.name = checkNotNull(name, "The 'String name' argument is required; it must not be null");
-    this.wholesalePrice = checkNotNull(wholesalePrice,
-      "The 'BigDecimal wholesalePrice' argument is required; it must not be null").setScale(SCALE, ROUNDING_MODE);
-    this.retailPrice = checkNotNull(retailPrice,
-      "The 'BigDecimal retailPrice' argument is required; it must not be null").setScale(SCALE, ROUNDING_MODE);
+    this.wholesalePrice = wholesalePrice;
+    this.retailPrice = retailPrice;
     this.quantity = checkNotNull(quantity, "The 'Integer quantity' argument is required; it must not be null");
   }
 
   public Product(Product source) {
     this(checkNotNull(source, "The 'Product source' argument is required; it must not be null").getUpc(),
-      source.getName(), source.getWholesalePrice(), source.getRetailPrice(), source.getQuantity());
+      source.getName(), source.wholesalePrice, source.retailPrice, source.getQuantity());
   }
 
   public Product(String upc, String name, double wholesalePrice, double retailPrice, int quantity) {
@@ -56,10 +66,24 @@ public final class Product {
   }
 
   public BigDecimal getWholesalePrice() {
-    return wholesalePrice;
+    return Money.toBigDecimal(wholesalePrice);
   }
 
   public BigDecimal getRetailPrice() {
+    return Money.toBigDecimal(retailPrice);
+  }
+
+  /**
+   * @return the wholesale price in {@link Money} minor units
+   */
+  long getWholesaleMinorUnits() {
+    return wholesalePrice;
+  }
+
+  /**
+   * @return the retail price in {@link Money} minor units
+   */
+  long getRetailMinorUnits() {
     return retailPrice;
   }
 
@@ -69,8 +93,8 @@ public final class Product {
 
   @Override
   public String toString() {
-    return "Product [upc=" + upc + ", name=" + name + ", wholesalePrice=" + wholesalePrice + ", retailPrice="
-      + retailPrice + ", quantity=" + quantity + "]";
+    return "Product [upc=" + upc + ", name=" + name + ", wholesalePrice=" + getWholesalePrice() + ", retailPrice="
+      + getRetailPrice() + ", quantity=" + quantity + "]";
   }
 
   @Override
@@ -79,9 +103,9 @@ public final class Product {
     int result = 1;
     result = prime * result + ((name == null) ? 0 : name.hashCode());
     result = prime * result + ((quantity == null) ? 0 : quantity.hashCode());
-    result = prime * result + ((retailPrice == null) ? 0 : retailPrice.hashCode());
+    result = prime * result + Long.hashCode(retailPrice);
     result = prime * result + ((upc == null) ? 0 : upc.hashCode());
-    result = prime * result + ((wholesalePrice == null) ? 0 : wholesalePrice.hashCode());
+    result = prime * result + Long.hashCode(wholesalePrice);
     return result;
   }
 
@@ -104,30 +128,33 @@ public final class Product {
         return false;
     } else if (!quantity.equals(other.quantity))
       return false;
-    if (retailPrice == null) {
-      if (other.retailPrice != null)
-        return false;
-    } else if (!retailPrice.equals(other.retailPrice))
+    if (retailPrice != other.retailPrice)
       return false;
     if (upc == null) {
       if (other.upc != null)
         return false;
     } else if (!upc.equals(other.upc))
       return false;
-    if (wholesalePrice == null) {
-      if (other.wholesalePrice != null)
-        return false;
-    } else if (!wholesalePrice.equals(other.wholesalePrice))
+    if (wholesalePrice != other.wholesalePrice)
       return false;
     return true;
   }
 
+  /**
+   * @param quantity the quantity
+   * @return a {@link Product} with the same upc, name and prices as this product
+   *         and the given quantity
+   */
+  Product withQuantity(Integer quantity) {
+    return new Product(upc, name, wholesalePrice, retailPrice, quantity);
+  }
+
   static class Builder {
 
     private String upc;
     private String name;
-    private BigDecimal wholesalePrice;
-    private BigDecimal retailPrice;
+    private long wholesalePrice;
+    private long retailPrice;
     private Integer quantity;
 
     Builder() {
@@ -154,11 +181,27 @@ public final class Product {
     }
 
     public Builder withWholesalePrice(BigDecimal wholesalePrice) {
+      return withWholesalePrice(Money.of(checkNotNull(wholesalePrice,
+        "The 'BigDecimal wholesalePrice' argument is required; it must not be null")));
+    }
+
+    /**
+     * @param wholesalePrice the wholesale price in {@link Money} minor units
+     */
+    Builder withWholesalePrice(long wholesalePrice) {
       this.wholesalePrice = wholesalePrice;
       return this;
     }
 
     public Builder withRetailPrice(BigDecimal retailPrice) {
+      return withRetailPrice(
+        Money.of(checkNotNull(retailPrice, "The 'BigDecimal retailPrice' argument is required; it must not be null")));
+    }
+
+    /**
+     * @param retailPrice the retail price in {@link Money} minor units
+     */
+    Builder withRetailPrice(long retailPrice) {
       this.retailPrice = retailPrice;
       return this;
     }
@@ -189,8 +232,7 @@ public final class Product {
     } else {
       checkArgument(Objects.equal(oldValue.getUpc(), newValue.getUpc()),
         "The upc value is required to be the same for both the oldValue and newValue argument: oldValue.upc=%s, newValue.upc=%s");
-      return new Product(newValue.getUpc(), newValue.getName(), newValue.getWholesalePrice(), newValue.getRetailPrice(),
-        oldValue.getQuantity() + newValue.getQuantity());
+      return newValue.withQuantity(oldValue.getQuantity() + newValue.getQuantity());
     }
   }
 }
@@ -0,0 +1,287 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A reentrant lock of an {@link Inventory} that, while profiling is
+ * {@link Inventory#setLockProfiling(boolean) enabled}, measures the time each
+ * {@link Operation operation} waits for the lock and holds it, and keeps the
+ * {@value #WORST_STALLS} longest waits along with the operation that held the
+ * lock when the wait began. This tells whether (and which) operations holding
+ * the lock stall the others, e.g. whether a replenishment from a large feed
+ * stalls the quantity adjustments of checkouts.
+ * <p>
+ * Only the outermost acquisition of a reentrant acquisition is measured. While
+ * profiling is disabled an acquisition costs a volatile read over a plain
+ * {@link ReentrantLock}.
+ * <p>
+ * Note: This lock is thread-safe.
+ */
+public final class ProfiledLock {
+
+	/**
+	 * The operations that take the locks of an inventory
+	 */
+	public enum Operation {
+		REPLENISH, IMPORT_SNAPSHOT, COMMIT, MERGE, ADJUST_QUANTITY, ADJUST_QUANTITIES, WRITE_LOG, RECOVER, SYNC,
+		CHECKPOINT, CLOSE
+	}
+
+	static final int WORST_STALLS = 10;
+
+	private final String name;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile boolean profiling;
+
+	/**
+	 * The wait and hold latencies of each operation by ordinal, created when
+	 * profiling is first enabled
+	 */
+	private volatile LatencyHistogram[][] latencies;
+
+	/**
+	 * The operation of the outermost acquisition of the holder of this lock, or
+	 * null if the lock is free (or not profiled)
+	 */
+	private volatile Operation holder;
+
+	/**
+	 * The time at which the holder acquired this lock; only read and written by
+	 * the holder
+	 */
+	private long acquiredNanos;
+
+	/**
+	 * The longest waits, longest first. Guarded by the monitor of the list.
+	 */
+	private final List<Stall> worstStalls = new ArrayList<>(WORST_STALLS + 1);
+
+	/**
+	 * The shortest wait that can enter the worst stalls, so shorter waits are
+	 * dismissed without taking the monitor of the stalls
+	 */
+	private volatile long stallThresholdNanos;
+
+	ProfiledLock(final String name) {
+		this.name = checkNotNull(name, "The 'String name' argument is required; it must not be null");
+	}
+
+	/**
+	 * @return the name of this lock, e.g. <code>inventory log</code>
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public boolean isProfiling() {
+		return profiling;
+	}
+
+	void setProfiling(final boolean profiling) {
+		if (profiling) {
+			latencies();
+		}
+		this.profiling = profiling;
+	}
+
+	/**
+	 * Acquires this lock for the given operation, waiting until it is free
+	 */
+	void lock(final Operation operation) {
+		if (!profiling || lock.isHeldByCurrentThread()) {
+			lock.lock();
+			return;
+		}
+		final long start = System.nanoTime();
+		long waited = 0;
+		if (!lock.tryLock()) {
+			final Operation blocker = holder;
+			lock.lock();
+			waited = System.nanoTime() - start;
+			stalled(operation, blocker, waited);
+		}
+		acquiredNanos = start + waited;
+		holder = operation;
+		latencies(operation)[0].record(waited);
+	}
+
+	/**
+	 * Releases this lock, acquired by {@link #lock(Operation)}
+	 */
+	void unlock() {
+		final Operation operation = holder;
+		if (operation != null && lock.getHoldCount() == 1) {
+			holder = null;
+			latencies(operation)[1].recordSince(acquiredNanos);
+		}
+		lock.unlock();
+	}
+
+	/**
+	 * @return whether the current thread holds this lock
+	 */
+	boolean isHeldByCurrentThread() {
+		return lock.isHeldByCurrentThread();
+	}
+
+	/**
+	 * @return whether any thread is waiting to acquire this lock
+	 */
+	boolean hasQueuedThreads() {
+		return lock.hasQueuedThreads();
+	}
+
+	private LatencyHistogram[] latencies(final Operation operation) {
+		return latencies()[operation.ordinal()];
+	}
+
+	private LatencyHistogram[][] latencies() {
+		LatencyHistogram[][] latencies = this.latencies;
+		if (latencies == null) {
+			synchronized (this) {
+				latencies = this.latencies;
+				if (latencies == null) {
+					latencies = new LatencyHistogram[Operation.values().length][];
+					for (int i = 0; i < latencies.length; i++) {
+						latencies[i] = new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram() };
+					}
+					this.latencies = latencies;
+				}
+			}
+		}
+		return latencies;
+	}
+
+	void stalled(final Operation operation, final Operation blocker, final long waitNanos) {
+		if (waitNanos <= stallThresholdNanos) {
+			return;
+		}
+		synchronized (worstStalls) {
+			worstStalls.add(new Stall(operation, blocker, waitNanos, Instant.now()));
+			worstStalls.sort(Comparator.comparingLong(Stall::getWaitNanos).reversed());
+			if (worstStalls.size() > WORST_STALLS) {
+				worstStalls.remove(WORST_STALLS);
+				stallThresholdNanos = worstStalls.get(WORST_STALLS - 1).getWaitNanos();
+			}
+		}
+	}
+
+	/**
+	 * @return the time the given operation waited for this lock on each
+	 *         acquisition, including the acquisitions that did not wait
+	 */
+	public LatencyHistogram getWaitLatency(final Operation operation) {
+		checkNotNull(operation, "The 'Operation operation' argument is required; it must not be null");
+		return latencies(operation)[0];
+	}
+
+	/**
+	 * @return the time the given operation held this lock on each acquisition
+	 */
+	public LatencyHistogram getHoldLatency(final Operation operation) {
+		checkNotNull(operation, "The 'Operation operation' argument is required; it must not be null");
+		return latencies(operation)[1];
+	}
+
+	/**
+	 * @return the {@value #WORST_STALLS} longest waits for this lock, longest
+	 *         first
+	 */
+	public List<Stall> getWorstStalls() {
+		synchronized (worstStalls) {
+			return ImmutableList.copyOf(worstStalls);
+		}
+	}
+
+	/**
+	 * @return a line per operation that took this lock with its wait and hold
+	 *         latencies, followed by a line per worst stall
+	 */
+	public String toText() {
+		final StringBuilder text = new StringBuilder();
+		for (Operation operation : Operation.values()) {
+			final LatencyHistogram[] histograms = latencies(operation);
+			if (histograms[1].getCount() == 0) {
+				continue;
+			}
+			text.append(String.format(
+					"%s %s count=%d wait p50=%s p99=%s max=%s total=%s hold p50=%s p99=%s max=%s total=%s%n", name,
+					operation, histograms[1].getCount(), micros(histograms[0].getPercentileNanos(50)),
+					micros(histograms[0].getPercentileNanos(99)), micros(histograms[0].getMaxNanos()),
+					micros(histograms[0].getTotalNanos()), micros(histograms[1].getPercentileNanos(50)),
+					micros(histograms[1].getPercentileNanos(99)), micros(histograms[1].getMaxNanos()),
+					micros(histograms[1].getTotalNanos())));
+		}
+		for (Stall stall : getWorstStalls()) {
+			text.append(name).append(" stall ").append(stall).append(System.lineSeparator());
+		}
+		return text.toString();
+	}
+
+	private static String micros(final long nanos) {
+		return String.format("%.1fus", nanos / 1e3);
+	}
+
+	@Override
+	public String toString() {
+		return toText();
+	}
+
+	/**
+	 * A wait for a {@link ProfiledLock}
+	 */
+	public static final class Stall {
+		private final Operation operation;
+		private final Operation blocker;
+		private final long waitNanos;
+		private final Instant at;
+
+		Stall(final Operation operation, final Operation blocker, final long waitNanos, final Instant at) {
+			this.operation = operation;
+			this.blocker = blocker;
+			this.waitNanos = waitNanos;
+			this.at = at;
+		}
+
+		/**
+		 * @return the operation that waited
+		 */
+		public Operation getOperation() {
+			return operation;
+		}
+
+		/**
+		 * @return the operation that held the lock when the wait began, or null if it
+		 *         is unknown (e.g. the lock was acquired before profiling was enabled)
+		 */
+		public Operation getBlocker() {
+			return blocker;
+		}
+
+		public long getWaitNanos() {
+			return waitNanos;
+		}
+
+		/**
+		 * @return the time at which the wait ended
+		 */
+		public Instant getAt() {
+			return at;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s waited %s for %s at %s", operation, micros(waitNanos), blocker, at);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The lanes of a store: a fixed number of {@link CashRegister cash registers}
+ * sharing one inventory (and, optionally, one {@link TransactionJournal
+ * journal}).
+ * <p>
+ * A cash register has one transaction underway at a time and is not
+ * thread-safe, so a lane is {@link #acquire() acquired} by one thread (e.g. the
+ * thread serving a customer) at a time and closed when the customer is done,
+ * which returns the lane to the pool. Every acquisition hands out a new
+ * {@link Lane} object, so a lane closed by one thread cannot affect the thread
+ * that acquires the lane next. The registers share the inventory, which
+ * is thread-safe, and the stock reservations of the pool, so that two lanes
+ * cannot sell the same last unit of a product.
+ *
+ * <pre>
+ * try (RegisterPool.Lane lane = pool.acquire()) {
+ * 	final CashRegister register = lane.getRegister();
+ * 	register.beginTransaction();
+ * 	register.scan("A123");
+ * 	register.pay(amountPaid);
+ * }
+ * </pre>
+ * <p>
+ * Note: This pool is thread-safe.
+ */
+public class RegisterPool implements AutoCloseable {
+
+	private final List<Station> lanes;
+
+	private final BlockingQueue<Station> idle;
+
+	private final StockReservations reservations;
+
+	/**
+	 * Creates a pool of lanes whose scans reserve stock for the given hold time
+	 *
+	 * @param inventory the inventory shared by the lanes
+	 * @param journal   the journal to which the lanes append paid transactions, or
+	 *                  null if paid transactions are not persisted
+	 * @param lanes     the number of lanes
+	 * @param holdTime  the time after which the reservations of an abandoned
+	 *                  transaction expire
+	 */
+	public RegisterPool(final IInventory inventory, final TransactionJournal journal, final int lanes,
+			final Duration holdTime) {
+		checkNotNull(inventory, "The 'IInventory inventory' argument is required; it must not be null");
+		checkArgument(lanes > 0, "The 'int lanes' argument must be positive: lanes=%s", lanes);
+		this.reservations = new StockReservations(inventory, holdTime);
+		final ImmutableList.Builder<Station> builder = ImmutableList.builderWithExpectedSize(lanes);
+		for (int i = 0; i < lanes; i++) {
+			builder.add(new Station(i + 1, new CashRegister(inventory, journal, reservations)));
+		}
+		this.lanes = builder.build();
+		this.idle = new LinkedBlockingQueue<>(this.lanes);
+	}
+
+	/**
+	 * @return the number of lanes of this pool
+	 */
+	public int getLanes() {
+		return lanes.size();
+	}
+
+	/**
+	 * @return the number of lanes that are not acquired
+	 */
+	public int getIdleLanes() {
+		return idle.size();
+	}
+
+	/**
+	 * @return the stock reservations shared by the lanes
+	 */
+	public StockReservations getReservations() {
+		return reservations;
+	}
+
+	/**
+	 * Acquires a lane, waiting until one is idle
+	 *
+	 * @return the acquired lane, to be closed when done
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Lane acquire() throws InterruptedException {
+		return new Lane(idle.take());
+	}
+
+	/**
+	 * Acquires a lane, waiting at most the given time until one is idle
+	 *
+	 * @return the acquired lane, to be closed when done, or empty if no lane became
+	 *         idle in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Optional<Lane> acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final Station station = idle.poll(timeout, unit);
+		return station == null ? Optional.empty() : Optional.of(new Lane(station));
+	}
+
+	/**
+	 * Stops expiring the reservations of the lanes
+	 */
+	@Override
+	public void close() {
+		reservations.close();
+	}
+
+	/**
+	 * A lane of the pool and its cash register, which is idle or leased by one
+	 * {@link Lane}
+	 */
+	private static final class Station {
+		private final int number;
+		private final CashRegister register;
+
+		private Station(final int number, final CashRegister register) {
+			this.number = number;
+			this.register = register;
+		}
+	}
+
+	/**
+	 * A lane of the pool as acquired by one thread: a lease that ends when it is
+	 * closed, after which it gives no access to the lane, even once another thread
+	 * has acquired the lane
+	 */
+	public final class Lane implements AutoCloseable {
+		private final Station station;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private Lane(final Station station) {
+			this.station = station;
+		}
+
+		/**
+		 * @return the number of this lane, from 1
+		 */
+		public int getNumber() {
+			return station.number;
+		}
+
+		/**
+		 * @return the cash register of this lane
+		 * @throws IllegalStateException if the lane has been returned to the pool
+		 */
+		public CashRegister getRegister() {
+			checkState(!closed.get(), "Lane %s has been returned to the pool", station.number);
+			return station.register;
+		}
+
+		/**
+		 * Returns this lane to the pool, cancelling a transaction that has not been
+		 * paid. Closing a lane that has been returned has no effect.
+		 */
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				station.register.cancelTransaction();
+				idle.add(station);
+			}
+		}
+	}
+}
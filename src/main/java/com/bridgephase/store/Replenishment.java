@@ -0,0 +1,55 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A replenishment of an {@link Inventory}: the records it merges are stamped
+ * with it and stay invisible to readers until it is {@link #commit(long)
+ * committed}, which makes all of them visible at once as a new version of the
+ * catalog.
+ */
+final class Replenishment {
+
+	/**
+	 * The version of a replenishment that has not been committed, which only the
+	 * {@link Stock#LATEST latest} pin sees
+	 */
+	static final long UNCOMMITTED = Long.MAX_VALUE;
+
+	/**
+	 * The records merged while an inventory is constructed or recovered, before
+	 * any reader can see it
+	 */
+	static final Replenishment INITIAL = new Replenishment(0);
+
+	private volatile long version;
+
+	Replenishment() {
+		this(UNCOMMITTED);
+	}
+
+	private Replenishment(final long version) {
+		this.version = version;
+	}
+
+	/**
+	 * @return the catalog version at which the records of this replenishment are
+	 *         visible, or {@link #UNCOMMITTED}
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Makes the records of this replenishment visible to the readers that pin the
+	 * given version or a later one
+	 *
+	 * @param version the catalog version of this replenishment
+	 */
+	void commit(final long version) {
+		checkArgument(version < UNCOMMITTED, "The version must be less than %s: version=%s", UNCOMMITTED, version);
+		checkState(this.version == UNCOMMITTED, "The replenishment has already been committed");
+		this.version = version;
+	}
+}
@@ -0,0 +1,245 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The stock of one {@link Product} in {@link Inventory}.
+ * <p>
+ * The name and prices of a product only change on replenishment, but the
+ * quantity changes on every sale. The quantity adjustments are therefore summed
+ * in an atomic counter that is adjusted in place, so a sale is a single atomic
+ * add instead of the construction of a new {@link Product}. Callers are still
+ * handed immutable {@link Product} snapshots; the most recent snapshot is
+ * cached and only rebuilt once the quantity (or the product details) change.
+ * <p>
+ * The replenishment records merged into this stock are kept in an immutable
+ * list, newest first, each stamped with its {@link Replenishment}. A reader
+ * pins a version of the catalog and sees only the records of the replenishments
+ * committed at or before that version: the details of the newest of them and
+ * the sum of their quantities, plus the adjustments, which are not versioned.
+ * A merge replaces the list (copy on write) and collapses the records that
+ * every pinned reader sees into one, so the list stays short.
+ */
+final class Stock {
+
+	/**
+	 * The pin that sees every record merged, including those of replenishments
+	 * not yet committed
+	 */
+	static final long LATEST = Replenishment.UNCOMMITTED;
+
+	/**
+	 * The sum of the quantity adjustments (e.g. sales) of the product
+	 */
+	private final AtomicInteger adjustments = new AtomicInteger();
+
+	/**
+	 * The replenishment records merged into this stock, newest first
+	 */
+	private volatile Version versions;
+
+	/**
+	 * The most recent snapshot and the record whose details it has
+	 */
+	private volatile Snapshot snapshot;
+
+	Stock(final Product product, final Replenishment replenishment) {
+		checkNotNull(product, "The 'Product product' argument is required; it must not be null");
+		checkNotNull(replenishment, "The 'Replenishment replenishment' argument is required; it must not be null");
+		this.versions = new Version(replenishment, product, false, null);
+	}
+
+	/**
+	 * Merges the given replenishment record into this stock as defined by
+	 * {@link Product#merge(Product, Product)} once the given replenishment is
+	 * committed. Callers must not merge into the same stock concurrently;
+	 * concurrent {@link #adjust(int, long) adjustments} and reads are safe.
+	 *
+	 * @param product       the replenishment record
+	 * @param replenishment the replenishment of the record
+	 * @param oldestPin     the oldest version pinned by a reader (or the committed
+	 *                      version if none is), at or below which records are
+	 *                      collapsed
+	 */
+	void merge(final Product product, final Replenishment replenishment, final long oldestPin) {
+		versions = new Version(replenishment, product, false, collapse(versions, oldestPin));
+	}
+
+	/**
+	 * @return the given records with the records that are visible at the given pin
+	 *         collapsed into one, or the given records if at most one is visible
+	 */
+	private static Version collapse(final Version versions, final long oldestPin) {
+		Version newest = null;
+		int collapsed = 0;
+		int quantity = 0;
+		for (Version version = versions; version != null; version = version.next) {
+			if (version.isVisible(oldestPin)) {
+				collapsed++;
+				quantity += version.product.getQuantity();
+				if (newest == null || version.getVersion() > newest.getVersion()) {
+					newest = version;
+				}
+			}
+		}
+		if (collapsed < 2) {
+			return versions;
+		}
+		Version base = new Version(newest.replenishment, newest.product.withQuantity(quantity), true, null);
+		for (Version version = reverse(versions); version != null; version = version.next) {
+			if (!version.isVisible(oldestPin)) {
+				base = new Version(version.replenishment, version.product, false, base);
+			}
+		}
+		return base;
+	}
+
+	private static Version reverse(final Version versions) {
+		Version reversed = null;
+		for (Version version = versions; version != null; version = version.next) {
+			reversed = new Version(version.replenishment, version.product, version.collapsed, reversed);
+		}
+		return reversed;
+	}
+
+	/**
+	 * @return the UPC of the product
+	 */
+	String getUpc() {
+		return versions.product.getUpc();
+	}
+
+	/**
+	 * Adjusts the quantity by the given delta
+	 *
+	 * @param delta the delta amount
+	 * @param pin   the version at which the adjusted quantity is read
+	 * @return the adjusted quantity at the given version
+	 */
+	int adjust(final int delta, final long pin) {
+		final int adjusted = adjustments.addAndGet(delta);
+		return replenished(pin) + adjusted;
+	}
+
+	/**
+	 * @param pin a version of the catalog
+	 * @return the quantity at the given version
+	 */
+	int getQuantity(final long pin) {
+		return replenished(pin) + adjustments.get();
+	}
+
+	/**
+	 * @param pin a version of the catalog
+	 * @return whether any record of this stock is visible at the given version
+	 */
+	boolean isVisible(final long pin) {
+		return details(pin) != null;
+	}
+
+	/**
+	 * @return the sum of the quantities of the records visible at the given pin
+	 */
+	private int replenished(final long pin) {
+		int quantity = 0;
+		for (Version version = versions; version != null; version = version.next) {
+			if (version.isVisible(pin)) {
+				quantity += version.product.getQuantity();
+			}
+		}
+		return quantity;
+	}
+
+	/**
+	 * @return the newest record visible at the given pin, or null if none is
+	 */
+	private Version details(final long pin) {
+		Version details = null;
+		long newest = -1;
+		for (Version version = versions; version != null; version = version.next) {
+			// read the version once, as it may be committed meanwhile
+			final long committed = version.getVersion();
+			if ((version.collapsed || committed <= pin) && committed > newest) {
+				details = version;
+				newest = committed;
+			}
+		}
+		return details;
+	}
+
+	/**
+	 * @param pin a version of the catalog
+	 * @return a snapshot of the product at the given version with the current
+	 *         quantity, or empty if the product is not visible at that version
+	 */
+	Optional<Product> snapshot(final long pin) {
+		return snapshot(pin, getQuantity(pin));
+	}
+
+	/**
+	 * @param pin      a version of the catalog
+	 * @param quantity the quantity of the snapshot
+	 * @return a snapshot of the product at the given version with the given
+	 *         quantity, or empty if the product is not visible at that version
+	 */
+	Optional<Product> snapshot(final long pin, final int quantity) {
+		final Version details = details(pin);
+		if (details == null) {
+			return Optional.empty();
+		}
+		final Snapshot current = snapshot;
+		if (current != null && current.details == details && current.product.get().getQuantity() == quantity) {
+			return current.product;
+		}
+		final Optional<Product> fresh = Optional.of(details.product.withQuantity(quantity));
+		// a racing reader may replace this snapshot with one as good
+		snapshot = new Snapshot(details, fresh);
+		return fresh;
+	}
+
+	/**
+	 * A replenishment record merged into a stock, or the records collapsed into
+	 * one, whose quantity is the quantity replenished
+	 */
+	private static final class Version {
+		private final Replenishment replenishment;
+		private final Product product;
+
+		/**
+		 * Whether this is the collapse of the records visible to every pinned reader,
+		 * which is visible even to a reader that pinned an older version without
+		 * registering its pin
+		 */
+		private final boolean collapsed;
+		private final Version next;
+
+		private Version(final Replenishment replenishment, final Product product, final boolean collapsed,
+				final Version next) {
+			this.replenishment = replenishment;
+			this.product = product;
+			this.collapsed = collapsed;
+			this.next = next;
+		}
+
+		private long getVersion() {
+			return replenishment.getVersion();
+		}
+
+		private boolean isVisible(final long pin) {
+			return collapsed || getVersion() <= pin;
+		}
+	}
+
+	private static final class Snapshot {
+		private final Version details;
+		private final Optional<Product> product;
+
+		private Snapshot(final Version details, final Optional<Product> product) {
+			this.details = details;
+			this.product = product;
+		}
+	}
+}
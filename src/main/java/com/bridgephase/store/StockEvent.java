@@ -0,0 +1,81 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Objects;
+
+/**
+ * An event emitted by a {@link StockEventPublisher} when the quantity of a
+ * product in inventory drops to or below its low-stock threshold.
+ */
+public final class StockEvent {
+
+	public enum Type {
+		/**
+		 * The quantity is positive but at or below the low-stock threshold
+		 */
+		LOW_STOCK,
+		/**
+		 * The quantity is zero or negative
+		 */
+		OUT_OF_STOCK
+	}
+
+	private final String upc;
+	private final int quantity;
+	private final int threshold;
+
+	/**
+	 * @param upc       the UPC of the product
+	 * @param quantity  the latest quantity of the product
+	 * @param threshold the low-stock threshold of the product
+	 */
+	StockEvent(final String upc, final int quantity, final int threshold) {
+		this.upc = checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
+		this.quantity = quantity;
+		this.threshold = threshold;
+	}
+
+	public String getUpc() {
+		return upc;
+	}
+
+	/**
+	 * @return the latest quantity of the product when the event was delivered;
+	 *         several triggers for the product are coalesced into one event
+	 */
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public Type getType() {
+		return quantity <= 0 ? Type.OUT_OF_STOCK : Type.LOW_STOCK;
+	}
+
+	@Override
+	public String toString() {
+		return "StockEvent [type=" + getType() + ", upc=" + upc + ", quantity=" + quantity + ", threshold=" + threshold
+				+ "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(upc, quantity, threshold);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof StockEvent)) {
+			return false;
+		}
+		final StockEvent other = (StockEvent) obj;
+		return upc.equals(other.upc) && quantity == other.quantity && threshold == other.threshold;
+	}
+}
@@ -0,0 +1,169 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Publishes {@link StockEvent low-stock and out-of-stock events} to a
+ * subscriber on a background thread, so that the sale that triggers an event
+ * never waits for the subscriber (e.g. a message to the Purchasing queue).
+ * <p>
+ * An {@link Inventory} {@link #trigger(String, int) triggers} the publisher
+ * whenever an adjustment leaves the quantity of a product at or below its
+ * low-stock threshold. Triggers are coalesced by UPC: while an event for a UPC
+ * is waiting to be delivered, further triggers for that UPC only update the
+ * quantity the event will carry, so a slow subscriber receives one event with
+ * the latest quantity rather than one event per sale.
+ * <p>
+ * Waiting UPCs are kept in a bounded ring buffer. A trigger never blocks: if the
+ * buffer is full the trigger is {@link #getDroppedCount() dropped}; the next
+ * trigger for the UPC publishes it again.
+ * <p>
+ * Note: This publisher is thread-safe.
+ */
+public class StockEventPublisher implements Closeable {
+
+	/**
+	 * The UPCs with an event waiting to be delivered, in trigger order
+	 */
+	private final BlockingQueue<String> ring;
+
+	/**
+	 * The latest quantity of each UPC in the ring; an entry is removed when its
+	 * event is delivered
+	 */
+	private final ConcurrentMap<String, Integer> waiting = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, Integer> thresholds = new ConcurrentHashMap<>();
+
+	private final int defaultThreshold;
+
+	private final Consumer<? super StockEvent> subscriber;
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final Thread consumer;
+
+	private volatile boolean closed;
+
+	/**
+	 * Creates a publisher and starts its consumer thread
+	 *
+	 * @param capacity         the most UPCs waiting to be delivered
+	 * @param defaultThreshold the low-stock threshold of the products without a
+	 *                         {@link #setThreshold(String, int) threshold of their
+	 *                         own}; 0 to only publish out-of-stock events
+	 * @param subscriber       accepts each event on the consumer thread
+	 */
+	public StockEventPublisher(final int capacity, final int defaultThreshold,
+			final Consumer<? super StockEvent> subscriber) {
+		checkArgument(capacity > 0, "The 'int capacity' argument must be positive: capacity=%s", capacity);
+		this.ring = new ArrayBlockingQueue<>(capacity);
+		this.defaultThreshold = defaultThreshold;
+		this.subscriber = checkNotNull(subscriber,
+				"The 'Consumer<? super StockEvent> subscriber' argument is required; it must not be null");
+		this.consumer = new Thread(this::consume, "stock-events");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Sets the low-stock threshold of the product with the given UPC
+	 *
+	 * @param upc       the UPC
+	 * @param threshold events are published when the quantity of the product is at
+	 *                  or below the threshold
+	 */
+	public void setThreshold(final String upc, final int threshold) {
+		checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
+		thresholds.put(upc, threshold);
+	}
+
+	/**
+	 * @param upc the UPC
+	 * @return the low-stock threshold of the product with the given UPC
+	 */
+	public int getThreshold(final String upc) {
+		return thresholds.getOrDefault(upc, defaultThreshold);
+	}
+
+	/**
+	 * Publishes an event for the given UPC if the given quantity is at or below its
+	 * threshold, coalescing it with an event for the UPC that is still waiting.
+	 * Never blocks.
+	 *
+	 * @param upc      the UPC of the adjusted product
+	 * @param quantity the adjusted quantity of the product
+	 */
+	void trigger(final String upc, final int quantity) {
+		if (closed || quantity > getThreshold(upc)) {
+			return;
+		}
+		// only the trigger that finds no waiting event enqueues the UPC
+		if (waiting.put(upc, quantity) == null && !ring.offer(upc)) {
+			waiting.remove(upc);
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * @return the number of triggers dropped because the ring buffer was full
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	private void consume() {
+		final Thread thread = Thread.currentThread();
+		while (!closed || !ring.isEmpty()) {
+			final String upc;
+			try {
+				upc = ring.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (upc == null) {
+				continue;
+			}
+			// a trigger after this removal enqueues the UPC again
+			final Integer quantity = waiting.remove(upc);
+			try {
+				subscriber.accept(new StockEvent(upc, quantity, getThreshold(upc)));
+			} catch (RuntimeException e) {
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting triggers, delivers the waiting events and stops the consumer
+	 * thread.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (Thread.currentThread() == consumer) {
+			return;
+		}
+		boolean interrupted = false;
+		while (consumer.isAlive()) {
+			try {
+				consumer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.bridgephase.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The index of the {@link Stock} of the products of an {@link Inventory}, keyed
+ * by UPC.
+ * <p>
+ * Lookups and iteration may run concurrently with each other and with a merge.
+ * Merges are serialized by the inventory (they only happen while replenishing,
+ * which holds the replenish lock, or while constructing the inventory), so
+ * an index does not have to support concurrent merges.
+ */
+interface StockIndex {
+
+	/**
+	 * @param upc the UPC
+	 * @return the stock of the product with the given UPC, or null if the index
+	 *         does not contain the product
+	 */
+	Stock get(String upc);
+
+	/**
+	 * Merges the given replenishment record into the stock of its product, adding
+	 * the stock to the index if the product is new. Callers must not merge
+	 * concurrently.
+	 *
+	 * @param product       the replenishment record
+	 * @param replenishment the replenishment of the record
+	 * @param oldestPin     the oldest version of the catalog pinned by a reader
+	 * @return true if the product is new to the index
+	 * @see Stock#merge(Product, Replenishment, long)
+	 */
+	boolean merge(Product product, Replenishment replenishment, long oldestPin);
+
+	/**
+	 * @return the number of products in the index
+	 */
+	int size();
+
+	/**
+	 * Performs the given action for the stock of each product in the index
+	 *
+	 * @param action the action
+	 */
+	void forEach(Consumer<Stock> action);
+
+	/**
+	 * @return a stream of the stock of each product in the index, which walks the
+	 *         index as it is consumed
+	 */
+	Stream<Stock> stream();
+
+	/**
+	 * @return an index backed by a {@link ConcurrentHashMap}
+	 */
+	static StockIndex concurrent() {
+		return new StockIndex() {
+			private final ConcurrentMap<String, Stock> stocks = new ConcurrentHashMap<>();
+
+			@Override
+			public Stock get(String upc) {
+				return stocks.get(upc);
+			}
+
+			@Override
+			public boolean merge(Product product, Replenishment replenishment, long oldestPin) {
+				final Stock stock = stocks.get(product.getUpc());
+				if (stock != null) {
+					stock.merge(product, replenishment, oldestPin);
+					return false;
+				}
+				stocks.put(product.getUpc(), new Stock(product, replenishment));
+				return true;
+			}
+
+			@Override
+			public int size() {
+				return stocks.size();
+			}
+
+			@Override
+			public void forEach(Consumer<Stock> action) {
+				stocks.values().forEach(action);
+			}
+
+			@Override
+			public Stream<Stock> stream() {
+				return stocks.values().stream();
+			}
+		};
+	}
+}
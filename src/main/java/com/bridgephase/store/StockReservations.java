@@ -0,0 +1,338 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.collect.Maps;
+
+/**
+ * Soft reservations of the stock of an {@link IInventory} shared by several
+ * {@link CashRegister cash registers}, so that the last unit of a product
+ * cannot be sold by two registers at once.
+ * <p>
+ * Each open transaction has a {@link Hold}. Scanning a product
+ * {@link Hold#reserve(String, int) reserves} it, which succeeds only while the
+ * quantity in inventory exceeds the quantity reserved by all holds. Paying
+ * {@link Hold#commit(Map) commits} the hold: the inventory is adjusted and the
+ * reservations of the hold are released. A hold that is neither committed nor
+ * {@link Hold#release() released} (e.g. an abandoned transaction) expires once
+ * nothing has been reserved for the hold time, and its reservations are
+ * released.
+ * <p>
+ * There is no global lock: the quantity reserved of each product is an atomic
+ * counter, a hold is only locked by its own transaction and by its expiry, and
+ * holds are expired by a hashed timing wheel. The wheel is an array of buckets
+ * each covering one tick; a hold is added to the bucket of its deadline in
+ * constant time and a background thread visits one bucket per tick. A hold that
+ * was renewed after it was scheduled is moved to the bucket of its new deadline
+ * when its old bucket is visited, so renewing a hold (on every scan) costs no
+ * more than a volatile write.
+ * <p>
+ * Note: This class is thread-safe.
+ */
+public class StockReservations implements Closeable {
+
+	/**
+	 * The duration of a tick of the timing wheel
+	 */
+	static final Duration TICK = Duration.ofMillis(100);
+
+	/**
+	 * The number of buckets of the timing wheel
+	 */
+	static final int BUCKETS = 512;
+
+	private final IInventory inventory;
+
+	private final long holdNanos;
+
+	private final long tickNanos;
+
+	private final LongSupplier clock;
+
+	/**
+	 * The quantity reserved of each product, by UPC
+	 */
+	private final ConcurrentMap<String, AtomicInteger> reserved = new ConcurrentHashMap<>();
+
+	/**
+	 * The buckets of the timing wheel; the hold with a deadline in tick
+	 * <code>t</code> is in bucket <code>t & mask</code>
+	 */
+	private final Queue<Hold>[] wheel;
+
+	private final int mask;
+
+	/**
+	 * The last tick whose bucket was visited, only written by the expiry
+	 */
+	private volatile long tick;
+
+	private final ScheduledExecutorService expiry;
+
+	/**
+	 * Creates the reservations of the given inventory and starts the thread that
+	 * expires holds
+	 *
+	 * @param inventory the inventory
+	 * @param holdTime  the time after which a hold expires if nothing is reserved
+	 *                  for it
+	 */
+	public StockReservations(final IInventory inventory, final Duration holdTime) {
+		this(inventory, holdTime, TICK, BUCKETS, System::nanoTime, true);
+	}
+
+	/**
+	 * @param tick    the duration of a tick of the timing wheel
+	 * @param buckets the number of buckets of the timing wheel, a power of two
+	 * @param clock   the nano time
+	 * @param start   whether to start the thread that expires holds each tick, or
+	 *                leave it to the caller to call {@link #expire()}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	StockReservations(final IInventory inventory, final Duration holdTime, final Duration tick, final int buckets,
+			final LongSupplier clock, final boolean start) {
+		this.inventory = checkNotNull(inventory, "The 'IInventory inventory' argument is required; it must not be null");
+		checkNotNull(holdTime, "The 'Duration holdTime' argument is required; it must not be null");
+		checkArgument(holdTime.compareTo(tick) >= 0, "The hold time must be at least one tick: holdTime=%s, tick=%s",
+				holdTime, tick);
+		checkArgument(Integer.bitCount(buckets) == 1, "The number of buckets must be a power of two: buckets=%s",
+				buckets);
+		this.holdNanos = holdTime.toNanos();
+		this.tickNanos = tick.toNanos();
+		this.clock = clock;
+		this.wheel = new Queue[buckets];
+		for (int i = 0; i < buckets; i++) {
+			wheel[i] = new ConcurrentLinkedQueue<>();
+		}
+		this.mask = buckets - 1;
+		this.tick = clock.getAsLong() / tickNanos;
+		if (start) {
+			this.expiry = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "stock-reservations");
+				thread.setDaemon(true);
+				return thread;
+			});
+			expiry.scheduleAtFixedRate(this::expire, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+		} else {
+			this.expiry = null;
+		}
+	}
+
+	/**
+	 * @return the inventory whose stock is reserved
+	 */
+	public IInventory getInventory() {
+		return inventory;
+	}
+
+	/**
+	 * Opens a hold for a transaction
+	 *
+	 * @return a hold without reservations
+	 */
+	public Hold open() {
+		return new Hold();
+	}
+
+	/**
+	 * @param upc the UPC
+	 * @return the quantity of the product with the given UPC reserved by all holds
+	 */
+	public int getReserved(final String upc) {
+		final AtomicInteger quantity = reserved.get(upc);
+		return quantity == null ? 0 : quantity.get();
+	}
+
+	/**
+	 * @param upc the UPC
+	 * @return the quantity of the product with the given UPC in inventory that is
+	 *         not reserved, or 0 if the product is not in inventory
+	 */
+	public int getAvailable(final String upc) {
+		final Optional<Product> product = inventory.find(upc);
+		return product.isPresent() ? Math.max(0, product.get().getQuantity() - getReserved(upc)) : 0;
+	}
+
+	/**
+	 * Visits the buckets of the timing wheel up to the current tick, expiring the
+	 * holds that are past their deadline. Called each tick by the expiry thread.
+	 */
+	synchronized void expire() {
+		final long now = clock.getAsLong();
+		final long current = now / tickNanos;
+		// a full turn of the wheel visits every bucket
+		final long first = Math.max(tick + 1, current - mask);
+		final List<Hold> due = new ArrayList<>();
+		for (long t = first; t <= current; t++) {
+			final Queue<Hold> bucket = wheel[(int) (t & mask)];
+			for (Hold hold; (hold = bucket.poll()) != null;) {
+				due.add(hold);
+			}
+		}
+		tick = current;
+		for (Hold hold : due) {
+			hold.expire(now);
+		}
+	}
+
+	private void schedule(final Hold hold, final long deadline) {
+		// never schedule into a bucket that has already been visited this turn; a
+		// hold added just as its bucket is visited is expired a turn late
+		wheel[(int) (Math.max(deadline / tickNanos, tick + 1) & mask)].add(hold);
+	}
+
+	/**
+	 * Stops expiring holds
+	 */
+	@Override
+	public void close() {
+		if (expiry != null) {
+			expiry.shutdownNow();
+		}
+	}
+
+	/**
+	 * The reservations of one transaction. A hold is used by one cash register at a
+	 * time.
+	 */
+	public final class Hold {
+
+		/**
+		 * The quantity reserved by this hold, by UPC
+		 */
+		private final Map<String, Integer> held = new HashMap<>();
+
+		/**
+		 * The time after which this hold expires
+		 */
+		private volatile long deadline;
+
+		/**
+		 * Whether this hold is in the timing wheel
+		 */
+		private boolean scheduled;
+
+		private boolean closed;
+
+		private Hold() {
+		}
+
+		/**
+		 * Reserves the given quantity of the product with the given UPC, if that
+		 * quantity is available, and renews this hold.
+		 *
+		 * @param upc      the UPC
+		 * @param quantity the quantity
+		 * @return true if the quantity was reserved, false if the product is not in
+		 *         inventory or not enough of it is available
+		 * @throws IllegalStateException if this hold has been committed or released
+		 */
+		public synchronized boolean reserve(final String upc, final int quantity) {
+			checkNotNull(upc, "The 'String upc' argument is required; it must not be null");
+			checkArgument(quantity > 0, "The 'int quantity' argument must be positive: quantity=%s", quantity);
+			checkState(!closed, "The hold has been committed or released");
+			final Optional<Product> product = inventory.find(upc);
+			if (!product.isPresent()) {
+				return false;
+			}
+			final AtomicInteger reservedQuantity = reserved.computeIfAbsent(upc, key -> new AtomicInteger());
+			final int inStock = product.get().getQuantity();
+			for (int current = reservedQuantity.get();; current = reservedQuantity.get()) {
+				if (current + quantity > inStock) {
+					return false;
+				}
+				if (reservedQuantity.compareAndSet(current, current + quantity)) {
+					break;
+				}
+			}
+			held.merge(upc, quantity, Integer::sum);
+			deadline = clock.getAsLong() + holdNanos;
+			if (!scheduled) {
+				scheduled = true;
+				schedule(this, deadline);
+			}
+			return true;
+		}
+
+		/**
+		 * @param upc the UPC
+		 * @return the quantity of the product with the given UPC reserved by this hold
+		 */
+		public synchronized int getHeld(final String upc) {
+			return held.getOrDefault(upc, 0);
+		}
+
+		/**
+		 * Commits this hold for a paid transaction: the quantities of the inventory are
+		 * {@link IInventory#adjustQuantities(Map) decreased} by the quantities sold,
+		 * whether or not they were reserved (or their reservations expired), and the
+		 * reservations of this hold are released.
+		 *
+		 * @param sold the quantity sold, by UPC
+		 * @throws IllegalStateException if this hold has been committed or released
+		 */
+		public synchronized void commit(final Map<String, Integer> sold) {
+			checkNotNull(sold, "The 'Map<String, Integer> sold' argument is required; it must not be null");
+			checkState(!closed, "The hold has been committed or released");
+			closed = true;
+			// decrease the inventory before releasing, so the units are never available
+			// twice
+			try {
+				inventory.adjustQuantities(Maps.transformValues(sold, quantity -> 0 - quantity));
+			} finally {
+				releaseHeld();
+			}
+		}
+
+		/**
+		 * Releases the reservations of this hold (e.g. for a cancelled transaction).
+		 * Releasing a closed hold has no effect.
+		 */
+		public synchronized void release() {
+			closed = true;
+			releaseHeld();
+		}
+
+		/**
+		 * Called by the timing wheel when the bucket of this hold is visited
+		 */
+		private synchronized void expire(final long now) {
+			if (closed || held.isEmpty()) {
+				scheduled = false;
+			} else if (deadline - now > 0) {
+				// renewed since it was scheduled
+				schedule(this, deadline);
+			} else {
+				scheduled = false;
+				releaseHeld();
+			}
+		}
+
+		private void releaseHeld() {
+			for (Map.Entry<String, Integer> entry : held.entrySet()) {
+				reserved.get(entry.getKey()).addAndGet(-entry.getValue());
+			}
+			held.clear();
+		}
+	}
+}
@@ -2,10 +2,17 @@ package com.bridgephase.store;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 import com.bridgephase.store.interfaces.IInventory;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * This can be used as an entry point to ensure that you have a working
  * implementation for Part 1.
@@ -22,11 +29,22 @@ import com.bridgephase.store.interfaces.IInventory;
 public class StoreApplication {
 
   /**
-   * This is the main entry point to this application.
+   * This is the main entry point to this application. Without arguments a
+   * sample inventory is loaded; otherwise the inventory is loaded from the
+   * comma separated file given as the first argument, or from the snapshot file
+   * given as the second argument if it exists (see
+   * {@link #load(Path, Path)}).
    * 
-   * @param args
+   * @param args <code>[inventory.csv [inventory.snapshot]]</code>
    */
   public static void main(String args[]) throws Exception {
+    if (args.length > 0) {
+      final long start = System.nanoTime();
+      final IInventory inventory = load(Paths.get(args[0]), args.length > 1 ? Paths.get(args[1]) : null);
+      System.out.println(String.format("Loaded %d products in %d ms", inventory.stream().count(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+      return;
+    }
     InputStream input = inputStreamFromString(
       "upc,name,wholesalePrice,retailPrice,quantity\n" + "A123,Apple,0.50,1.00,100");
     IInventory inventory = new Inventory();
@@ -37,6 +55,38 @@ public class StoreApplication {
     }
   }
 
+  /**
+   * Loads an inventory, preferring the snapshot when present. If the snapshot
+   * exists (and is intact) the inventory is imported from it; otherwise the
+   * inventory is replenished from the comma separated file and, if a snapshot
+   * file is given, exported to it for the next start.
+   * 
+   * @param csv      the comma separated inventory file
+   * @param snapshot the snapshot file, or null
+   * @return the loaded inventory
+   * @throws UncheckedIOException if an IOException occurs while reading or
+   *                              writing the files
+   */
+  static Inventory load(Path csv, Path snapshot) {
+    checkNotNull(csv, "The 'Path csv' argument is required; it must not be null");
+    if (snapshot != null && Files.exists(snapshot)) {
+      final Inventory inventory = new Inventory();
+      try {
+        inventory.importSnapshot(snapshot);
+        return inventory;
+      } catch (UncheckedIOException e) {
+        // e.g. a snapshot of an older format or a torn write; fall back to the
+        // comma separated file
+      }
+    }
+    final Inventory inventory = new Inventory();
+    inventory.replenish(csv);
+    if (snapshot != null) {
+      inventory.exportSnapshot(snapshot);
+    }
+    return inventory;
+  }
+
   /**
    * This is a simple way to convert a string to an input stream.
    * 
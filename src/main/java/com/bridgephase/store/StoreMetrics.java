@@ -0,0 +1,169 @@
+package com.bridgephase.store;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The latencies and counters of the hot paths of a store: scans, payments and
+ * receipts of {@link CashRegister cash registers} and finds, quantity
+ * adjustments and replenishments of an {@link Inventory}. Metrics are only
+ * recorded by the registers and inventories that are given this object (see
+ * {@link CashRegister#setMetrics(StoreMetrics)} and
+ * {@link Inventory#setMetrics(StoreMetrics)}); recording allocates nothing, so
+ * one object may be shared by all the lanes of a store and dumped with
+ * {@link #toText()} or {@link #toJson()} for monitoring.
+ * <p>
+ * Note: This object is thread-safe.
+ */
+public final class StoreMetrics {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final LatencyHistogram scan = new LatencyHistogram();
+	private final LatencyHistogram pay = new LatencyHistogram();
+	private final LatencyHistogram printReceipt = new LatencyHistogram();
+	private final LatencyHistogram find = new LatencyHistogram();
+	private final LatencyHistogram adjustQuantity = new LatencyHistogram();
+	private final LatencyHistogram replenish = new LatencyHistogram();
+
+	private final LongAdder unknownUpcScans = new LongAdder();
+	private final LongAdder rowsReplenished = new LongAdder();
+
+	private final Map<String, LatencyHistogram> latencies = ImmutableMap.<String, LatencyHistogram>builder()
+			.put("cashRegister.scan", scan).put("cashRegister.pay", pay).put("cashRegister.printReceipt", printReceipt)
+			.put("inventory.find", find).put("inventory.adjustQuantity", adjustQuantity)
+			.put("inventory.replenish", replenish).build();
+
+	/**
+	 * @return the latency of {@link CashRegister#scan(String)}, including the
+	 *         scans of unknown UPCs
+	 */
+	public LatencyHistogram getScanLatency() {
+		return scan;
+	}
+
+	/**
+	 * @return the latency of {@link CashRegister#pay(java.math.BigDecimal)},
+	 *         including the adjustment of the inventory and the journal append
+	 */
+	public LatencyHistogram getPayLatency() {
+		return pay;
+	}
+
+	/**
+	 * @return the latency of {@link CashRegister#printReceipt(java.io.OutputStream)}
+	 */
+	public LatencyHistogram getPrintReceiptLatency() {
+		return printReceipt;
+	}
+
+	/**
+	 * @return the latency of {@link Inventory#find(String)}
+	 */
+	public LatencyHistogram getFindLatency() {
+		return find;
+	}
+
+	/**
+	 * @return the latency of {@link Inventory#adjustQuantity(String, Integer)}
+	 */
+	public LatencyHistogram getAdjustQuantityLatency() {
+		return adjustQuantity;
+	}
+
+	/**
+	 * @return the latency of a whole replenishment of an inventory (from a stream,
+	 *         a file or a snapshot)
+	 */
+	public LatencyHistogram getReplenishLatency() {
+		return replenish;
+	}
+
+	/**
+	 * @return the number of scans of a UPC that is not in the inventory
+	 */
+	public long getUnknownUpcScans() {
+		return unknownUpcScans.sum();
+	}
+
+	/**
+	 * @return the number of replenishment records merged into an inventory
+	 */
+	public long getRowsReplenished() {
+		return rowsReplenished.sum();
+	}
+
+	/**
+	 * @return the replenishment records merged per second of replenishment, or 0
+	 *         if nothing was replenished
+	 */
+	public double getRowsPerSecond() {
+		final long nanos = replenish.getTotalNanos();
+		return nanos == 0 ? 0 : getRowsReplenished() * 1e9 / nanos;
+	}
+
+	void unknownUpcScanned() {
+		unknownUpcScans.increment();
+	}
+
+	void rowReplenished() {
+		rowsReplenished.increment();
+	}
+
+	/**
+	 * @return a line per latency histogram and counter, e.g.
+	 *         <code>cashRegister.scan count=12 mean=1.2us p50=1.1us ...</code>
+	 */
+	public String toText() {
+		final StringBuilder text = new StringBuilder();
+		latencies.forEach((name, histogram) -> {
+			text.append(name).append(" count=").append(histogram.getCount()).append(" mean=")
+					.append(micros(histogram.getMeanNanos()));
+			for (double percentile : PERCENTILES) {
+				text.append(" p").append(label(percentile)).append('=')
+						.append(micros(histogram.getPercentileNanos(percentile)));
+			}
+			text.append(" max=").append(micros(histogram.getMaxNanos())).append('\n');
+		});
+		text.append("cashRegister.unknownUpcScans count=").append(getUnknownUpcScans()).append('\n');
+		text.append("inventory.rowsReplenished count=").append(getRowsReplenished())
+				.append(String.format(" perSecond=%.0f", getRowsPerSecond())).append('\n');
+		return text.toString();
+	}
+
+	/**
+	 * @return a JSON object with an object per latency histogram, in nanoseconds,
+	 *         and a number per counter
+	 */
+	public String toJson() {
+		final StringBuilder json = new StringBuilder("{");
+		latencies.forEach((name, histogram) -> {
+			json.append('"').append(name).append("\":{\"count\":").append(histogram.getCount())
+					.append(",\"meanNanos\":").append(Math.round(histogram.getMeanNanos()));
+			for (double percentile : PERCENTILES) {
+				json.append(",\"p").append(label(percentile)).append("Nanos\":")
+						.append(histogram.getPercentileNanos(percentile));
+			}
+			json.append(",\"maxNanos\":").append(histogram.getMaxNanos()).append("},");
+		});
+		json.append("\"cashRegister.unknownUpcScans\":").append(getUnknownUpcScans());
+		json.append(",\"inventory.rowsReplenished\":").append(getRowsReplenished());
+		json.append(",\"inventory.rowsPerSecond\":").append(Math.round(getRowsPerSecond()));
+		return json.append('}').toString();
+	}
+
+	private static String label(final double percentile) {
+		return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+	}
+
+	private static String micros(final double nanos) {
+		return String.format("%.1fus", nanos / 1e3);
+	}
+
+	@Override
+	public String toString() {
+		return toText();
+	}
+}
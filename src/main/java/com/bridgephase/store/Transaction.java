@@ -2,6 +2,8 @@ package com.bridgephase.store;
 
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import com.bridgephase.store.InsufficientFundsException;
@@ -33,14 +35,25 @@ public class Transaction {
   private final Map<String, TransactionLineItem> lineItems = new LinkedHashMap<>();
 
   /**
-   * The count of products in transaction.
+   * a read-only view of the line items while the transaction is underway
+   */
+  private final Map<String, TransactionLineItem> lineItemsView = Collections.unmodifiableMap(lineItems);
+
+  /**
+   * the line items frozen once when the transaction is paid
+   */
+  private ImmutableMap<String, TransactionLineItem> paidLineItems;
+
+  /**
+   * The count of products in transaction, maintained as products are added.
    */
   private int count;
 
   /**
-   * The total amount of the transaction.
+   * The total amount of the transaction in {@link Money} minor units, maintained
+   * as products are added.
    */
-  private BigDecimal total;
+  private long total;
 
   /**
    * The amount paid.
@@ -52,6 +65,11 @@ public class Transaction {
    */
   private BigDecimal change;
 
+  /**
+   * The time of payment.
+   */
+  private Instant paidAt;
+
   /**
    * Add the given product and quantity to the transaction
    * 
@@ -64,8 +82,16 @@ public class Transaction {
   boolean add(Product product, int quantity) {
     checkState(state != PAID, "Cannot add product to a paid transaction");
     checkArgument(product != null, "The 'Product product' argument is required; it must not be null");
-    final TransactionLineItem lineItem = lineItems.merge(product.getUpc(),
-      new TransactionLineItem(product.getName(), product.getRetailPrice(), quantity), TransactionLineItem::merge);
+    final TransactionLineItem previous = lineItems.get(product.getUpc());
+    final TransactionLineItem lineItem = TransactionLineItem.merge(previous,
+      new TransactionLineItem(product.getName(), product.getRetailMinorUnits(), quantity));
+    // the merged line item is priced at the latest price, so replace the
+    // previous extended price rather than adding only the new quantity's
+    final long total = Money.add(this.total - (previous == null ? 0 : previous.extendedMinorUnits()),
+      lineItem.extendedMinorUnits());
+    lineItems.put(product.getUpc(), lineItem);
+    this.total = total;
+    this.count += quantity;
     // the spec says to return false if quantity scanned exceeds the quantity of
     // product in stock,
     // however I have decided to add it to the transaction regardless because this
@@ -96,10 +122,10 @@ public class Transaction {
       throw new InsufficientFundsException(String
         .format("The amount of %s is insufficient to cover the total transaction cost of %s", amountPaid, total));
     }
-    this.total = total;
-    this.count = getCount();
+    this.paidLineItems = ImmutableMap.copyOf(lineItems);
     this.paid = amountPaid;
     this.change = amountPaid.subtract(total);
+    this.paidAt = Instant.now();
     this.state = PAID;
     return this.change;
   }
@@ -108,25 +134,29 @@ public class Transaction {
     return state == PAID;
   }
 
+  /**
+   * Returns the line items keyed by upc without copying them. Once the
+   * transaction is paid this is the same immutable snapshot on every call;
+   * before that it is a read-only view that reflects products added later.
+   * 
+   * @return the line items of this transaction, keyed by upc
+   */
   public Map<String, TransactionLineItem> getLineItems() {
-		return ImmutableMap.copyOf(lineItems);
+		return state == PAID ? paidLineItems : lineItemsView;
 	}
 
 	/**
    * @return the count for all products in this transaction
    */
   Integer getCount() {
-    return state == PAID ? this.count
-      : lineItems.values().stream().map(item -> item.getQuantity()).reduce((q1, q2) -> q1 + q2).orElse(Integer.valueOf(0));
+    return count;
   }
 
   /**
    * @return the total amount for all products in this transaction
    */
   BigDecimal getTotal() {
-    return state == PAID ? this.total
-      : lineItems.values().stream().map(item -> item.extendedPrice()).reduce((ep1, ep2) -> ep1.add(ep2))
-        .orElse(BigDecimal.valueOf(0, 2));
+    return lineItems.isEmpty() ? BigDecimal.valueOf(0, 2) : Money.toBigDecimal(total);
   }
 
   /**
@@ -142,4 +172,11 @@ public class Transaction {
   BigDecimal getChange() {
     return state == PAID ? change : BigDecimal.valueOf(0, 2);
   }
+
+  /**
+   * @return the time of payment, or null if the transaction has not been paid
+   */
+  Instant getPaidAt() {
+    return paidAt;
+  }
 }
\ No newline at end of file
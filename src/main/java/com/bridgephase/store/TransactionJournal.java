@@ -0,0 +1,476 @@
+package com.bridgephase.store;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A durable, append-only journal of paid {@link Transaction transactions}.
+ * <p>
+ * The journal file starts with a header (a magic number and a format version)
+ * followed by one record per transaction. A record is the length of its
+ * payload, the CRC-32 of its payload and the payload: the time of payment, the
+ * line items (upc, name, price and quantity), the total, the amount paid and
+ * the change. Amounts are written as exact {@link BigDecimal}s (scale and
+ * unscaled value), so entries do not depend on the currency of the reader.
+ * <p>
+ * {@link #append(Transaction) append} returns once the record has been forced
+ * to the storage device. Appends from concurrent cash registers are committed
+ * in groups: the first appender to find no write in progress becomes the
+ * leader, writes every record queued so far with one gathering write and one
+ * {@link FileChannel#force(boolean) force}, and wakes the appenders of those
+ * records. Appenders arriving while the leader forces queue their records for
+ * the next group, so the number of forces per second stays bounded by the
+ * device while throughput grows with the number of registers.
+ * <p>
+ * A crash can leave a partially written record at the end of the file. The
+ * {@link #read(Path) recovery reader} stops at the first record that is
+ * incomplete or fails its checksum, and opening a journal truncates the file
+ * to the last intact record before appending.
+ * <p>
+ * Note: This journal is thread-safe.
+ */
+public class TransactionJournal implements Closeable {
+
+	private static final int MAGIC = 0x424a524e; // "BJRN"
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+	/**
+	 * The bytes of a record ahead of its payload: the payload length and CRC-32
+	 */
+	private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+
+	private final Path path;
+
+	private final FileChannel channel;
+
+	/**
+	 * Guards the fields below and is waited on by appenders of records that are
+	 * not yet durable
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The records appended but not yet written by a leader
+	 */
+	private List<ByteBuffer> pending = new ArrayList<>();
+
+	/**
+	 * The sequence number of the most recently appended record
+	 */
+	private long appended;
+
+	/**
+	 * The sequence number of the most recent record forced to the device
+	 */
+	private long durable;
+
+	/**
+	 * Whether a leader is writing and forcing a group of records
+	 */
+	private boolean writing;
+
+	/**
+	 * The number of groups forced to the device
+	 */
+	private long groups;
+
+	/**
+	 * The failure of a group write; once a write fails the contents of the end of
+	 * the file are unknown, so the journal refuses further appends
+	 */
+	private IOException failure;
+
+	private boolean closed;
+
+	/**
+	 * Opens the journal in the given file, creating the file if it does not exist
+	 * and truncating any incomplete record at its end.
+	 *
+	 * @param path the journal file
+	 * @throws UncheckedIOException if an IOException occurs while opening the file
+	 *                              or the file is not a transaction journal
+	 */
+	public TransactionJournal(final Path path) {
+		this.path = checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+		try {
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				final long end = scan(channel, entry -> {
+				});
+				if (end < HEADER_BYTES) {
+					channel.truncate(0);
+					final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+					header.flip();
+					writeFully(channel, new ByteBuffer[] { header });
+					channel.force(true);
+				} else if (end < channel.size()) {
+					channel.truncate(end);
+					channel.force(true);
+				}
+				channel.position(channel.size());
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error opening transaction journal: path=" + path, e);
+		}
+	}
+
+	/**
+	 * Appends the given paid transaction to this journal, returning once it is
+	 * durable.
+	 *
+	 * @param transaction the paid transaction
+	 * @throws IllegalArgumentException if the transaction has not been paid
+	 * @throws IllegalStateException    if the journal has been closed
+	 * @throws UncheckedIOException     if an IOException occurs while writing
+	 *                                  this or an earlier record
+	 */
+	public void append(final Transaction transaction) {
+		checkNotNull(transaction, "The 'Transaction transaction' argument is required; it must not be null");
+		checkArgument(transaction.isPaid(), "Cannot journal an unpaid transaction");
+		final ByteBuffer record = encode(transaction);
+		boolean interrupted = false;
+		try {
+			final long sequence;
+			synchronized (lock) {
+				checkState(!closed, "The transaction journal has been closed");
+				throwIfFailed();
+				pending.add(record);
+				sequence = ++appended;
+			}
+			while (true) {
+				final ByteBuffer[] group;
+				final long last;
+				synchronized (lock) {
+					while (durable < sequence && (writing || failure != null)) {
+						throwIfFailed();
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							// the record is already queued; wait for it regardless
+							interrupted = true;
+						}
+					}
+					if (durable >= sequence) {
+						return;
+					}
+					// lead the next group
+					writing = true;
+					group = pending.toArray(new ByteBuffer[pending.size()]);
+					pending = new ArrayList<>();
+					last = appended;
+				}
+				IOException failure = null;
+				try {
+					writeFully(channel, group);
+					force(channel);
+				} catch (IOException e) {
+					failure = e;
+				}
+				synchronized (lock) {
+					writing = false;
+					if (failure == null) {
+						durable = last;
+						groups++;
+					} else {
+						this.failure = failure;
+					}
+					lock.notifyAll();
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of groups of records forced to the device
+	 */
+	long getGroupCount() {
+		synchronized (lock) {
+			return groups;
+		}
+	}
+
+	/**
+	 * @return the number of records queued for the next group
+	 */
+	int getQueuedCount() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Forces the records of a group to the device; called by the leader of the
+	 * group without holding {@link #lock}
+	 */
+	void force(final FileChannel channel) throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * Closes this journal once the records already appended are durable
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			boolean interrupted = false;
+			while (writing || (durable < appended && failure == null)) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		channel.close();
+	}
+
+	/**
+	 * Must be called holding {@link #lock}
+	 */
+	private void throwIfFailed() {
+		if (failure != null) {
+			throw new UncheckedIOException("Error writing transaction journal: path=" + path, failure);
+		}
+	}
+
+	/**
+	 * Reads the intact entries of the given journal file in the order they were
+	 * appended, stopping at the first incomplete or corrupt record.
+	 *
+	 * @param path the journal file
+	 * @return the entries of the journal
+	 * @throws UncheckedIOException if an IOException occurs while reading the file
+	 *                              or the file is not a transaction journal
+	 */
+	public static List<Entry> read(final Path path) {
+		checkNotNull(path, "The 'Path path' argument is required; it must not be null");
+		final ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			scan(channel, entries::add);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading transaction journal: path=" + path, e);
+		}
+		return entries.build();
+	}
+
+	/**
+	 * Reads the intact records of the given channel from its start
+	 *
+	 * @param channel  the journal file
+	 * @param consumer accepts the entry of each intact record
+	 * @return the position following the last intact record, or 0 if the file is
+	 *         shorter than the header
+	 * @throws IOException if an IOException occurs while reading or the file is not
+	 *                     a transaction journal
+	 */
+	private static long scan(final FileChannel channel, final Consumer<Entry> consumer) throws IOException {
+		final long size = channel.size();
+		if (size < HEADER_BYTES) {
+			return 0;
+		}
+		channel.position(0);
+		// not closed, as closing it would close the channel
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+		final int magic = in.readInt();
+		final int version = in.readInt();
+		if (magic != MAGIC || version != VERSION) {
+			throw new IOException(String.format("Not a transaction journal: magic=%x, version=%s", magic, version));
+		}
+		long position = HEADER_BYTES;
+		final CRC32 crc = new CRC32();
+		while (position + RECORD_HEADER_BYTES <= size) {
+			final int length = in.readInt();
+			final int checksum = in.readInt();
+			if (length < 0 || position + RECORD_HEADER_BYTES + length > size) {
+				break;
+			}
+			final byte[] payload = new byte[length];
+			in.readFully(payload);
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			consumer.accept(decode(payload));
+			position += RECORD_HEADER_BYTES + length;
+		}
+		return position;
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer[] buffers) throws IOException {
+		int first = 0;
+		while (first < buffers.length) {
+			channel.write(buffers, first, buffers.length - first);
+			while (first < buffers.length && !buffers[first].hasRemaining()) {
+				first++;
+			}
+		}
+	}
+
+	private static ByteBuffer encode(final Transaction transaction) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		// reserve the record header, filled in below
+		final byte[] reserved = new byte[RECORD_HEADER_BYTES];
+		bytes.write(reserved, 0, reserved.length);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeLong(transaction.getPaidAt().toEpochMilli());
+			final Map<String, TransactionLineItem> lineItems = transaction.getLineItems();
+			out.writeInt(lineItems.size());
+			for (Map.Entry<String, TransactionLineItem> lineItem : lineItems.entrySet()) {
+				out.writeUTF(lineItem.getKey());
+				out.writeUTF(lineItem.getValue().getName());
+				writeDecimal(out, lineItem.getValue().getPrice());
+				out.writeInt(lineItem.getValue().getQuantity());
+			}
+			writeDecimal(out, transaction.getTotal());
+			writeDecimal(out, transaction.getPaid());
+			writeDecimal(out, transaction.getChange());
+		} catch (IOException e) {
+			// a ByteArrayOutputStream does not throw IOException
+			throw new UncheckedIOException(e);
+		}
+		final ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+		final CRC32 crc = new CRC32();
+		crc.update(record.array(), RECORD_HEADER_BYTES, record.capacity() - RECORD_HEADER_BYTES);
+		record.putInt(0, record.capacity() - RECORD_HEADER_BYTES);
+		record.putInt(Integer.BYTES, (int) crc.getValue());
+		return record;
+	}
+
+	private static Entry decode(final byte[] payload) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		final Instant paidAt = Instant.ofEpochMilli(in.readLong());
+		final int size = in.readInt();
+		final ImmutableMap.Builder<String, TransactionLineItem> lineItems = ImmutableMap.builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) {
+			final String upc = in.readUTF();
+			final String name = in.readUTF();
+			final BigDecimal price = readDecimal(in);
+			final int quantity = in.readInt();
+			lineItems.put(upc, new TransactionLineItem(name, price, quantity));
+		}
+		final BigDecimal total = readDecimal(in);
+		final BigDecimal paid = readDecimal(in);
+		final BigDecimal change = readDecimal(in);
+		return new Entry(paidAt, lineItems.build(), total, paid, change);
+	}
+
+	private static void writeDecimal(final DataOutputStream out, final BigDecimal value) throws IOException {
+		final byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeInt(value.scale());
+		out.writeShort(unscaled.length);
+		out.write(unscaled);
+	}
+
+	private static BigDecimal readDecimal(final DataInputStream in) throws IOException {
+		final int scale = in.readInt();
+		final byte[] unscaled = new byte[in.readUnsignedShort()];
+		if (unscaled.length == 0) {
+			throw new EOFException("Empty decimal");
+		}
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	/**
+	 * A paid transaction read from a journal
+	 */
+	public static final class Entry {
+		private final Instant paidAt;
+		private final Map<String, TransactionLineItem> lineItems;
+		private final BigDecimal total;
+		private final BigDecimal paid;
+		private final BigDecimal change;
+
+		private Entry(Instant paidAt, Map<String, TransactionLineItem> lineItems, BigDecimal total, BigDecimal paid,
+				BigDecimal change) {
+			this.paidAt = paidAt;
+			this.lineItems = lineItems;
+			this.total = total;
+			this.paid = paid;
+			this.change = change;
+		}
+
+		public Instant getPaidAt() {
+			return paidAt;
+		}
+
+		/**
+		 * @return the line items keyed by upc, in the order they were added
+		 */
+		public Map<String, TransactionLineItem> getLineItems() {
+			return lineItems;
+		}
+
+		/**
+		 * @return the count for all products in the transaction
+		 */
+		public int getCount() {
+			return lineItems.values().stream().mapToInt(TransactionLineItem::getQuantity).sum();
+		}
+
+		public BigDecimal getTotal() {
+			return total;
+		}
+
+		public BigDecimal getPaid() {
+			return paid;
+		}
+
+		public BigDecimal getChange() {
+			return change;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [paidAt=" + paidAt + ", lineItems=" + lineItems.size() + ", total=" + total + ", paid="
+					+ paid + ", change=" + change + "]";
+		}
+	}
+}
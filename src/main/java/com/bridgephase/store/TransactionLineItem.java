@@ -4,20 +4,49 @@ import java.math.BigDecimal;
 import static com.google.common.base.Preconditions.*;
 
 
+/**
+ * A line item of a {@link Transaction}. The price is held in {@link Money}
+ * minor units.
+ * <p>
+ * Note: a price given as a {@link BigDecimal} with more decimals than the
+ * currency {@link Money#SCALE scale} is rounded HALF_UP to that scale, so its
+ * {@link #getPrice() price} and {@link #extendedPrice() extended price} are
+ * those of the rounded price; earlier releases kept the unrounded price. The
+ * prices of {@link Product products} are already of the currency scale, so
+ * their line items are unaffected.
+ */
 class TransactionLineItem {
   private final String name;
-  private final BigDecimal price;
+  private final long price;
   private final Integer quantity;
 
+  /**
+   * @param price the price, rounded HALF_UP to the currency {@link Money#SCALE scale}
+   */
   TransactionLineItem(String name, BigDecimal price, Integer quantity) {
+    this(name, Money.of(checkNotNull(price, "The 'BigDecimal price' argument is required; it must not be null")),
+      quantity);
+  }
+
+  /**
+   * @param price the price in {@link Money} minor units
+   */
+  TransactionLineItem(String name, long price, Integer quantity) {
     super();
     this.name = checkNotNull(name, "The 'String name' argument is required; it must not be null");
-    this.price = checkNotNull(price, "The 'BigDecimal price' argument is required; it must not be null");
+    this.price = price;
     this.quantity = checkNotNull(quantity, "The 'Integer quantity' argument is required; it must not be null");
   }
 
   BigDecimal extendedPrice() {
-    return price.multiply(BigDecimal.valueOf(this.quantity));
+    return Money.toBigDecimal(extendedMinorUnits());
+  }
+
+  /**
+   * @return the extended price (price * quantity) in {@link Money} minor units
+   */
+  long extendedMinorUnits() {
+    return Money.multiply(price, quantity);
   }
 
   String getName() {
@@ -25,7 +54,7 @@ class TransactionLineItem {
 	}
 
 	BigDecimal getPrice() {
-		return price;
+		return Money.toBigDecimal(price);
 	}
 
 	Integer getQuantity() {
@@ -1,10 +1,22 @@
 package com.bridgephase.store.interfaces;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import com.bridgephase.store.Product;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 /**
  * Interface that represents a product inventory.
@@ -30,12 +42,105 @@ public interface IInventory {
 	 */
 	public void replenish(InputStream inputStream);
 
+	/**
+	 * Reads the inventory from a comma separated file in the format described by
+	 * {@link #replenish(InputStream)}.
+	 * 
+	 * @param path the file from where to read the inventory
+	 * @throws UncheckedIOException if an IOException occurs while reading the file
+	 */
+	public default void replenish(Path path) {
+		try (InputStream inputStream = Files.newInputStream(path)) {
+			replenish(inputStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading file: path=" + path, e);
+		}
+	}
+
 	/**
 	 * @return returns an unmodifiable <code>List</code> of <code>Product</code>
 	 *         representing products inside the inventory.
 	 */
 	public List<Product> list();
 
+	/**
+	 * Returns a stream of the products inside the inventory, in no particular
+	 * order. Unlike {@link #list()}, an implementation should walk the inventory as
+	 * the stream is consumed instead of copying it, so that the memory used by a
+	 * full export of the inventory does not grow with the size of the inventory.
+	 * The stream reflects each product as it was when the stream reached it; it
+	 * does not fail if the inventory is modified concurrently.
+	 * 
+	 * @return a stream of the products inside the inventory
+	 */
+	public default Stream<Product> stream() {
+		return list().stream();
+	}
+
+	/**
+	 * Performs the given action for each product inside the inventory, in no
+	 * particular order, like {@link #stream()}.
+	 * 
+	 * @param action the action
+	 */
+	public default void forEach(final Consumer<? super Product> action) {
+		Preconditions.checkNotNull(action,
+				"The 'Consumer<? super Product> action' argument is required; it must not be null");
+		stream().forEach(action);
+	}
+
+	/**
+	 * Returns a page of the products inside the inventory in ascending UPC order,
+	 * starting after the given UPC. To walk the whole inventory, start with a null
+	 * UPC and pass the UPC of the last product of each page to get the next page,
+	 * until a page has fewer than <code>limit</code> products.
+	 * 
+	 * @param afterUpc the UPC after which the page starts (e.g. the last UPC of the
+	 *                 previous page), or null to start with the first product
+	 * @param limit    the most products of the page
+	 * @return an unmodifiable list of at most <code>limit</code> products
+	 */
+	public default List<Product> page(final String afterUpc, final int limit) {
+		return page(afterUpc, limit, product -> true);
+	}
+
+	/**
+	 * Returns a page of the products inside the inventory that match the given
+	 * filter (e.g. the products that need replenishing), like
+	 * {@link #page(String, int)}.
+	 * <p>
+	 * This implementation scans the whole {@link #stream() stream} of the
+	 * inventory, keeping at most <code>limit</code> products, so every page costs
+	 * time linear in the size of the inventory (and walking all the pages costs
+	 * quadratic time). Implementations that keep their products sorted by UPC
+	 * should override it.
+	 * 
+	 * @param afterUpc the UPC after which the page starts, or null to start with the
+	 *                 first product
+	 * @param limit    the most products of the page
+	 * @param filter   the filter of the products of the page
+	 * @return an unmodifiable list of at most <code>limit</code> products
+	 */
+	public default List<Product> page(final String afterUpc, final int limit,
+			final Predicate<? super Product> filter) {
+		Preconditions.checkArgument(limit >= 0, "The 'int limit' argument must not be negative: limit=%s", limit);
+		Preconditions.checkNotNull(filter,
+				"The 'Predicate<? super Product> filter' argument is required; it must not be null");
+		final Comparator<Product> byUpc = Comparator.comparing(Product::getUpc);
+		// the greatest UPC of the page is at the head, to be evicted by a lesser one
+		final PriorityQueue<Product> page = new PriorityQueue<>(byUpc.reversed());
+		stream().filter(product -> afterUpc == null || product.getUpc().compareTo(afterUpc) > 0).filter(filter)
+				.forEach(product -> {
+					if (page.size() < limit) {
+						page.add(product);
+					} else if (limit > 0 && byUpc.compare(product, page.peek()) < 0) {
+						page.poll();
+						page.add(product);
+					}
+				});
+		return ImmutableList.sortedCopyOf(byUpc, page);
+	}
+
 	/**
 	 * @param upc the UPC
 	 * @return an Optional contain the found product else an empty optional
@@ -55,4 +160,25 @@ public interface IInventory {
 	 *         product found in inventory for given UPC
 	 */
 	Optional<Product> adjustQuantity(final String upc, final Integer delta);
+
+	/**
+	 * Adjusts the {@link Product#getQuantity() quantities} of several products in
+	 * this inventory in one call (e.g. all the line items of a sale), as if
+	 * {@link #adjustQuantity(String, Integer) adjustQuantity} were called for each
+	 * entry of the given map. UPCs not found in this inventory are ignored. The
+	 * order in which the adjustments are applied is up to the implementation.
+	 * <p>
+	 * This default implementation applies the adjustments in ascending UPC order,
+	 * so that an implementation of {@link #adjustQuantity(String, Integer)} that
+	 * locks products individually takes the locks of two overlapping batches
+	 * without deadlock.
+	 * 
+	 * @param deltas the delta amount to adjust the quantity by, keyed by UPC
+	 */
+	public default void adjustQuantities(final Map<String, Integer> deltas) {
+		Preconditions.checkNotNull(deltas,
+				"The 'Map<String, Integer> deltas' argument is required; it must not be null");
+		deltas.entrySet().stream().sorted(Map.Entry.comparingByKey())
+				.forEachOrdered(delta -> adjustQuantity(delta.getKey(), delta.getValue()));
+	}
 }
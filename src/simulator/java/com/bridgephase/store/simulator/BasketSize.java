@@ -0,0 +1,77 @@
+package com.bridgephase.store.simulator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Random;
+
+/**
+ * The distribution of the number of items a customer scans. Parsed from
+ * <code>fixed:N</code>, <code>uniform:MIN-MAX</code> or
+ * <code>geometric:MEAN</code> (many small baskets and a few large ones, which is
+ * typical of a convenience store).
+ */
+abstract class BasketSize {
+
+	/**
+	 * @return the number of items of a basket, at least 1
+	 */
+	abstract int next(Random random);
+
+	static BasketSize parse(final String spec) {
+		final String[] parts = spec.split(":", 2);
+		checkArgument(parts.length == 2, "Expected a basket size of the form kind:value: %s", spec);
+		switch (parts[0]) {
+		case "fixed": {
+			final int size = Integer.parseInt(parts[1]);
+			checkArgument(size > 0, "The basket size must be positive: %s", spec);
+			return new BasketSize() {
+				@Override
+				int next(Random random) {
+					return size;
+				}
+
+				@Override
+				public String toString() {
+					return spec;
+				}
+			};
+		}
+		case "uniform": {
+			final String[] bounds = parts[1].split("-", 2);
+			final int min = Integer.parseInt(bounds[0]);
+			final int max = Integer.parseInt(bounds[1]);
+			checkArgument(min > 0 && max >= min, "Expected 0 < min <= max: %s", spec);
+			return new BasketSize() {
+				@Override
+				int next(Random random) {
+					return min + random.nextInt(max - min + 1);
+				}
+
+				@Override
+				public String toString() {
+					return spec;
+				}
+			};
+		}
+		case "geometric": {
+			final double mean = Double.parseDouble(parts[1]);
+			checkArgument(mean >= 1, "The mean basket size must be at least 1: %s", spec);
+			// the number of trials until the first success, which has the given mean
+			final double p = 1 / mean;
+			return new BasketSize() {
+				@Override
+				int next(Random random) {
+					return p == 1 ? 1 : 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+				}
+
+				@Override
+				public String toString() {
+					return spec;
+				}
+			};
+		}
+		default:
+			throw new IllegalArgumentException("Unknown basket size distribution: " + spec);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.bridgephase.store.simulator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import com.bridgephase.store.Inventory;
+import com.bridgephase.store.OffHeapInventory;
+import com.bridgephase.store.interfaces.IInventory;
+
+/**
+ * Reports the heap and direct memory used by an {@link Inventory} and an
+ * {@link OffHeapInventory} of the same products, the pause of a full
+ * collection while the inventory is live and the young collection time of a
+ * workload of lookups.
+ * <p>
+ * The arguments are the numbers of products to compare, 100000 by default.
+ * Run with <code>gradle footprint -PfootprintArgs="1000000 10000000"</code>
+ * (which needs a heap of about 3 GB).
+ */
+public final class InventoryFootprint {
+
+	private static final int LOOKUPS = 5_000_000;
+
+	private InventoryFootprint() {
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final String[] sizes = args.length == 0 ? new String[] { "100000" } : args;
+		for (String size : sizes) {
+			final int products = Integer.parseInt(size);
+			checkArgument(products > 0, "Expected a number of products > 0: %s", size);
+			final Path csv = csv(products);
+			try {
+				report(products, "Inventory", csv, Inventory::new);
+				report(products, "OffHeapInventory", csv, OffHeapInventory::new);
+			} finally {
+				Files.delete(csv);
+			}
+		}
+	}
+
+	private static Path csv(final int products) throws IOException {
+		final Path path = Files.createTempFile("inventory-" + products, ".csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+			writer.write("upc,name,wholesalePrice,retailPrice,quantity\n");
+			for (int p = 0; p < products; p++) {
+				writer.append(Long.toString(100_000_000_000L + p)).append(",Product ").append(Integer.toString(p))
+						.append(",0.50,1.00,").append(Integer.toString(p % 1000)).append('\n');
+			}
+		}
+		return path;
+	}
+
+	private static void report(final int products, final String name, final Path csv,
+			final Supplier<IInventory> supplier) {
+		final long heapBefore = heapUsedAfterGc();
+		final long directBefore = directMemoryUsed();
+		final long start = System.nanoTime();
+		final IInventory inventory = supplier.get();
+		inventory.replenish(csv);
+		final long loadNanos = System.nanoTime() - start;
+		final long heap = Math.max(0, heapUsedAfterGc() - heapBefore);
+		final long direct = Math.max(0, directMemoryUsed() - directBefore);
+
+		// the pause of a full collection grows with the live heap
+		long gcMillis = gcMillis();
+		System.gc();
+		final long fullGcMillis = gcMillis() - gcMillis;
+
+		// young collections of a workload of lookups while the inventory is live
+		gcMillis = gcMillis();
+		final long gcCount = gcCount();
+		long found = 0;
+		for (int i = 0; i < LOOKUPS; i++) {
+			found += inventory.find(Long.toString(100_000_000_000L + (i * 7919L) % products)).get().getQuantity();
+		}
+		final long lookupGcMillis = gcMillis() - gcMillis;
+		final long lookupGcCount = gcCount() - gcCount;
+
+		System.out.println(String.format(
+				"%s: products=%d, load ms=%.0f, heap MB=%.1f, direct MB=%.1f, full gc ms=%d, lookup gc ms=%d "
+						+ "(%d collections, checksum %d)",
+				name, products, loadNanos / 1e6, heap / 1e6, direct / 1e6, fullGcMillis, lookupGcMillis,
+				lookupGcCount, found));
+	}
+
+	private static long heapUsedAfterGc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long directMemoryUsed() {
+		long used = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				used += pool.getMemoryUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+}
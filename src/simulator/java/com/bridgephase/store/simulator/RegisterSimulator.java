@@ -0,0 +1,259 @@
+package com.bridgephase.store.simulator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.bridgephase.store.CashRegister;
+import com.bridgephase.store.Inventory;
+import com.bridgephase.store.LatencyHistogram;
+import com.bridgephase.store.ProfiledLock;
+import com.bridgephase.store.RegisterPool;
+import com.bridgephase.store.StockReservations;
+import com.bridgephase.store.StoreMetrics;
+
+/**
+ * Simulates the customers of a store to size the hardware of the store: every
+ * customer is a task that opens a {@link CashRegister} session against one
+ * shared {@link Inventory}, scans a basket of products and pays. Customers run
+ * on virtual threads (one per customer) when the JDK provides them and on a
+ * pool of platform threads otherwise.
+ * <p>
+ * The simulation is configured by <code>key=value</code> arguments:
+ * <dl>
+ * <dt>customers</dt>
+ * <dd>the number of customers, 10000 by default</dd>
+ * <dt>products</dt>
+ * <dd>the number of products of the inventory, 5000 by default</dd>
+ * <dt>quantity</dt>
+ * <dd>the initial quantity of every product, 1000000 by default; a product that
+ * is out of stock is still scanned and sold (as a customer who has it in hand
+ * is), and counted as an out of stock scan</dd>
+ * <dt>zipf</dt>
+ * <dd>the skew of the popularity of the products, 1.0 by default (0 for
+ * none)</dd>
+ * <dt>basket</dt>
+ * <dd>the distribution of the basket size, see {@link BasketSize},
+ * <code>geometric:6</code> by default</dd>
+ * <dt>lanes</dt>
+ * <dd>the number of lanes of a {@link RegisterPool} that the customers queue
+ * for, or 0 (by default) for a register per customer, e.g. self checkout on
+ * phones</dd>
+ * <dt>think</dt>
+ * <dd>the milliseconds between two scans of a customer, 1 by default</dd>
+ * <dt>threads</dt>
+ * <dd>the number of platform threads when virtual threads are not available,
+ * 256 by default</dd>
+ * </dl>
+ * The simulator reports the transactions and scans per second, the
+ * percentiles of the scan and pay latency (and of the wait for a lane) recorded
+ * in the {@link StoreMetrics} of the registers and the inventory, and the
+ * contention on the locks of the inventory: the wait and hold times of
+ * {@link Inventory#setLockProfiling(boolean) profiled} operations.
+ * <p>
+ * Run with <code>gradle simulate -PsimulatorArgs="customers=50000 lanes=32"</code>.
+ */
+public final class RegisterSimulator {
+
+	private final int customers;
+	private final int products;
+	private final int quantity;
+	private final Zipf popularity;
+	private final BasketSize basket;
+	private final int lanes;
+	private final long thinkMillis;
+	private final int threads;
+
+	private final StoreMetrics metrics = new StoreMetrics();
+	private final LatencyHistogram laneWait = new LatencyHistogram();
+	private final LongAdder scans = new LongAdder();
+	private final LongAdder outOfStock = new LongAdder();
+	private final LongAdder transactions = new LongAdder();
+
+	RegisterSimulator(final Map<String, String> settings) {
+		final Map<String, String> remaining = new HashMap<>(settings);
+		this.customers = Integer.parseInt(remove(remaining, "customers", "10000"));
+		this.products = Integer.parseInt(remove(remaining, "products", "5000"));
+		this.quantity = Integer.parseInt(remove(remaining, "quantity", "1000000"));
+		this.popularity = new Zipf(products, Double.parseDouble(remove(remaining, "zipf", "1.0")));
+		this.basket = BasketSize.parse(remove(remaining, "basket", "geometric:6"));
+		this.lanes = Integer.parseInt(remove(remaining, "lanes", "0"));
+		this.thinkMillis = Long.parseLong(remove(remaining, "think", "1"));
+		this.threads = Integer.parseInt(remove(remaining, "threads", "256"));
+		checkArgument(remaining.isEmpty(), "Unknown settings: %s", remaining.keySet());
+		checkArgument(customers > 0 && lanes >= 0 && thinkMillis >= 0 && threads > 0,
+				"Expected customers > 0, lanes >= 0, think >= 0 and threads > 0: %s", settings);
+	}
+
+	private static String remove(final Map<String, String> settings, final String key, final String defaultValue) {
+		final String value = settings.remove(key);
+		return value == null ? defaultValue : value;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> settings = new HashMap<>();
+		for (String arg : args) {
+			final String[] pair = arg.split("=", 2);
+			checkArgument(pair.length == 2, "Expected key=value: %s", arg);
+			settings.put(pair[0], pair[1]);
+		}
+		new RegisterSimulator(settings).run();
+	}
+
+	void run() throws InterruptedException, ExecutionException {
+		final Inventory inventory = inventory();
+		final Duration holdTime = Duration.ofMinutes(5);
+		final StockReservations reservations;
+		final RegisterPool pool;
+		if (lanes > 0) {
+			pool = new RegisterPool(inventory, null, lanes, holdTime);
+			reservations = pool.getReservations();
+		} else {
+			pool = null;
+			reservations = new StockReservations(inventory, holdTime);
+		}
+		final CustomerExecutor executor = executor();
+		final long elapsed;
+		try {
+			final List<Future<?>> futures = new ArrayList<>(customers);
+			final long start = System.nanoTime();
+			for (int c = 0; c < customers; c++) {
+				futures.add(executor.service.submit(() -> {
+					if (pool == null) {
+						final CashRegister register = new CashRegister(inventory, null, reservations);
+						register.setMetrics(metrics);
+						shop(register);
+					} else {
+						final long queued = System.nanoTime();
+						try (RegisterPool.Lane lane = pool.acquire()) {
+							laneWait.recordSince(queued);
+							lane.getRegister().setMetrics(metrics);
+							shop(lane.getRegister());
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			elapsed = System.nanoTime() - start;
+		} finally {
+			executor.service.shutdown();
+			executor.service.awaitTermination(1, TimeUnit.MINUTES);
+			if (pool == null) {
+				reservations.close();
+			} else {
+				pool.close();
+			}
+		}
+		report(executor, elapsed, inventory);
+	}
+
+	private Inventory inventory() {
+		final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int rank = 0; rank < products; rank++) {
+			csv.append(upc(rank)).append(",Product ").append(rank).append(",0.50,1.00,").append(quantity).append('\n');
+		}
+		final Inventory inventory = new Inventory();
+		inventory.replenish(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+		inventory.setMetrics(metrics);
+		inventory.setLockProfiling(true);
+		return inventory;
+	}
+
+	private static String upc(final int rank) {
+		return "S" + rank;
+	}
+
+	private void shop(final CashRegister register) throws InterruptedException {
+		final Random random = ThreadLocalRandom.current();
+		register.beginTransaction();
+		for (int items = basket.next(random); items > 0; items--) {
+			if (thinkMillis > 0) {
+				Thread.sleep(thinkMillis);
+			}
+			scans.increment();
+			if (!register.scan(upc(popularity.next(random)))) {
+				outOfStock.increment();
+			}
+		}
+		register.pay(register.getTotal());
+		transactions.increment();
+	}
+
+	private void report(final CustomerExecutor executor, final long elapsed, final Inventory inventory) {
+		final double seconds = elapsed / 1e9;
+		System.out.println(String.format("customers=%d, products=%d, zipf top 10 share=%.1f%%, basket=%s, lanes=%s, "
+				+ "think=%dms, threads=%s", customers, products, 100 * popularity.share(10), basket,
+				lanes > 0 ? lanes : "one per customer", thinkMillis, executor.description));
+		System.out.println(String.format("elapsed=%.2fs, transactions/s=%.0f, scans/s=%.0f, out of stock scans=%d",
+				seconds, transactions.sum() / seconds, scans.sum() / seconds, outOfStock.sum()));
+		print("scan", metrics.getScanLatency());
+		print("pay", metrics.getPayLatency());
+		if (lanes > 0) {
+			print("lane wait", laneWait);
+		}
+		// sales adjust quantities without a lock, so only the replenishment locks
+		// (and the log lock of a logged inventory) are profiled
+		for (ProfiledLock lock : inventory.getLocks()) {
+			final String text = lock.toText();
+			System.out.print(text.isEmpty() ? lock.getName() + ": not taken while profiled" + System.lineSeparator()
+					: text);
+		}
+	}
+
+	/**
+	 * Prints the count and percentiles of the given latencies
+	 */
+	private static void print(final String name, final LatencyHistogram latency) {
+		System.out.println(String.format("%s latency: count=%d, mean=%s, p50=%s, p90=%s, p99=%s, p99.9=%s, max=%s", name,
+				latency.getCount(), micros(latency.getMeanNanos()), micros(latency.getPercentileNanos(50)),
+				micros(latency.getPercentileNanos(90)), micros(latency.getPercentileNanos(99)),
+				micros(latency.getPercentileNanos(99.9)), micros(latency.getMaxNanos())));
+	}
+
+	private static String micros(final double nanos) {
+		return String.format("%.1fus", nanos / 1e3);
+	}
+
+	private CustomerExecutor executor() {
+		try {
+			// Executors.newVirtualThreadPerTaskExecutor() is only available on JDK 21+
+			final ExecutorService service = (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return new CustomerExecutor(service, "virtual");
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			final int size = Math.min(customers, threads);
+			return new CustomerExecutor(Executors.newFixedThreadPool(size), size + " platform");
+		}
+	}
+
+	/**
+	 * The executor service on which the customers run and its description
+	 */
+	private static final class CustomerExecutor {
+		private final ExecutorService service;
+		private final String description;
+
+		private CustomerExecutor(final ExecutorService service, final String description) {
+			this.service = service;
+			this.description = description;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.bridgephase.store.simulator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples ranks <code>0..n-1</code> with Zipf popularity: rank <code>k</code>
+ * is drawn with a probability proportional to <code>1 / (k + 1)^s</code>, so
+ * that a few products are scanned far more often than the rest. An exponent of
+ * 0 draws every rank with the same probability.
+ */
+final class Zipf {
+
+	/**
+	 * The cumulative probability of each rank
+	 */
+	private final double[] cumulative;
+
+	/**
+	 * @param n        the number of ranks
+	 * @param exponent the skew of the popularity, 0 for none
+	 */
+	Zipf(final int n, final double exponent) {
+		checkArgument(n > 0, "The number of ranks must be positive: n=%s", n);
+		checkArgument(exponent >= 0, "The exponent must not be negative: exponent=%s", exponent);
+		cumulative = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, exponent);
+			cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= sum;
+		}
+	}
+
+	/**
+	 * @return a rank drawn with Zipf popularity
+	 */
+	int next(final Random random) {
+		final int i = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(i >= 0 ? i : -i - 1, cumulative.length - 1);
+	}
+
+	/**
+	 * @return the probability of drawing one of the first <code>ranks</code> ranks
+	 */
+	double share(final int ranks) {
+		return cumulative[Math.min(ranks, cumulative.length) - 1];
+	}
+}
@@ -95,8 +95,9 @@ class CashRegisterTest {
     expect(inventory.find("A123")).andReturn(Optional.ofNullable(products.get("A123")));
     expect(inventory.find("B234")).andReturn(Optional.ofNullable(products.get("B234")));
     expect(inventory.find("P9889")).andReturn(Optional.ofNullable(products.get("P9889")));
-    expect(inventory.adjustQuantity("A123", -2)).andReturn(Optional.empty());
-    expect(inventory.adjustQuantity("B234", -1)).andReturn(Optional.empty());
+    // the whole basket is committed to inventory in one batch
+    inventory.adjustQuantities(ImmutableMap.of("A123", -2, "B234", -1));
+    expectLastCall();
     replay(mocks);
 
     // add one A123 product
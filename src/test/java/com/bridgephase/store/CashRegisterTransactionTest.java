@@ -3,6 +3,10 @@ package com.bridgephase.store;
 import static com.bridgephase.store.TestUtils.bigdec;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -56,4 +60,48 @@ class CashRegisterTransactionTest {
     assertEquals(true, transaction.isPaid());
     assertEquals(0, transaction.getCount());
   }
-}
+
+  @Test
+  void testRunningTotalAndCount() {
+    transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 2);
+    transaction.add(new Product("B234", "Peach", 0.35, 0.75, 100), 1);
+    assertEquals(bigdec(2.75), transaction.getTotal());
+    assertEquals(3, transaction.getCount());
+    transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 3);
+    assertEquals(bigdec(5.75), transaction.getTotal());
+    assertEquals(6, transaction.getCount());
+    transaction.pay(bigdec(10.00));
+    assertEquals(bigdec(5.75), transaction.getTotal());
+    assertEquals(6, transaction.getCount());
+  }
+
+  @Test
+  void testRunningTotalRepricesLineItem() {
+    transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 2);
+    assertEquals(bigdec(2.00), transaction.getTotal());
+    // a line item is priced at the latest retail price of its product
+    transaction.add(new Product("A123", "Apple", 0.50, 1.25, 100), 1);
+    assertEquals(bigdec(3.75), transaction.getTotal());
+    assertEquals(3, transaction.getCount());
+  }
+
+  @Test
+  void testLineItemsViewBeforePaid() {
+    final Map<String, TransactionLineItem> lineItems = transaction.getLineItems();
+    assertTrue(lineItems.isEmpty());
+    transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 2);
+    assertEquals(2, lineItems.get("A123").getQuantity());
+    assertThrows(UnsupportedOperationException.class, () -> lineItems.remove("A123"));
+  }
+
+  @Test
+  void testLineItemsFrozenWhenPaid() {
+    transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), 2);
+    transaction.add(new Product("B234", "Peach", 0.35, 0.75, 100), 1);
+    transaction.pay(bigdec(10.00));
+    final Map<String, TransactionLineItem> lineItems = transaction.getLineItems();
+    assertSame(lineItems, transaction.getLineItems(), "Expected the paid line items to be built only once");
+    assertEquals(Arrays.asList("A123", "B234"), new ArrayList<>(lineItems.keySet()));
+    assertThrows(UnsupportedOperationException.class, () -> lineItems.clear());
+  }
+}
\ No newline at end of file
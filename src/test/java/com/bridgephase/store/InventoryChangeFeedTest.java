@@ -0,0 +1,156 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class InventoryChangeFeedTest {
+
+	private static final String CSV = "upc,name,wholesalePrice,retailPrice,quantity\n"
+			+ "A123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200\nC123,Milk,2.15,4.50,40";
+
+	/**
+	 * A subscriber that records the changes it is delivered and only requests
+	 * changes when told to
+	 */
+	private static final class Recorder implements Flow.Subscriber<InventoryChange> {
+		private final List<InventoryChange> changes = new ArrayList<>();
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private volatile Flow.Subscription subscription;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public synchronized void onNext(InventoryChange change) {
+			changes.add(change);
+			notifyAll();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			done.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			done.complete(null);
+		}
+
+		synchronized List<InventoryChange> await(int count) throws InterruptedException {
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (changes.size() < count && System.nanoTime() < deadline) {
+				wait(100);
+			}
+			return new ArrayList<>(changes);
+		}
+
+		void request(long n) throws InterruptedException {
+			while (subscription == null) {
+				Thread.sleep(1);
+			}
+			subscription.request(n);
+		}
+	}
+
+	@Test
+	void testTrackInventory() throws InterruptedException {
+		final Inventory inventory = new Inventory();
+		final Recorder recorder = new Recorder();
+		inventory.changes().subscribe(recorder);
+		recorder.request(Long.MAX_VALUE);
+		inventory.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+		inventory.adjustQuantity("A123", -3);
+		inventory.adjustQuantities(ImmutableMap.of("B234", -2, "C123", -1, "P9889", -1));
+		inventory.replenish(new ByteArrayInputStream(
+				"upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.10,5".getBytes(StandardCharsets.UTF_8)));
+		final List<InventoryChange> changes = recorder.await(7);
+		assertEquals(7, changes.size());
+		assertEquals(new InventoryChange(InventoryChange.Type.MERGE, new Product("A123", "Apple", 0.50, 1.00, 100), 100),
+				changes.get(0));
+		assertEquals(new InventoryChange(InventoryChange.Type.ADJUST, new Product("A123", "Apple", 0.50, 1.00, 97), -3),
+				changes.get(3));
+
+		// the changes are enough to keep track of the inventory
+		final Map<String, Product> tracked = new HashMap<>();
+		final Map<String, Integer> quantities = new HashMap<>();
+		for (InventoryChange change : changes) {
+			tracked.put(change.getUpc(), change.getProduct());
+			quantities.merge(change.getUpc(), change.getDelta(), Integer::sum);
+		}
+		final List<Product> expected = new ArrayList<>(inventory.list());
+		expected.sort(Comparator.comparing(Product::getUpc));
+		final List<Product> actual = new ArrayList<>();
+		for (Product product : tracked.values()) {
+			actual.add(product.withQuantity(quantities.get(product.getUpc())));
+		}
+		actual.sort(Comparator.comparing(Product::getUpc));
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	void testBackpressure() throws InterruptedException {
+		final Inventory inventory = new Inventory(new Product("A123", "Apple", 0.50, 1.00, 100));
+		final Recorder recorder = new Recorder();
+		inventory.changes().subscribe(recorder);
+		recorder.request(2);
+		for (int i = 0; i < 10; i++) {
+			inventory.adjustQuantity("A123", -1);
+		}
+		assertEquals(2, recorder.await(2).size());
+		// the other changes are buffered until they are requested
+		Thread.sleep(50);
+		assertEquals(2, recorder.await(2).size());
+		recorder.request(8);
+		final List<InventoryChange> changes = recorder.await(10);
+		assertEquals(10, changes.size());
+		assertEquals(-10, changes.stream().mapToInt(InventoryChange::getDelta).sum());
+		assertFalse(recorder.done.isDone());
+	}
+
+	@Test
+	void testSubscriberFallsBehind() throws InterruptedException, TimeoutException {
+		// deliver on the publishing thread so that the other subscriber keeps up
+		final InventoryChangeFeed feed = new InventoryChangeFeed(Runnable::run, 4);
+		final Recorder recorder = new Recorder();
+		final Recorder other = new Recorder();
+		feed.subscribe(recorder);
+		feed.subscribe(other);
+		other.request(Long.MAX_VALUE);
+		assertTrue(feed.hasSubscribers());
+		final Product product = new Product("A123", "Apple", 0.50, 1.00, 100);
+		for (int i = 0; i < feed.getBufferSize() + 1; i++) {
+			feed.publish(new InventoryChange(InventoryChange.Type.ADJUST, product, -1));
+		}
+		recorder.request(Long.MAX_VALUE);
+		try {
+			recorder.done.get(10, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertEquals(InventoryChangesDroppedException.class, e.getCause().getClass());
+		}
+		assertTrue(recorder.done.isCompletedExceptionally());
+		assertEquals(0, recorder.await(0).size());
+		// a subscriber that keeps up is not affected
+		assertEquals(feed.getBufferSize() + 1, other.await(feed.getBufferSize() + 1).size());
+		assertFalse(other.done.isDone());
+	}
+}
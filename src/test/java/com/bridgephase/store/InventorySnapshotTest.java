@@ -0,0 +1,208 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.csv;
+import static com.bridgephase.store.TestUtils.sorted;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class InventorySnapshotTest {
+
+	@TempDir
+	Path dir;
+
+	private static final List<Product> PRODUCTS = Arrays.asList(new Product("A123", "Apple", 0.50, 1.00, 100),
+			new Product("B234", "Peach", 0.35, 0.75, -200),
+			new Product("C123", "Cr\u00e8me br\u00fbl\u00e9e", new BigDecimal("2.15"), new BigDecimal("4.50"), 0),
+			new Product("", "", BigDecimal.ZERO, new BigDecimal("92233720368547758.07"), Integer.MAX_VALUE));
+
+	@Test
+	void testWriteAndRead() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS);
+		final List<Product> read = new ArrayList<>();
+		assertEquals(PRODUCTS.size(), InventorySnapshot.read(path, read::add));
+		assertEquals(PRODUCTS, read);
+		assertEquals("Cr\u00e8me br\u00fbl\u00e9e", read.get(2).getName());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 43, 44, 50, 64, 100 })
+	void testReadSmallWindows(int mappedBytes) throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS.subList(0, 3));
+		final List<Product> read = new ArrayList<>();
+		InventorySnapshot.read(path, read::add, mappedBytes);
+		assertEquals(PRODUCTS.subList(0, 3), read);
+	}
+
+	@Test
+	void testReadRecordLargerThanWindow() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS.subList(0, 3));
+		// the third record is 43 bytes
+		assertThrows(IllegalArgumentException.class, () -> InventorySnapshot.read(path, product -> {
+		}, 42));
+	}
+
+	@Test
+	void testReadEmpty() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, Collections.emptyList());
+		assertEquals(0, InventorySnapshot.read(path, product -> {
+			throw new AssertionError(product);
+		}));
+	}
+
+	@Test
+	void testReadCorrupt() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS);
+		final byte[] bytes = Files.readAllBytes(path);
+		bytes[20] ^= 0x01;
+		Files.write(path, bytes);
+		// no product of a corrupt snapshot is consumed
+		assertThrows(IOException.class, () -> InventorySnapshot.read(path, product -> {
+			throw new AssertionError(product);
+		}));
+	}
+
+	/**
+	 * verify that importing a snapshot whose last record is corrupt neither merges
+	 * nor logs any of its products
+	 */
+	@Test
+	void testImportCorrupt() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS);
+		final byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length - 5] ^= 0x01;
+		Files.write(path, bytes);
+		final Path logDirectory = Files.createDirectory(dir.resolve("log"));
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(logDirectory)) {
+			final Inventory inventory = new Inventory(log);
+			inventory.replenish(new ByteArrayInputStream(
+					"upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.00,7\n".getBytes(StandardCharsets.UTF_8)));
+			final List<Product> before = inventory.list();
+			assertThrows(UncheckedIOException.class, () -> inventory.importSnapshot(path));
+			assertEquals(before, inventory.list());
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(logDirectory)) {
+			final Inventory recovered = new Inventory(log);
+			assertEquals(Arrays.asList(new Product("A123", "Apple", 0.50, 1.00, 7)), recovered.list());
+		}
+	}
+
+	@Test
+	void testWriteReplacesAtomically() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS);
+		InventorySnapshot.write(path, PRODUCTS.subList(0, 1));
+		final List<Product> read = new ArrayList<>();
+		InventorySnapshot.read(path, read::add);
+		assertEquals(PRODUCTS.subList(0, 1), read);
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(Arrays.asList(path), files.collect(Collectors.toList()), "Expected no temporary file");
+		}
+		// a failed write leaves the snapshot as it was
+		assertThrows(IllegalArgumentException.class, () -> InventorySnapshot.write(path,
+				Arrays.asList(PRODUCTS.get(0), new Product(new String(new char[0x10000]), "Long", 0.50, 1.00, 1))));
+		read.clear();
+		InventorySnapshot.read(path, read::add);
+		assertEquals(PRODUCTS.subList(0, 1), read);
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(1, files.count(), "Expected no temporary file");
+		}
+	}
+
+	@Test
+	void testReadTruncated() throws IOException {
+		final Path path = dir.resolve("snapshot");
+		InventorySnapshot.write(path, PRODUCTS);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 10);
+		}
+		assertThrows(IOException.class, () -> InventorySnapshot.read(path, product -> {
+		}));
+	}
+
+	@Test
+	void testReadNotASnapshot() throws IOException {
+		final Path path = Files.write(dir.resolve("inventory.csv"), csv(0, 3).getBytes(StandardCharsets.UTF_8));
+		assertThrows(IOException.class, () -> InventorySnapshot.read(path, product -> {
+		}));
+	}
+
+	@Test
+	void testExportAndImport() {
+		final Path path = dir.resolve("snapshot");
+		final Inventory inventory = new Inventory(PRODUCTS.toArray(new Product[0]));
+		inventory.adjustQuantity("A123", -1);
+		inventory.exportSnapshot(path);
+		final Inventory imported = new Inventory();
+		imported.importSnapshot(path);
+		assertEquals(sorted(inventory.list()), sorted(imported.list()));
+		// like a replenishment, importing again adds the quantities
+		imported.importSnapshot(path);
+		assertEquals(198, imported.find("A123").get().getQuantity());
+		assertThrows(UncheckedIOException.class, () -> new Inventory().importSnapshot(dir.resolve("missing")));
+		assertThrows(NullPointerException.class, () -> new Inventory().importSnapshot(null));
+		assertThrows(NullPointerException.class, () -> inventory.exportSnapshot(null));
+	}
+
+	@Test
+	void testLoadPrefersSnapshot() throws IOException {
+		final Path csv = Files.write(dir.resolve("inventory.csv"), csv(0, 10).getBytes(StandardCharsets.UTF_8));
+		final Path snapshot = dir.resolve("inventory.snapshot");
+		final List<Product> expected = sorted(StoreApplication.load(csv, snapshot).list());
+		assertTrue(Files.exists(snapshot), "Expected the snapshot to be exported");
+		// the snapshot is preferred to the comma separated file from now on
+		Files.write(csv, csv(0, 5).getBytes(StandardCharsets.UTF_8));
+		assertEquals(expected, sorted(StoreApplication.load(csv, snapshot).list()));
+		// a damaged snapshot is replaced from the comma separated file
+		Files.write(snapshot, new byte[] { 1, 2, 3 });
+		assertEquals(5, StoreApplication.load(csv, snapshot).list().size());
+		assertEquals(5, StoreApplication.load(csv, snapshot).list().size());
+		assertEquals(5, StoreApplication.load(csv, null).list().size());
+	}
+
+	/**
+	 * verify that an inventory imported from a snapshot equals the inventory
+	 * replenished from the comma separated file the snapshot was exported from.
+	 * The time to load each is measured by InventorySnapshotBenchmark.
+	 */
+	@Test
+	void testCsvAndSnapshotRoundTrip() throws IOException {
+		final int products = 1000;
+		final Path csv = Files.write(dir.resolve("inventory.csv"), csv(0, products).getBytes(StandardCharsets.UTF_8));
+		final Path snapshot = dir.resolve("inventory.snapshot");
+		final Inventory fromCsv = new Inventory();
+		fromCsv.replenish(csv);
+		fromCsv.exportSnapshot(snapshot);
+		final Inventory fromSnapshot = new Inventory();
+		fromSnapshot.importSnapshot(snapshot);
+		assertEquals(products, fromSnapshot.list().size());
+		assertEquals(sorted(fromCsv.list()), sorted(fromSnapshot.list()));
+	}
+}
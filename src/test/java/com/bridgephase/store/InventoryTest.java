@@ -1,5 +1,6 @@
 package com.bridgephase.store;
 
+import static com.bridgephase.store.TestUtils.sorted;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -12,13 +13,24 @@ import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.bridgephase.store.Inventory.ProductParser.ProductParseException;
 import com.bridgephase.store.interfaces.IInventory;
 
 /**
@@ -48,7 +60,7 @@ public class InventoryTest {
 	 */
 	@Test
 	public void testReplenishNullInputStream() {
-		assertThrows(NullPointerException.class, () -> inventory.replenish(null),
+		assertThrows(NullPointerException.class, () -> inventory.replenish((InputStream) null),
 				"Expected a NullPointerException to be thrown when passing a null reference to replenish method");
 	}
 
@@ -194,4 +206,275 @@ public class InventoryTest {
 				"Expected UnsupportedOperationException to be thrown when attempting to remove a product from list");
 	}
 
+	private static String csv(int rows) {
+		final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int i = 0; i < rows; i++) {
+			if (i % 1000 == 999) {
+				// blank lines are ignored
+				csv.append("\n");
+			}
+			// every upc occurs more than once so that merge order matters
+			csv.append("U").append(i % 5000).append(",Product ").append(i).append(",0.50,").append(i % 7).append(".25,")
+					.append(i % 13).append("\n");
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * verify that a parallel replenishment has the same result as a serial
+	 * replenishment
+	 */
+	@Test
+	public void testReplenishInParallel() throws UnsupportedEncodingException {
+		final String csv = csv(Inventory.CHUNK_LINES * 3 + 17);
+		inventory.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+		final Inventory parallel = new Inventory();
+		parallel.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8")), ForkJoinPool.commonPool());
+		assertEquals(sorted(inventory.list()), sorted(parallel.list()));
+	}
+
+	/**
+	 * verify that a parallel replenishment reports the line number of a line that
+	 * fails to parse and merges the lines before it, like a serial replenishment
+	 */
+	@Test
+	public void testReplenishInParallelParseError() throws UnsupportedEncodingException {
+		final String[] lines = csv(Inventory.CHUNK_LINES * 3).split("\n", -1);
+		final int badLineNumber = Inventory.CHUNK_LINES * 2 + 10;
+		lines[badLineNumber - 1] = "B123,Bad,0.5x,1.00,1";
+		final String csv = String.join("\n", lines);
+
+		final ProductParseException serialError = assertThrows(ProductParseException.class,
+				() -> inventory.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8"))));
+		final Inventory parallel = new Inventory();
+		final ProductParseException parallelError = assertThrows(ProductParseException.class,
+				() -> parallel.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8")), ForkJoinPool.commonPool()));
+		assertTrue(parallelError.getMessage().contains("lineNumber=" + badLineNumber), parallelError.getMessage());
+		assertEquals(serialError.getMessage(), parallelError.getMessage());
+		assertEquals(sorted(inventory.list()), sorted(parallel.list()));
+	}
+
+	/**
+	 * verify that a memory-mapped replenishment from a file has the same result as
+	 * a replenishment from an input stream
+	 */
+	@Test
+	public void testReplenishPath(@TempDir Path dir) throws IOException {
+		final String csv = csv(Inventory.CHUNK_LINES * 3 + 17);
+		final Path path = Files.write(dir.resolve("inventory.csv"), csv.getBytes("UTF-8"));
+		inventory.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+		final Inventory mapped = new Inventory();
+		mapped.replenish(path);
+		assertEquals(sorted(inventory.list()), sorted(mapped.list()));
+		final Inventory parallel = new Inventory();
+		parallel.replenish(path, ForkJoinPool.commonPool());
+		assertEquals(sorted(inventory.list()), sorted(parallel.list()));
+	}
+
+	/**
+	 * verify that lines spanning mapped windows and chunks, "\r\n" line terminators
+	 * and UTF-8 names are replenished from a file
+	 */
+	@Test
+	public void testReplenishPathSmallWindows(@TempDir Path dir) throws IOException {
+		final String csv = csv(5000).replace("\n", "\r\n") + "Z1, Cr\u00e8me br\u00fbl\u00e9e ,1.50,3.25,7\r\n";
+		final Path path = Files.write(dir.resolve("inventory.csv"), csv.getBytes("UTF-8"));
+		inventory.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+		final Inventory mapped = new Inventory();
+		mapped.replenish(path, null, 4096, 100);
+		assertEquals(sorted(inventory.list()).subList(0, 5000), sorted(mapped.list()).subList(0, 5000));
+		assertEquals(new Product("Z1", "Cr\u00e8me br\u00fbl\u00e9e", new BigDecimal("1.50"), new BigDecimal("3.25"), 7),
+				mapped.find("Z1").orElse(null));
+		final Inventory parallel = new Inventory();
+		parallel.replenish(path, ForkJoinPool.commonPool(), 4096, 100);
+		assertEquals(sorted(mapped.list()), sorted(parallel.list()));
+	}
+
+	/**
+	 * verify that a replenishment from a file reports the line number of a line
+	 * that fails to parse and merges the lines before it, like a replenishment from
+	 * an input stream
+	 */
+	@Test
+	public void testReplenishPathParseError(@TempDir Path dir) throws IOException {
+		final String[] lines = csv(5000).split("\n", -1);
+		final int badLineNumber = 4321;
+		lines[badLineNumber - 1] = "B123,Bad,0.50,1.00,1x";
+		final String csv = String.join("\n", lines);
+		final Path path = Files.write(dir.resolve("inventory.csv"), csv.getBytes("UTF-8"));
+
+		final ProductParseException expected = assertThrows(ProductParseException.class,
+				() -> inventory.replenish(new ByteArrayInputStream(csv.getBytes("UTF-8"))));
+		assertTrue(expected.getMessage().contains("lineNumber=" + badLineNumber), expected.getMessage());
+		for (ForkJoinPool pool : Arrays.asList(null, ForkJoinPool.commonPool())) {
+			final Inventory mapped = new Inventory();
+			final ProductParseException actual = assertThrows(ProductParseException.class,
+					() -> mapped.replenish(path, pool, 4096, 100));
+			assertEquals(expected.getMessage(), actual.getMessage());
+			assertEquals(sorted(inventory.list()), sorted(mapped.list()));
+		}
+	}
+
+	@Test
+	public void testReplenishPathEmptyAndHeaderOnly(@TempDir Path dir) throws IOException {
+		inventory.replenish(Files.write(dir.resolve("empty.csv"), new byte[0]));
+		assertTrue(inventory.list().isEmpty(), "Expected inventory to be empty after replenishment using empty file");
+		inventory.replenish(
+				Files.write(dir.resolve("header.csv"), "upc,name,wholesalePrice,retailPrice,quantity".getBytes("UTF-8")));
+		assertTrue(inventory.list().isEmpty(), "Expected inventory to be empty after replenishment using header only");
+		assertThrows(IllegalArgumentException.class,
+				() -> inventory.replenish(Files.write(dir.resolve("bad.csv"), "upc,name\nA123,Apple".getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testReplenishNullPath() {
+		assertThrows(NullPointerException.class, () -> inventory.replenish((Path) null),
+				"Expected a NullPointerException to be thrown when passing a null reference to replenish method");
+	}
+
+	@Test
+	public void testAdjustQuantities() throws UnsupportedEncodingException {
+		inventory.replenish(new ByteArrayInputStream(
+				"upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200\nC123,Milk,2.15,4.50,40"
+						.getBytes("UTF-8")));
+		final Map<String, Integer> deltas = new LinkedHashMap<>();
+		deltas.put("C123", -40);
+		deltas.put("A123", -2);
+		deltas.put("P9889", -1);
+		inventory.adjustQuantities(deltas);
+		assertEquals(98, inventory.find("A123").get().getQuantity());
+		assertEquals(200, inventory.find("B234").get().getQuantity());
+		assertEquals(0, inventory.find("C123").get().getQuantity());
+		assertEquals(Optional.empty(), inventory.find("P9889"), "Expected unknown UPCs to be ignored");
+	}
+
+	@Test
+	public void testAdjustQuantitiesDefaultInUpcOrder() {
+		final List<String> adjusted = new ArrayList<>();
+		final IInventory recording = new IInventory() {
+			@Override
+			public void replenish(InputStream inputStream) {
+			}
+
+			@Override
+			public List<Product> list() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public Optional<Product> find(String upc) {
+				return Optional.empty();
+			}
+
+			@Override
+			public Optional<Product> adjustQuantity(String upc, Integer delta) {
+				adjusted.add(upc + delta);
+				return Optional.empty();
+			}
+		};
+		final Map<String, Integer> deltas = new LinkedHashMap<>();
+		deltas.put("C123", -1);
+		deltas.put("A123", -2);
+		deltas.put("B234", 3);
+		recording.adjustQuantities(deltas);
+		assertEquals(Arrays.asList("A123-2", "B2343", "C123-1"), adjusted);
+		assertThrows(NullPointerException.class, () -> recording.adjustQuantities(null));
+	}
+
+	@Test
+	public void testAdjustQuantitiesNull() {
+		assertThrows(NullPointerException.class, () -> inventory.adjustQuantities(null));
+		assertThrows(NullPointerException.class,
+				() -> inventory.adjustQuantities(Collections.singletonMap("A123", (Integer) null)));
+	}
+
+	/**
+	 * Walk the given inventory page by page
+	 */
+	private static List<Product> pages(IInventory inventory, int limit, Predicate<Product> filter) {
+		final List<Product> products = new ArrayList<>();
+		String afterUpc = null;
+		for (List<Product> page; (page = inventory.page(afterUpc, limit, filter)).size() == limit; afterUpc = page
+				.get(limit - 1).getUpc()) {
+			products.addAll(page);
+		}
+		products.addAll(inventory.page(afterUpc, limit, filter));
+		return products;
+	}
+
+	@Test
+	public void testStreamAndForEach() throws UnsupportedEncodingException {
+		inventory.replenish(new ByteArrayInputStream(csv(12000).getBytes("UTF-8")));
+		final List<Product> expected = sorted(inventory.list());
+		assertEquals(5000, expected.size());
+		assertEquals(expected, sorted(inventory.stream().collect(Collectors.toList())));
+		final List<Product> each = new ArrayList<>();
+		inventory.forEach(each::add);
+		assertEquals(expected, sorted(each));
+		assertThrows(NullPointerException.class, () -> inventory.forEach(null));
+		assertEquals(0, new Inventory().stream().count());
+	}
+
+	@Test
+	public void testPage() throws UnsupportedEncodingException {
+		inventory.replenish(new ByteArrayInputStream(csv(12000).getBytes("UTF-8")));
+		final List<Product> expected = sorted(inventory.list());
+		assertEquals(expected, pages(inventory, 333, product -> true));
+		assertEquals(expected, pages(inventory, 5000, product -> true));
+		assertEquals(expected.subList(0, 10), inventory.page(null, 10));
+		assertEquals(expected.subList(11, 21), inventory.page(expected.get(10).getUpc(), 10));
+		// a page may start after a UPC that is not in the inventory
+		assertEquals(expected.subList(0, 10), inventory.page("A", 10));
+		assertEquals(Collections.emptyList(), inventory.page("V", 10));
+		assertEquals(Collections.emptyList(), inventory.page(null, 0));
+		final Predicate<Product> outOfStock = product -> product.getQuantity() == 0;
+		assertEquals(expected.stream().filter(outOfStock).collect(Collectors.toList()),
+				pages(inventory, 7, outOfStock));
+		assertThrows(UnsupportedOperationException.class, () -> inventory.page(null, 10).remove(0));
+		assertThrows(IllegalArgumentException.class, () -> inventory.page(null, -1));
+		assertThrows(NullPointerException.class, () -> inventory.page(null, 1, null));
+	}
+
+	@Test
+	public void testPageAfterReplenish() throws UnsupportedEncodingException {
+		assertEquals(sorted(inventory.list()), inventory.page(null, 100));
+		// the products merged after the first page are added to its index
+		inventory.replenish(new ByteArrayInputStream(csv(12000).getBytes("UTF-8")));
+		inventory.replenish(new ByteArrayInputStream(
+				"upc,name,wholesalePrice,retailPrice,quantity\nB000,Bread,1.00,2.50,10".getBytes("UTF-8")));
+		final List<Product> expected = sorted(inventory.list());
+		assertEquals(expected, pages(inventory, 333, product -> true));
+		assertEquals(expected.subList(1, 11), inventory.page(expected.get(0).getUpc(), 10));
+	}
+
+	@Test
+	public void testPageDefault() throws UnsupportedEncodingException {
+		inventory.replenish(new ByteArrayInputStream(csv(12000).getBytes("UTF-8")));
+		final IInventory listed = new IInventory() {
+			@Override
+			public void replenish(InputStream inputStream) {
+			}
+
+			@Override
+			public List<Product> list() {
+				return inventory.list();
+			}
+
+			@Override
+			public Optional<Product> find(String upc) {
+				return inventory.find(upc);
+			}
+
+			@Override
+			public Optional<Product> adjustQuantity(String upc, Integer delta) {
+				return inventory.adjustQuantity(upc, delta);
+			}
+		};
+		assertEquals(pages(inventory, 333, product -> true), pages(listed, 333, product -> true));
+		assertEquals(inventory.page("U17", 100), listed.page("U17", 100));
+		final Predicate<Product> cheap = product -> product.getRetailPrice().compareTo(BigDecimal.ONE) < 0;
+		assertEquals(pages(inventory, 50, cheap), pages(listed, 50, cheap));
+		assertEquals(Collections.emptyList(), listed.page(null, 0));
+		assertThrows(IllegalArgumentException.class, () -> listed.page(null, -1));
+	}
 }
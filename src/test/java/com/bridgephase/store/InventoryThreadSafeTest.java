@@ -1,9 +1,12 @@
 package com.bridgephase.store;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,8 +16,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 /**
  *
@@ -23,6 +31,9 @@ public class InventoryThreadSafeTest {
 
 	private Inventory inventory;
 
+	@TempDir
+	Path dir;
+
 	@BeforeEach
 	public void setup() {
 		inventory = new Inventory();
@@ -156,4 +167,128 @@ public class InventoryThreadSafeTest {
 		// @formatter:on
 	}
 
+	/**
+	 * verify that adjustments from many threads on the same and on different
+	 * products never lose a delta. The adjustment throughput under contention is
+	 * measured by InventoryBenchmark.
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 4, 8, 16, 32, 64 })
+	public void testAdjustQuantityContention(final int threads) throws UnsupportedEncodingException {
+		final int products = 16;
+		final int adjustmentsPerThread = 2_000;
+		final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+		for (int p = 0; p < products; p++) {
+			csv.append("P").append(p).append(",Product ").append(p).append(",0.50,1.00,0\n");
+		}
+		inventory.replenish(new ByteArrayInputStream(csv.toString().getBytes("UTF-8")));
+
+		final ExecutorService service = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Collection<Future<?>> futures = new ArrayList<>(threads);
+		for (int t = 0; t < threads; ++t) {
+			// every thread adjusts the shared product P0 and a spread of the others
+			final int offset = t;
+			futures.add(service.submit(() -> {
+				latch.await();
+				for (int i = 0; i < adjustmentsPerThread; i++) {
+					inventory.adjustQuantity((i & 1) == 0 ? "P0" : "P" + (1 + Math.floorMod(offset + i, products - 1)), 1);
+				}
+				return null;
+			}));
+		}
+		latch.countDown();
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		service.shutdown();
+
+		final long total = (long) threads * adjustmentsPerThread;
+		assertEquals(total, inventory.list().stream().mapToLong(Product::getQuantity).sum(),
+				"Expected no adjustment to be lost");
+		assertEquals(total / 2, (long) inventory.find("P0").get().getQuantity(), "P0 quantity");
+	}
+
+	/**
+	 * verify that a sale is paid at a register while a replenishment is running,
+	 * with and without a write-ahead log: the replenishment parks at the end of its
+	 * feed (all but its last chunk merged) until the sale is paid, so the test
+	 * fails if the payment waits for the replenishment. The latency of the
+	 * payments during a replenishment is measured by PayDuringReplenishBenchmark.
+	 */
+	@Test
+	public void testPayDuringReplenish() throws Exception {
+		payDuringReplenish(false);
+	}
+
+	@Test
+	public void testPayDuringLoggedReplenish() throws Exception {
+		payDuringReplenish(true);
+	}
+
+	private void payDuringReplenish(final boolean logged) throws Exception {
+		final int rows = Inventory.CHUNK_LINES * 3 + 17;
+		try (InventoryWriteAheadLog log = logged ? new InventoryWriteAheadLog(dir) : null) {
+			final Inventory inventory = logged ? new Inventory(log) : this.inventory;
+			final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+			for (int p = 0; p < 10; p++) {
+				csv.append("S").append(p).append(",Sold ").append(p).append(",0.50,1.00,1000000\n");
+			}
+			inventory.replenish(new ByteArrayInputStream(csv.toString().getBytes("UTF-8")));
+			final StringBuilder feed = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+			for (int r = 0; r < rows; r++) {
+				feed.append("F").append(r).append(",Feed ").append(r).append(",0.50,1.00,10\n");
+			}
+			final CountDownLatch parked = new CountDownLatch(1);
+			final CountDownLatch paid = new CountDownLatch(1);
+			final InputStream parking = new ByteArrayInputStream(feed.toString().getBytes("UTF-8")) {
+				@Override
+				public synchronized int read(byte[] b, int off, int len) {
+					final int read = super.read(b, off, len);
+					if (read < 0 && parked.getCount() > 0) {
+						parked.countDown();
+						try {
+							paid.await(10, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					return read;
+				}
+			};
+
+			final ExecutorService service = Executors.newSingleThreadExecutor();
+			try {
+				final Future<?> replenishment = service.submit(() -> inventory.replenish(parking));
+				assertTrue(parked.await(10, TimeUnit.SECONDS), "Expected the replenishment to reach the end of its feed");
+				final CashRegister register = new CashRegister(inventory);
+				final int sales = 5;
+				for (int s = 0; s < sales; s++) {
+					register.beginTransaction();
+					register.scan("S" + s);
+					register.scan("S" + (s + 1));
+					register.pay(register.getTotal());
+				}
+				final boolean paidWhileParked = paid.getCount() > 0;
+				paid.countDown();
+				replenishment.get();
+				assertTrue(paidWhileParked, "Expected the payments not to wait for the replenishment");
+
+				assertEquals(10 + rows, inventory.list().size());
+				assertEquals(10_000_000 - 2 * sales,
+						inventory.list().stream().filter(product -> product.getUpc().startsWith("S"))
+								.mapToLong(Product::getQuantity).sum(),
+						"Expected every sale to be adjusted");
+			} finally {
+				service.shutdownNow();
+			}
+		}
+	}
+
 }
@@ -0,0 +1,173 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InventoryViewTest {
+
+	private static final String HEADER = "upc,name,wholesalePrice,retailPrice,quantity\n";
+
+	private Inventory inventory;
+
+	@BeforeEach
+	void setup() {
+		inventory = new Inventory(new Product("A123", "Apple", 0.50, 1.00, 100));
+	}
+
+	private void replenish(String lines) {
+		inventory.replenish(new ByteArrayInputStream((HEADER + lines).getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * verify that no record of a replenishment is visible until the whole
+	 * replenishment is merged, although its chunks are merged as they are parsed
+	 */
+	@Test
+	void testReplenishVisibleOnceComplete() {
+		final StringBuilder csv = new StringBuilder(HEADER);
+		final int rows = Inventory.CHUNK_LINES * 3 + 17;
+		for (int i = 0; i < rows; i++) {
+			csv.append("U").append(i).append(",Product ").append(i).append(",0.50,1.00,1\n");
+		}
+		final int[] merged = new int[1];
+		final Object[] observed = new Object[4];
+		inventory.replenish(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				final int read = super.read(b, off, len);
+				if (read < 0 && observed[0] == null) {
+					// every chunk but the last has been merged by now
+					merged[0] = inventory.list(Stock.LATEST).size();
+					observed[0] = inventory.getVersion();
+					observed[1] = inventory.list().size();
+					observed[2] = inventory.find("U0");
+					observed[3] = inventory.adjustQuantity("U0", -1);
+				}
+				return read;
+			}
+		});
+		assertTrue(merged[0] > Inventory.CHUNK_LINES, "merged=" + merged[0]);
+		assertEquals(0L, observed[0]);
+		assertEquals(1, observed[1]);
+		assertEquals(Optional.empty(), observed[2]);
+		assertEquals(Optional.empty(), observed[3], "Expected a product not to be sold before it is replenished");
+		assertEquals(1, inventory.getVersion());
+		assertEquals(rows + 1, inventory.list().size());
+		assertEquals(new Product("U0", "Product 0", 0.50, 1.00, 1), inventory.find("U0").get());
+	}
+
+	@Test
+	void testViewConsistentAcrossReplenish() {
+		try (InventoryView view = inventory.pin()) {
+			assertEquals(0, view.getVersion());
+			replenish("A123,Applesauce,0.55,1.05,5\nB234,Peach,0.35,0.75,200\n");
+			assertEquals(1, inventory.getVersion());
+			assertEquals(new Product("A123", "Apple", 0.50, 1.00, 100), view.find("A123").get());
+			assertEquals(Optional.empty(), view.find("B234"));
+			assertEquals(1, view.list().size());
+			assertEquals(1, view.stream().count());
+			assertEquals(view.list(), view.page(null, 10, product -> true));
+			assertEquals(new Product("A123", "Applesauce", 0.55, 1.05, 105), inventory.find("A123").get());
+			assertEquals(2, inventory.list().size());
+
+			// quantities are not versioned
+			inventory.adjustQuantity("A123", -10);
+			assertEquals(90, view.find("A123").get().getQuantity());
+			assertEquals(95, inventory.find("A123").get().getQuantity());
+
+			// a later view sees the replenishment
+			try (InventoryView later = inventory.pin()) {
+				assertEquals(1, later.getVersion());
+				assertEquals(inventory.list(), later.list());
+			}
+		}
+	}
+
+	@Test
+	void testClosedView() {
+		final InventoryView view = inventory.pin();
+		view.close();
+		view.close();
+		assertThrows(IllegalStateException.class, () -> view.find("A123"));
+		assertThrows(IllegalStateException.class, () -> view.list());
+		assertThrows(IllegalStateException.class, () -> view.stream());
+		assertThrows(IllegalStateException.class, () -> view.page(null, 1, product -> true));
+		assertThrows(IllegalArgumentException.class, () -> inventory.pin().page(null, -1, product -> true));
+	}
+
+	/**
+	 * verify that every report (a list or a view) sees the products of whole
+	 * replenishments only, while replenishments run concurrently: every
+	 * replenishment renames all the products to its batch and adds one to their
+	 * quantities, so all the products of a report have the same name and quantity
+	 */
+	@Test
+	void testReportsConsistentWhileReplenishing() throws InterruptedException, ExecutionException {
+		final int products = 1000;
+		final int batches = 100;
+		inventory = new Inventory();
+		replenish(batch(0, products));
+		final AtomicBoolean done = new AtomicBoolean();
+		final ExecutorService service = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> lister = service.submit(() -> {
+				while (!done.get()) {
+					assertConsistent(inventory.list(), products);
+				}
+			});
+			final Future<?> viewer = service.submit(() -> {
+				while (!done.get()) {
+					try (InventoryView view = inventory.pin()) {
+						final List<Product> list = view.list();
+						assertConsistent(list, products);
+						assertEquals(list, view.stream().collect(Collectors.toList()));
+					}
+				}
+			});
+			for (int batch = 1; batch < batches; batch++) {
+				replenish(batch(batch, products));
+			}
+			done.set(true);
+			lister.get();
+			viewer.get();
+		} finally {
+			service.shutdownNow();
+		}
+		assertEquals(batches, inventory.getVersion());
+		assertConsistent(inventory.list(), products);
+		assertEquals(batches, inventory.find("U0").get().getQuantity());
+	}
+
+	private static String batch(int batch, int products) {
+		final StringBuilder csv = new StringBuilder();
+		for (int p = 0; p < products; p++) {
+			csv.append("U").append(p).append(",Batch ").append(batch).append(",0.50,1.00,1\n");
+		}
+		return csv.toString();
+	}
+
+	private static void assertConsistent(List<Product> list, int products) {
+		assertEquals(products, list.size());
+		final Product first = list.get(0);
+		for (Product product : list) {
+			assertEquals(first.getName(), product.getName());
+			assertEquals(first.getQuantity(), product.getQuantity());
+		}
+		assertEquals("Batch " + (first.getQuantity() - 1), first.getName());
+	}
+}
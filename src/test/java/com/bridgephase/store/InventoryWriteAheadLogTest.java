@@ -0,0 +1,212 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.sorted;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InventoryWriteAheadLogTest {
+
+	private static final String CSV = "upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200\nC123,Milk,2.15,4.50,40";
+
+	@TempDir
+	Path dir;
+
+	private static void replenish(Inventory inventory, String csv) {
+		inventory.replenish(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private List<String> files() throws IOException {
+		try (Stream<Path> paths = Files.list(dir)) {
+			return paths.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	void testRecoverEmpty() throws IOException {
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			assertTrue(new Inventory(log).list().isEmpty());
+		}
+	}
+
+	@Test
+	void testRecoverReplenishAndAdjustments() throws IOException {
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory inventory = new Inventory(log);
+			replenish(inventory, CSV);
+			inventory.adjustQuantity("A123", -2);
+			inventory.adjustQuantity("P9889", -1);
+			final Map<String, Integer> deltas = new HashMap<>();
+			deltas.put("B234", -10);
+			deltas.put("C123", 5);
+			inventory.adjustQuantities(deltas);
+			replenish(inventory, "upc,name,wholesalePrice,retailPrice,quantity\nA123,Green Apple,0.55,1.10,10");
+			expected = sorted(inventory.list());
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory recovered = new Inventory(log);
+			assertEquals(expected, sorted(recovered.list()));
+			assertEquals(new Product("A123", "Green Apple", 0.55, 1.10, 108), recovered.find("A123").get());
+			assertFalse(recovered.find("P9889").isPresent());
+		}
+	}
+
+	@Test
+	void testRecoverWithoutClose() throws IOException {
+		// the log is not closed, as if the JVM had stopped
+		final InventoryWriteAheadLog crashed = new InventoryWriteAheadLog(dir);
+		final Inventory inventory = new Inventory(crashed);
+		replenish(inventory, CSV);
+		inventory.adjustQuantity("C123", -40);
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			assertEquals(sorted(inventory.list()), sorted(new Inventory(log).list()));
+		}
+	}
+
+	@Test
+	void testRecoverFromCheckpoint() throws IOException {
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory inventory = new Inventory(log);
+			replenish(inventory, CSV);
+			inventory.adjustQuantity("A123", -1);
+			log.checkpoint();
+			inventory.adjustQuantity("A123", -1);
+			inventory.adjustQuantity("B234", -1);
+			expected = sorted(inventory.list());
+		}
+		assertEquals(
+				Collections.singletonList("checkpoint-0000000000000000001"),
+				files().stream().filter(name -> name.startsWith("checkpoint-")).collect(Collectors.toList()));
+		assertFalse(files().contains("wal-0000000000000000000"), "Expected the log before the checkpoint to be deleted");
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory recovered = new Inventory(log);
+			assertEquals(expected, sorted(recovered.list()));
+			assertEquals(98, recovered.find("A123").get().getQuantity());
+		}
+	}
+
+	@Test
+	void testCheckpointTriggeredBySize() throws IOException, InterruptedException {
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir, 4096)) {
+			final Inventory inventory = new Inventory(log);
+			replenish(inventory, CSV);
+			for (int i = 0; i < 5000; i++) {
+				inventory.adjustQuantity(i % 2 == 0 ? "A123" : "B234", i % 3 - 1);
+			}
+			expected = sorted(inventory.list());
+		}
+		final List<String> files = files();
+		assertTrue(files.stream().anyMatch(name -> name.startsWith("checkpoint-")), "Expected a checkpoint: " + files);
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			assertEquals(expected, sorted(new Inventory(log).list()));
+		}
+	}
+
+	@Test
+	void testRecoverTornRecord() throws IOException {
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory inventory = new Inventory(log);
+			replenish(inventory, CSV);
+			inventory.adjustQuantity("A123", -1);
+		}
+		// simulate a crash part way through writing the adjustment
+		final Path wal = dir.resolve("wal-0000000000000000000");
+		try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory recovered = new Inventory(log);
+			assertEquals(100, recovered.find("A123").get().getQuantity());
+			recovered.adjustQuantity("A123", -5);
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			assertEquals(95, new Inventory(log).find("A123").get().getQuantity());
+		}
+	}
+
+	@Test
+	void testRecoverParallelAndPathReplenish() throws IOException {
+		final Path csv = Files.write(dir.resolve("inventory.csv"), CSV.getBytes(StandardCharsets.UTF_8));
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir.resolve("log"))) {
+			final Inventory inventory = new Inventory(log);
+			inventory.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), ForkJoinPool.commonPool());
+			inventory.replenish(csv);
+			inventory.replenish(csv, ForkJoinPool.commonPool());
+			expected = sorted(inventory.list());
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir.resolve("log"))) {
+			final Inventory recovered = new Inventory(log);
+			assertEquals(expected, sorted(recovered.list()));
+			assertEquals(300, recovered.find("A123").get().getQuantity());
+		}
+	}
+
+	@Test
+	void testRecoverTwiceOrClosed() throws IOException {
+		final InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir);
+		final Inventory inventory = new Inventory(log);
+		assertThrows(IllegalStateException.class, () -> new Inventory(log));
+		log.close();
+		assertThrows(IllegalStateException.class, () -> replenish(inventory, CSV));
+		assertThrows(NullPointerException.class, () -> new Inventory((InventoryWriteAheadLog) null));
+	}
+
+	/**
+	 * verify that an inventory recovered from a checkpoint and a log tail of sales
+	 * equals the inventory that logged them. The time to log and recover is
+	 * measured by InventoryWriteAheadLogBenchmark.
+	 */
+	@Test
+	void testRecoveryFromCheckpointAndSales() throws IOException {
+		final int products = 100;
+		final int deltas = 1000;
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir, Long.MAX_VALUE)) {
+			final Inventory inventory = new Inventory(log);
+			final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+			for (int p = 0; p < products; p++) {
+				csv.append(p).append(",Product ").append(p).append(",0.50,1.00,1000\n");
+			}
+			replenish(inventory, csv.toString());
+			log.checkpoint();
+			// a sale of 10 products at a time
+			final Map<String, Integer> sale = new HashMap<>();
+			for (int d = 0; d < deltas; d++) {
+				sale.put(Integer.toString((int) ((d * 2654435761L) % products)), -1);
+				if (sale.size() == 10 || d == deltas - 1) {
+					inventory.adjustQuantities(sale);
+					sale.clear();
+				}
+			}
+			expected = sorted(inventory.list());
+		}
+		final List<Product> recovered;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			recovered = new Inventory(log).list();
+		}
+		assertEquals(expected, sorted(recovered));
+	}
+}
@@ -0,0 +1,67 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	void testEmpty() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMeanNanos());
+		assertEquals(0, histogram.getPercentileNanos(99));
+		assertEquals(0, histogram.getMaxNanos());
+		assertThrows(IllegalArgumentException.class, () -> histogram.getPercentileNanos(100.1));
+		assertThrows(IllegalArgumentException.class, () -> histogram.getPercentileNanos(-1));
+	}
+
+	@Test
+	void testSmallLatenciesAreExact() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 0; nanos < 32; nanos++) {
+			histogram.record(nanos);
+		}
+		histogram.record(-5);
+		assertEquals(33, histogram.getCount());
+		assertEquals(0, histogram.getPercentileNanos(0));
+		assertEquals(15, histogram.getPercentileNanos(50));
+		assertEquals(31, histogram.getPercentileNanos(100));
+		assertEquals(31, histogram.getMaxNanos());
+		assertEquals(31 * 32 / 2, histogram.getTotalNanos());
+	}
+
+	/**
+	 * verify that every percentile of latencies spread over several orders of
+	 * magnitude is reported within 1/16 of the exact percentile
+	 */
+	@Test
+	void testPercentileError() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int count = 100_000;
+		final long[] latencies = new long[count];
+		for (int i = 0; i < count; i++) {
+			// 1us to about 1s, exponentially spread
+			latencies[i] = (long) (1_000 * Math.pow(1_000_000, (double) i / count));
+			histogram.record(latencies[i]);
+		}
+		for (double percentile : new double[] { 1, 25, 50, 90, 99, 99.9, 99.99 }) {
+			final long exact = latencies[(int) Math.ceil(count * percentile / 100) - 1];
+			final long reported = histogram.getPercentileNanos(percentile);
+			assertTrue(reported >= exact && reported <= exact + exact / 16,
+					"p" + percentile + ": exact=" + exact + ", reported=" + reported);
+		}
+		assertEquals(latencies[count - 1], histogram.getPercentileNanos(100));
+		assertEquals(latencies[count - 1], histogram.getMaxNanos());
+	}
+
+	@Test
+	void testLargestLatency() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(50));
+	}
+}
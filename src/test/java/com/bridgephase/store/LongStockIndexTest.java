@@ -0,0 +1,130 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class LongStockIndexTest {
+
+	private LongStockIndex index;
+
+	@BeforeEach
+	void setup() {
+		index = new LongStockIndex();
+	}
+
+	private static Product product(String upc, int quantity) {
+		return new Product(upc, "Product " + upc, 0.50, 1.00, quantity);
+	}
+
+	private boolean merge(Product product) {
+		return index.merge(product, Replenishment.INITIAL, 0);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "0", "9", "012345678905", "0123456789012", "00123456789012", "999999999999999" })
+	void testEncodeNumeric(String upc) {
+		assertNotEquals(0, LongStockIndex.encode(upc));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "", "A123", "12a4", "-123", "+123", " 123", "1234567890123456", "\uff11\uff12" })
+	void testEncodeNotNumeric(String upc) {
+		assertEquals(0, LongStockIndex.encode(upc));
+	}
+
+	@Test
+	void testEncodeLeadingZeros() {
+		final Set<Long> keys = new HashSet<>();
+		for (String upc : new String[] { "1", "01", "001", "0001", "0", "00", "000" }) {
+			assertEquals(true, keys.add(LongStockIndex.encode(upc)), upc);
+		}
+	}
+
+	@Test
+	void testMergeAndGet() {
+		assertEquals(true, merge(product("012345678905", 10)));
+		assertEquals(true, merge(product("A123", 1)));
+		assertEquals(true, merge(product("12345678905", 5)));
+		assertEquals(false, merge(product("012345678905", 3)));
+		assertEquals(false, merge(product("A123", 0)));
+		assertEquals(13, index.get("012345678905").getQuantity(Stock.LATEST));
+		assertEquals(5, index.get("12345678905").getQuantity(Stock.LATEST));
+		assertEquals(1, index.get("A123").getQuantity(Stock.LATEST));
+		assertNull(index.get("0012345678905"));
+		assertNull(index.get("B234"));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	void testResize() {
+		final int products = 100_000;
+		for (int p = 0; p < products; p++) {
+			merge(product(Long.toString(400_000_000_000L + p * 7919L), p));
+		}
+		merge(product("A123", 1));
+		assertEquals(products + 1, index.size());
+		for (int p = 0; p < products; p++) {
+			assertEquals(p, index.get(Long.toString(400_000_000_000L + p * 7919L)).getQuantity(Stock.LATEST));
+		}
+		final int[] count = { 0 };
+		index.forEach(stock -> count[0]++);
+		assertEquals(products + 1, count[0]);
+		assertEquals(products + 1, index.stream().count());
+		assertEquals(products * (products - 1L) / 2 + 1, index.stream()
+				.mapToLong(stock -> stock.getQuantity(Stock.LATEST)).sum());
+	}
+
+	/**
+	 * verify that readers always find the products merged before they started
+	 * while the writer keeps adding products and resizing the table
+	 */
+	@Test
+	void testReadWhileMerging() throws InterruptedException, ExecutionException {
+		final int products = 200_000;
+		final int readers = 4;
+		merge(product("1", 0));
+		final Stock first = index.get("1");
+		final AtomicBoolean done = new AtomicBoolean();
+		final ExecutorService service = Executors.newFixedThreadPool(readers);
+		try {
+			final Future<?>[] futures = new Future<?>[readers];
+			for (int r = 0; r < readers; r++) {
+				futures[r] = service.submit(() -> {
+					while (!done.get()) {
+						assertSame(first, index.get("1"));
+						final int size = index.size();
+						// the products are merged in order, so all before the size are present
+						for (int p = Math.max(2, size - 100); p < size; p++) {
+							assertNotNull(index.get(Integer.toString(p)), Integer.toString(p));
+						}
+					}
+				});
+			}
+			for (int p = 2; p <= products; p++) {
+				merge(product(Integer.toString(p), p));
+			}
+			done.set(true);
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			service.shutdown();
+		}
+	}
+}
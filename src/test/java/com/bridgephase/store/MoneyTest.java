@@ -0,0 +1,139 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Property tests that compare the {@link Money} minor unit arithmetic of
+ * products, line items and transactions with the {@link BigDecimal}
+ * arithmetic they replaced. {@link BigDecimal#equals(Object)} compares scale
+ * too, so the results must be identical, not just numerically equal, except
+ * where a line item now rounds its price to the currency scale.
+ */
+class MoneyTest {
+
+	/**
+	 * The previous representation of a price: the amount scaled to the currency
+	 * scale
+	 */
+	private static BigDecimal scaled(BigDecimal amount) {
+		return amount.setScale(Money.SCALE, RoundingMode.HALF_UP);
+	}
+
+	private static BigDecimal randomAmount(Random random) {
+		return BigDecimal.valueOf(random.nextLong() % 1_000_000_000_000L, random.nextInt(7));
+	}
+
+	@RepeatedTest(10)
+	void testRoundTripSameAsSetScale(RepetitionInfo repetition) {
+		final Random random = new Random(repetition.getCurrentRepetition());
+		for (int i = 0; i < 10_000; i++) {
+			final BigDecimal amount = randomAmount(random);
+			assertEquals(scaled(amount), Money.toBigDecimal(Money.of(amount)), amount.toPlainString());
+		}
+	}
+
+	@RepeatedTest(10)
+	void testProductPricesSameAsBigDecimal(RepetitionInfo repetition) {
+		final Random random = new Random(repetition.getCurrentRepetition());
+		for (int i = 0; i < 10_000; i++) {
+			final BigDecimal wholesale = randomAmount(random);
+			final BigDecimal retail = randomAmount(random);
+			final Product product = new Product("A123", "Apple", wholesale, retail, 1);
+			assertEquals(scaled(wholesale), product.getWholesalePrice());
+			assertEquals(scaled(retail), product.getRetailPrice());
+
+			final double wholesaleDouble = random.nextInt(100_000) / 1000.0;
+			final double retailDouble = random.nextDouble() * 100;
+			final Product fromDoubles = new Product("A123", "Apple", wholesaleDouble, retailDouble, 1);
+			assertEquals(scaled(new BigDecimal(wholesaleDouble)), fromDoubles.getWholesalePrice());
+			assertEquals(scaled(new BigDecimal(retailDouble)), fromDoubles.getRetailPrice());
+		}
+	}
+
+	/**
+	 * Compares line items with the unscaled {@link BigDecimal} arithmetic of the
+	 * line item they replaced, which kept the price as given: prices of at most
+	 * the currency scale give numerically equal results (of the currency scale),
+	 * prices of more decimals are rounded HALF_UP to the currency scale first.
+	 */
+	@RepeatedTest(10)
+	void testExtendedPriceSameAsBigDecimal(RepetitionInfo repetition) {
+		final Random random = new Random(repetition.getCurrentRepetition());
+		for (int i = 0; i < 10_000; i++) {
+			final BigDecimal price = randomAmount(random);
+			final int quantity = random.nextInt(2000) - 1000;
+			final TransactionLineItem lineItem = new TransactionLineItem("a", price, quantity);
+			// the previous line item arithmetic
+			final BigDecimal extended = price.multiply(BigDecimal.valueOf(quantity));
+			if (price.scale() <= Money.SCALE) {
+				assertEquals(0, price.compareTo(lineItem.getPrice()), price.toPlainString());
+				assertEquals(0, extended.compareTo(lineItem.extendedPrice()), price.toPlainString());
+				assertEquals(extended.setScale(Money.SCALE), lineItem.extendedPrice());
+			} else {
+				final BigDecimal rounded = price.setScale(Money.SCALE, RoundingMode.HALF_UP);
+				assertEquals(rounded, lineItem.getPrice());
+				assertEquals(rounded.multiply(BigDecimal.valueOf(quantity)), lineItem.extendedPrice());
+			}
+			assertEquals(Money.SCALE, lineItem.extendedPrice().scale());
+		}
+	}
+
+	@Test
+	void testLineItemPriceRounding() {
+		// a price of one more decimal than the currency ends in 5, e.g. 0.125
+		final BigDecimal price = BigDecimal.valueOf(125, Money.SCALE + 1);
+		final TransactionLineItem lineItem = new TransactionLineItem("a", price, 3);
+		// the previous line item kept the price and extended it to e.g. 0.375
+		assertEquals(BigDecimal.valueOf(375, Money.SCALE + 1), price.multiply(BigDecimal.valueOf(3)));
+		assertEquals(BigDecimal.valueOf(13, Money.SCALE), lineItem.getPrice());
+		assertEquals(BigDecimal.valueOf(39, Money.SCALE), lineItem.extendedPrice());
+		final TransactionLineItem negative = new TransactionLineItem("a", price.negate(), 3);
+		assertEquals(BigDecimal.valueOf(-13, Money.SCALE), negative.getPrice());
+		assertEquals(BigDecimal.valueOf(-39, Money.SCALE), negative.extendedPrice());
+		// a price of fewer decimals only gains the currency scale
+		final TransactionLineItem whole = new TransactionLineItem("a", BigDecimal.valueOf(5), 3);
+		assertEquals(BigDecimal.valueOf(5).setScale(Money.SCALE), whole.getPrice());
+		assertEquals(BigDecimal.valueOf(15).setScale(Money.SCALE), whole.extendedPrice());
+	}
+
+	@RepeatedTest(10)
+	void testTransactionTotalSameAsBigDecimal(RepetitionInfo repetition) {
+		final Random random = new Random(repetition.getCurrentRepetition());
+		for (int t = 0; t < 200; t++) {
+			final Transaction transaction = new Transaction();
+			final List<BigDecimal> extendedPrices = new ArrayList<>();
+			final int products = random.nextInt(50);
+			for (int p = 0; p < products; p++) {
+				final BigDecimal retail = BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(4));
+				final int quantity = 1 + random.nextInt(10);
+				transaction.add(new Product("U" + p, "Product " + p, retail, retail, 100), quantity);
+				extendedPrices.add(scaled(retail).multiply(BigDecimal.valueOf(quantity)));
+			}
+			final BigDecimal expectedTotal = extendedPrices.stream().reduce((ep1, ep2) -> ep1.add(ep2))
+					.orElse(BigDecimal.valueOf(0, 2));
+			assertEquals(expectedTotal, transaction.getTotal());
+
+			final BigDecimal paid = expectedTotal.add(BigDecimal.valueOf(random.nextInt(10_000), random.nextInt(3)));
+			assertEquals(paid.subtract(expectedTotal), transaction.pay(paid));
+			assertEquals(expectedTotal, transaction.getTotal());
+		}
+	}
+
+	@Test
+	void testOverflow() {
+		assertThrows(ArithmeticException.class, () -> Money.of(BigDecimal.valueOf(Long.MAX_VALUE)));
+		assertThrows(ArithmeticException.class, () -> Money.multiply(Long.MAX_VALUE / 2, 3));
+		assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+	}
+}
@@ -0,0 +1,203 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.csv;
+import static com.bridgephase.store.TestUtils.sorted;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bridgephase.store.Inventory.ProductParser.ProductParseException;
+import com.bridgephase.store.interfaces.IInventory;
+import com.google.common.collect.ImmutableMap;
+
+class OffHeapInventoryTest {
+
+	private static final String CSV = "upc,name,wholesalePrice,retailPrice,quantity\n"
+			+ "A123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200\nC123,Milk,2.15,4.50,40\n\nB234,Peach,0.35,0.80,5";
+
+	@TempDir
+	Path dir;
+
+	private OffHeapInventory inventory;
+
+	@BeforeEach
+	void setup() {
+		inventory = new OffHeapInventory();
+		inventory.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void testSameAsInventory() {
+		final Inventory expected = new Inventory();
+		expected.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(sorted(expected.list()), sorted(inventory.list()));
+		assertEquals(3, inventory.size());
+		assertEquals(new Product("B234", "Peach", 0.35, 0.80, 205), inventory.find("B234").get());
+		assertFalse(inventory.find("P9889").isPresent());
+		assertFalse(inventory.find("A12").isPresent());
+		assertFalse(inventory.find("").isPresent());
+	}
+
+	@Test
+	void testStreamAndPage() {
+		final OffHeapInventory large = new OffHeapInventory();
+		large.replenish(new ByteArrayInputStream(csv(0, 5000).getBytes(StandardCharsets.UTF_8)));
+		final Inventory expected = new Inventory();
+		expected.replenish(new ByteArrayInputStream(csv(0, 5000).getBytes(StandardCharsets.UTF_8)));
+		assertEquals(sorted(expected.list()), sorted(large.stream().collect(Collectors.toList())));
+		final List<Product> each = new ArrayList<>();
+		large.forEach(each::add);
+		assertEquals(sorted(expected.list()), sorted(each));
+		assertEquals(expected.page(null, 100), large.page(null, 100));
+		assertEquals(expected.page("100000000999", 100), large.page("100000000999", 100));
+		assertEquals(expected.page(null, 100, product -> product.getQuantity() > 990),
+				large.page(null, 100, product -> product.getQuantity() > 990));
+	}
+
+	@Test
+	void testPageAfterReplenish() {
+		final OffHeapInventory large = new OffHeapInventory();
+		large.replenish(new ByteArrayInputStream(csv(2500, 5000).getBytes(StandardCharsets.UTF_8)));
+		final Inventory expected = new Inventory();
+		expected.replenish(new ByteArrayInputStream(csv(2500, 5000).getBytes(StandardCharsets.UTF_8)));
+		assertEquals(expected.page(null, 100), large.page(null, 100));
+		// the products added since the first page sort before, between and after it
+		for (final IInventory each : new IInventory[] { large, expected }) {
+			each.replenish(new ByteArrayInputStream(csv(0, 2500).getBytes(StandardCharsets.UTF_8)));
+			each.replenish(new ByteArrayInputStream(("upc,name,wholesalePrice,retailPrice,quantity\n"
+					+ "100000003000X,Bread,1.00,2.50,10\nZ123,Eggs,1.00,2.50,10").getBytes(StandardCharsets.UTF_8)));
+		}
+		assertEquals(expected.page(null, 100), large.page(null, 100));
+		assertEquals(expected.page("100000002999", 100), large.page("100000002999", 100));
+		assertEquals(expected.page("100000004999", 100), large.page("100000004999", 100));
+		assertEquals(expected.page("100000001999X", 100), large.page("100000001999X", 100));
+		assertEquals(expected.page(null, 100, product -> product.getQuantity() > 990),
+				large.page(null, 100, product -> product.getQuantity() > 990));
+		assertEquals(Collections.emptyList(), large.page("Z123", 100));
+		assertEquals(Collections.emptyList(), large.page(null, 0));
+		assertThrows(IllegalArgumentException.class, () -> large.page(null, -1));
+		assertThrows(NullPointerException.class, () -> large.page(null, 1, null));
+	}
+
+	@Test
+	void testNonAsciiUpc() {
+		final Product product = new Product("\u00c9123", "Cr\u00e8me br\u00fbl\u00e9e", 2.15, 4.50, 7);
+		final OffHeapInventory nonAscii = new OffHeapInventory(product, new Product("A123", "Apple", 0.50, 1.00, 1));
+		assertEquals(product, nonAscii.find("\u00c9123").get());
+		assertEquals(product, nonAscii.list().get(0));
+		assertFalse(nonAscii.find("\u00c91234").isPresent());
+		assertFalse(nonAscii.find("\u00c912").isPresent());
+		assertFalse(nonAscii.find("E123").isPresent());
+		assertFalse(nonAscii.find("\u00c123").isPresent());
+		assertTrue(nonAscii.find("A123").isPresent());
+	}
+
+	@Test
+	void testAdjustQuantity() {
+		assertEquals(39, inventory.adjustQuantity("C123", -1).get().getQuantity());
+		assertEquals(new Product("A123", "Apple", 0.50, 1.00, 101), inventory.adjustQuantity("A123", 1).get());
+		assertFalse(inventory.adjustQuantity("P9889", -1).isPresent());
+		inventory.adjustQuantities(ImmutableMap.of("A123", -2, "C123", -39, "P9889", -1));
+		assertEquals(99, inventory.find("A123").get().getQuantity());
+		assertEquals(0, inventory.find("C123").get().getQuantity());
+		assertThrows(NullPointerException.class, () -> inventory.adjustQuantity(null, 1));
+		assertThrows(NullPointerException.class, () -> inventory.adjustQuantity("A123", null));
+		assertThrows(NullPointerException.class, () -> inventory.adjustQuantities(null));
+	}
+
+	@Test
+	void testReplenishFailureKeepsMergedProducts() {
+		assertThrows(ProductParseException.class, () -> inventory.replenish(new ByteArrayInputStream(
+				"upc,name,wholesalePrice,retailPrice,quantity\nD123,Bread,1.00,2.50,10\nE123,Eggs,x,2.50,10"
+						.getBytes(StandardCharsets.UTF_8))));
+		assertEquals(10, inventory.find("D123").get().getQuantity());
+		assertFalse(inventory.find("E123").isPresent());
+		assertThrows(NullPointerException.class, () -> inventory.replenish((java.io.InputStream) null));
+	}
+
+	@Test
+	void testManySegmentsAndChunks() {
+		// segments of about 6000 records and chunks of 16 ordinals
+		final OffHeapInventory small = new OffHeapInventory(1 << 18, 4);
+		final int products = 10_000;
+		small.replenish(new ByteArrayInputStream(csv(0, products).getBytes(StandardCharsets.UTF_8)));
+		// replenish the first half again, which moves their details to new records
+		small.replenish(new ByteArrayInputStream(csv(0, products / 2).getBytes(StandardCharsets.UTF_8)));
+		final Inventory expected = new Inventory();
+		expected.replenish(new ByteArrayInputStream(csv(0, products).getBytes(StandardCharsets.UTF_8)));
+		expected.replenish(new ByteArrayInputStream(csv(0, products / 2).getBytes(StandardCharsets.UTF_8)));
+		assertEquals(sorted(expected.list()), sorted(small.list()));
+		for (int p = 0; p < products; p++) {
+			final String upc = Long.toString(100_000_000_000L + p);
+			assertEquals(expected.find(upc), small.find(upc));
+		}
+		assertThrows(IllegalArgumentException.class, () -> new OffHeapInventory(1 << 17, 4));
+	}
+
+	@Test
+	void testFindDuringReplenish() throws InterruptedException {
+		final OffHeapInventory concurrent = new OffHeapInventory(1 << 18, 4);
+		final int products = 50_000;
+		final AtomicBoolean done = new AtomicBoolean();
+		final List<Throwable> failures = new ArrayList<>();
+		final Thread reader = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					// every product that is found (and listed) is complete
+					final int size = concurrent.size();
+					for (int p = Math.max(0, size - 100); p < size; p++) {
+						final Product product = concurrent.find(Long.toString(100_000_000_000L + p)).get();
+						assertEquals("Product " + p, product.getName());
+						assertEquals(p % 1000, product.getQuantity());
+					}
+					for (Product product : concurrent.list()) {
+						assertEquals("Product " + (Long.parseLong(product.getUpc()) - 100_000_000_000L),
+								product.getName());
+					}
+				}
+			} catch (Throwable t) {
+				failures.add(t);
+			}
+		});
+		reader.start();
+		concurrent.replenish(new ByteArrayInputStream(csv(0, products).getBytes(StandardCharsets.UTF_8)));
+		done.set(true);
+		reader.join();
+		assertEquals(new ArrayList<>(), failures);
+		assertEquals(products, concurrent.list().size());
+	}
+
+	/**
+	 * verify that an inventory replenished from a file equals one replenished by
+	 * {@link Inventory}; the memory footprint of both is reported by the
+	 * simulator's InventoryFootprint
+	 */
+	@Test
+	void testReplenishFromFile() throws IOException {
+		final int products = 1000;
+		final Path csv = Files.write(dir.resolve("inventory.csv"), csv(0, products).getBytes(StandardCharsets.UTF_8));
+		final OffHeapInventory fromFile = new OffHeapInventory();
+		fromFile.replenish(csv);
+		final Inventory expected = new Inventory();
+		expected.replenish(csv);
+		assertEquals(products, fromFile.size());
+		assertEquals(sorted(expected.list()), sorted(fromFile.list()));
+		assertEquals(expected.find("100000000999"), fromFile.find("100000000999"));
+	}
+}
@@ -0,0 +1,91 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.sorted;
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PrimitiveKeyedInventoryTest {
+
+	private static final String CSV = "upc,name,wholesalePrice,retailPrice,quantity\n"
+			+ "A123,Apple,0.50,1.00,100\n012345678905,Peach,0.35,0.75,200\n4006381333931,Milk,2.15,4.50,40\n"
+			+ "12345678905,Bread,1.00,2.50,10\n012345678905,Peach,0.35,0.80,5";
+
+	private PrimitiveKeyedInventory inventory;
+
+	@BeforeEach
+	void setup() {
+		inventory = new PrimitiveKeyedInventory();
+		inventory.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void testSameAsInventory() {
+		final Inventory expected = new Inventory();
+		expected.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(sorted(expected.list()), sorted(inventory.list()));
+		assertEquals(new Product("012345678905", "Peach", 0.35, 0.80, 205), inventory.find("012345678905").get());
+		assertEquals(100, inventory.find("A123").get().getQuantity());
+		assertFalse(inventory.find("0012345678905").isPresent());
+		assertFalse(inventory.find("P9889").isPresent());
+	}
+
+	@Test
+	void testAdjustQuantity() {
+		assertEquals(39, inventory.adjustQuantity("4006381333931", -1).get().getQuantity());
+		assertEquals(99, inventory.adjustQuantity("A123", -1).get().getQuantity());
+		assertFalse(inventory.adjustQuantity("4006381333932", -1).isPresent());
+	}
+
+	@Test
+	void testRecoverFromLog(@TempDir Path dir) throws IOException {
+		final List<Product> expected;
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final PrimitiveKeyedInventory logged = new PrimitiveKeyedInventory(log);
+			logged.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+			logged.adjustQuantity("4006381333931", -4);
+			expected = sorted(logged.list());
+		}
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			assertEquals(expected, sorted(new PrimitiveKeyedInventory(log).list()));
+		}
+	}
+
+	@Test
+	void testFindNumericUpcDoesNotAllocate() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean,
+				"Thread allocation counting is not supported by this JVM");
+		final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled(),
+				"Thread allocation counting is not enabled in this JVM");
+		final int lookups = 100_000;
+		// warm up so that the measured lookups are compiled
+		for (int i = 0; i < lookups; i++) {
+			inventory.find("4006381333931");
+		}
+		final long threadId = Thread.currentThread().getId();
+		final long before = allocations.getThreadAllocatedBytes(threadId);
+		boolean found = true;
+		for (int i = 0; i < lookups; i++) {
+			found &= inventory.find("4006381333931").isPresent();
+		}
+		final long bytesPerLookup = (allocations.getThreadAllocatedBytes(threadId) - before) / lookups;
+		assertTrue(found);
+		assertTrue(bytesPerLookup < 1, format("Expected no allocation per lookup but got %d bytes", bytesPerLookup));
+	}
+}
@@ -2,6 +2,12 @@ package com.bridgephase.store;
 
 import static java.lang.String.format;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,7 +29,7 @@ class ProductParserTest {
 
   @Test
   void testParseNull() {
-    assertThrows(NullPointerException.class, () -> parser.parse(0, null));
+    assertThrows(NullPointerException.class, () -> parser.parse(0, (String) null));
   }
 
   @Test
@@ -102,4 +108,64 @@ class ProductParserTest {
     assertThrows(ProductParseException.class, () -> parser.parse(0, line));
   }
 
+  @ParameterizedTest()
+  @ValueSource(strings = { "0", "1", "-1", "+1", ".5", "5.", "-0.00", "0.005", "0.004", "-0.005", "1.23456789",
+      "12345678901234.5678", "1234567890123456.78", "12345678901234567.5", "1e2", "1.5E-3", "0.995", "99.999" })
+  void testParsePriceSameAsBigDecimal(String price) {
+    final Product expected = new Product("A123", "Apple", new BigDecimal(price), new BigDecimal(price), 1);
+    assertEquals(expected, parser.parse(0, format("A123, Apple ,%s, %s ,1", price, price)));
+  }
+
+  @Test
+  void testParseRandomPricesSameAsBigDecimal() {
+    final Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      final String price = BigDecimal.valueOf(random.nextLong() % 100_000_000, random.nextInt(8)).toPlainString();
+      final int quantity = random.nextInt();
+      final Product expected = new Product("A123", "Apple", new BigDecimal(price), new BigDecimal(price), quantity);
+      assertEquals(expected, parser.parse(i, format("A123,Apple,%s,%s,%d", price, price, quantity)));
+    }
+  }
+
+  @ParameterizedTest()
+  @ValueSource(strings = { "2147483647", "-2147483648", "+7", "007" })
+  void testParseQuantitySameAsInteger(String quantity) {
+    assertEquals(Integer.valueOf(quantity), parser.parse(0, "A123,Apple,0.50,1.00," + quantity).getQuantity());
+  }
+
+  @ParameterizedTest()
+  @ValueSource(strings = { "2147483648", "-", "", "1.0" })
+  void testParseQuantityFormatError(String quantity) {
+    final ProductParseException expected = assertThrows(ProductParseException.class,
+      () -> parser.parse(7, "A123,Apple,0.50,1.00," + quantity));
+    assertEquals(format("Error parsing Integer from field #5 (quantity): lineNumber=7, fieldValue=%s", quantity),
+      expected.getMessage());
+  }
+
+  /**
+   * verify that parsing a data line allocates little more than the parsed
+   * product itself (the product, its upc and name strings and its prices)
+   */
+  @Test
+  void testParseAllocation() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean,
+      "Thread allocation counting is not supported by this JVM");
+    final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled(),
+      "Thread allocation counting is not enabled in this JVM");
+    final String line = "123456789012, Apple ,0.50,1.00,100";
+    final int lines = 20_000;
+    for (int i = 0; i < lines; i++) {
+      parser.parse(i, line);
+    }
+    final long threadId = Thread.currentThread().getId();
+    final long before = allocations.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < lines; i++) {
+      parser.parse(i, line);
+    }
+    final long bytesPerLine = (allocations.getThreadAllocatedBytes(threadId) - before) / lines;
+    assertTrue(bytesPerLine <= 256, format("Expected at most 256 bytes allocated per line but got %d", bytesPerLine));
+  }
+
 }
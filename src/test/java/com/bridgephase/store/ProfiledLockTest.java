@@ -0,0 +1,121 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.bridgephase.store.ProfiledLock.Operation;
+import com.bridgephase.store.ProfiledLock.Stall;
+
+class ProfiledLockTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void testNotProfiled() {
+		final ProfiledLock lock = new ProfiledLock("test");
+		lock.lock(Operation.MERGE);
+		lock.unlock();
+		assertEquals(0, lock.getWaitLatency(Operation.MERGE).getCount());
+		assertEquals(0, lock.getHoldLatency(Operation.MERGE).getCount());
+		assertEquals("", lock.toText());
+	}
+
+	@Test
+	void testReentrantAcquisitionIsMeasuredOnce() {
+		final ProfiledLock lock = new ProfiledLock("test");
+		lock.setProfiling(true);
+		lock.lock(Operation.REPLENISH);
+		lock.lock(Operation.MERGE);
+		assertTrue(lock.isHeldByCurrentThread());
+		lock.unlock();
+		lock.unlock();
+		assertEquals(1, lock.getWaitLatency(Operation.REPLENISH).getCount());
+		assertEquals(1, lock.getHoldLatency(Operation.REPLENISH).getCount());
+		assertEquals(0, lock.getHoldLatency(Operation.MERGE).getCount());
+		assertTrue(lock.toText().startsWith("test REPLENISH count=1 wait p50=0.0us"), lock.toText());
+	}
+
+	/**
+	 * verify that an adjustment that waits for a replenishment holding the lock is
+	 * reported as a stall blocked by the replenishment: the replenishment holds
+	 * the lock until the adjustment is queued for it
+	 */
+	@Test
+	void testStall() throws InterruptedException {
+		final ProfiledLock lock = new ProfiledLock("test");
+		lock.setProfiling(true);
+		lock.lock(Operation.REPLENISH);
+		final Thread adjust;
+		try {
+			adjust = new Thread(() -> {
+				lock.lock(Operation.ADJUST_QUANTITY);
+				lock.unlock();
+			});
+			adjust.start();
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (!lock.hasQueuedThreads() && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertTrue(lock.hasQueuedThreads(), "Expected the adjustment to wait for the lock");
+		} finally {
+			lock.unlock();
+		}
+		adjust.join();
+		final List<Stall> stalls = lock.getWorstStalls();
+		assertEquals(1, stalls.size());
+		assertEquals(Operation.ADJUST_QUANTITY, stalls.get(0).getOperation());
+		assertEquals(Operation.REPLENISH, stalls.get(0).getBlocker());
+		assertTrue(stalls.get(0).getWaitNanos() > 0, stalls.toString());
+		assertEquals(stalls.get(0).getWaitNanos(), lock.getWaitLatency(Operation.ADJUST_QUANTITY).getMaxNanos());
+		assertEquals(1, lock.getHoldLatency(Operation.REPLENISH).getCount());
+		assertEquals(1, lock.getHoldLatency(Operation.ADJUST_QUANTITY).getCount());
+		assertTrue(lock.toText().contains("test stall ADJUST_QUANTITY waited "), lock.toText());
+	}
+
+	@Test
+	void testWorstStalls() {
+		final ProfiledLock lock = new ProfiledLock("test");
+		for (long wait = 1; wait <= 3 * ProfiledLock.WORST_STALLS; wait++) {
+			lock.stalled(Operation.MERGE, Operation.REPLENISH, wait % 2 == 0 ? wait : 100 - wait);
+		}
+		final List<Stall> stalls = lock.getWorstStalls();
+		assertEquals(ProfiledLock.WORST_STALLS, stalls.size());
+		for (int i = 0; i < stalls.size(); i++) {
+			// 99, 97, ..., 81
+			assertEquals(99 - 2 * i, stalls.get(i).getWaitNanos());
+		}
+	}
+
+	@Test
+	void testInventoryLocks() throws IOException {
+		try (InventoryWriteAheadLog log = new InventoryWriteAheadLog(dir)) {
+			final Inventory inventory = new Inventory(log);
+			inventory.setLockProfiling(true);
+			inventory.replenish(new ByteArrayInputStream(
+					"upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200"
+							.getBytes(StandardCharsets.UTF_8)));
+			inventory.adjustQuantity("A123", -1);
+			final List<ProfiledLock> locks = inventory.getLocks();
+			assertEquals(2, locks.size());
+			assertEquals(1, locks.get(0).getHoldLatency(Operation.REPLENISH).getCount());
+			assertEquals(2, locks.get(1).getHoldLatency(Operation.MERGE).getCount());
+			assertEquals(1, locks.get(1).getHoldLatency(Operation.WRITE_LOG).getCount());
+			assertEquals(1, locks.get(1).getHoldLatency(Operation.ADJUST_QUANTITY).getCount());
+			inventory.setLockProfiling(false);
+			inventory.adjustQuantity("A123", -1);
+			assertEquals(1, locks.get(1).getHoldLatency(Operation.ADJUST_QUANTITY).getCount());
+		}
+		assertEquals(1, new Inventory().getLocks().size());
+	}
+}
@@ -0,0 +1,190 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.inventory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RegisterPoolTest {
+
+	private static final Duration HOLD = Duration.ofMinutes(5);
+
+	@Test
+	void testLanesAreExclusive() throws InterruptedException {
+		try (RegisterPool pool = new RegisterPool(inventory(1, 10), null, 2, HOLD)) {
+			assertEquals(2, pool.getLanes());
+			final RegisterPool.Lane first = pool.acquire();
+			final RegisterPool.Lane second = pool.acquire();
+			assertNotSame(first.getRegister(), second.getRegister());
+			assertEquals(0, pool.getIdleLanes());
+			assertFalse(pool.acquire(10, TimeUnit.MILLISECONDS).isPresent());
+			first.close();
+			first.close();
+			assertThrows(IllegalStateException.class, () -> first.getRegister());
+			final Optional<RegisterPool.Lane> again = pool.acquire(10, TimeUnit.MILLISECONDS);
+			assertEquals(first.getNumber(), again.get().getNumber());
+			assertEquals(0, pool.getIdleLanes());
+		}
+	}
+
+	@Test
+	void testUnpaidTransactionIsCancelled() throws InterruptedException {
+		final Inventory inventory = inventory(1, 10);
+		try (RegisterPool pool = new RegisterPool(inventory, null, 1, HOLD)) {
+			try (RegisterPool.Lane lane = pool.acquire()) {
+				lane.getRegister().beginTransaction();
+				assertTrue(lane.getRegister().scan("U0"));
+				assertEquals(1, pool.getReservations().getReserved("U0"));
+			}
+			assertEquals(0, pool.getReservations().getReserved("U0"));
+			try (RegisterPool.Lane lane = pool.acquire()) {
+				lane.getRegister().beginTransaction();
+				assertTrue(lane.getRegister().scan("U0"));
+				lane.getRegister().pay(BigDecimal.ONE);
+			}
+			assertEquals(9, inventory.find("U0").get().getQuantity());
+		}
+		assertThrows(IllegalArgumentException.class, () -> new RegisterPool(inventory, null, 0, HOLD));
+	}
+
+	/**
+	 * verify that closing a lane again, after another thread acquired the lane,
+	 * neither cancels the sale of that thread nor returns the lane to the pool
+	 */
+	@Test
+	void testCloseAfterLaneReacquired() throws Exception {
+		try (RegisterPool pool = new RegisterPool(inventory(1, 10), null, 1, HOLD)) {
+			final RegisterPool.Lane first = pool.acquire();
+			first.close();
+			final ExecutorService service = Executors.newSingleThreadExecutor();
+			try {
+				final RegisterPool.Lane second = service.submit(() -> {
+					final RegisterPool.Lane lane = pool.acquire();
+					lane.getRegister().beginTransaction();
+					assertTrue(lane.getRegister().scan("U0"));
+					return lane;
+				}).get();
+				assertEquals(first.getNumber(), second.getNumber());
+				first.close();
+				assertThrows(IllegalStateException.class, () -> first.getRegister());
+				assertEquals(0, pool.getIdleLanes());
+				assertEquals(1, pool.getReservations().getReserved("U0"));
+				assertEquals(BigDecimal.ONE.setScale(2), second.getRegister().getTotal());
+				second.close();
+				assertEquals(1, pool.getIdleLanes());
+				assertEquals(0, pool.getReservations().getReserved("U0"));
+			} finally {
+				service.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * verify that lanes selling the same product concurrently never sell more than
+	 * is in stock when they only sell what they could reserve
+	 */
+	@Test
+	void testNoOversell() throws Exception {
+		final int lanes = 8;
+		final int quantity = 100;
+		final Inventory inventory = inventory(1, quantity);
+		final AtomicInteger sold = new AtomicInteger();
+		try (RegisterPool pool = new RegisterPool(inventory, null, lanes, HOLD)) {
+			final ExecutorService service = Executors.newFixedThreadPool(lanes);
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for (int l = 0; l < lanes; l++) {
+					futures.add(service.submit(() -> {
+						for (boolean inStock = true; inStock;) {
+							try (RegisterPool.Lane lane = pool.acquire()) {
+								final CashRegister register = lane.getRegister();
+								register.beginTransaction();
+								inStock = register.scan("U0");
+								if (inStock) {
+									register.pay(BigDecimal.ONE);
+									sold.incrementAndGet();
+								}
+							}
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				service.shutdown();
+			}
+		}
+		assertEquals(quantity, sold.get());
+		assertEquals(0, inventory.find("U0").get().getQuantity());
+	}
+
+	/**
+	 * Drive all lanes concurrently, each serving customers that scan 1 to 10
+	 * products (some twice) and pay, and verify that every scanned unit is sold
+	 * and every reservation released. The throughput and latency of the lanes are
+	 * measured by the register simulator, e.g.
+	 * <code>gradle simulate -PsimulatorArgs="lanes=8"</code>.
+	 */
+	@Test
+	void testConcurrentSales() throws Exception {
+		final int lanes = 4;
+		final int sales = 200;
+		final int products = 100;
+		final int quantity = 1000;
+		final Inventory inventory = inventory(products, quantity);
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger scanned = new AtomicInteger();
+		try (RegisterPool pool = new RegisterPool(inventory, null, lanes, HOLD)) {
+			final ExecutorService service = Executors.newFixedThreadPool(lanes);
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for (int l = 0; l < lanes; l++) {
+					futures.add(service.submit(() -> {
+						final ThreadLocalRandom random = ThreadLocalRandom.current();
+						while (next.getAndIncrement() < sales) {
+							try (RegisterPool.Lane lane = pool.acquire()) {
+								final CashRegister register = lane.getRegister();
+								register.beginTransaction();
+								for (int items = 1 + random.nextInt(10); items > 0; items--) {
+									assertTrue(register.scan("U" + random.nextInt(products)));
+									scanned.incrementAndGet();
+								}
+								register.pay(register.getTotal());
+							}
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				service.shutdown();
+			}
+			assertEquals(lanes, pool.getIdleLanes());
+			for (int p = 0; p < products; p++) {
+				assertEquals(0, pool.getReservations().getReserved("U" + p));
+			}
+		}
+		assertEquals((long) products * quantity - scanned.get(),
+				inventory.list().stream().mapToLong(Product::getQuantity).sum());
+	}
+}
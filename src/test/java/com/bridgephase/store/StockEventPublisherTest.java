@@ -0,0 +1,137 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.inventory;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class StockEventPublisherTest {
+
+	@Test
+	void testOutOfStockAndLowStock() {
+		final List<StockEvent> events = Collections.synchronizedList(new ArrayList<>());
+		final Inventory inventory = inventory(2, 12);
+		try (StockEventPublisher publisher = new StockEventPublisher(16, 0, events::add)) {
+			publisher.setThreshold("U1", 10);
+			assertEquals(10, publisher.getThreshold("U1"));
+			assertEquals(0, publisher.getThreshold("U0"));
+			inventory.setStockEventPublisher(publisher);
+			inventory.adjustQuantity("U0", -11);
+			inventory.adjustQuantity("U1", -1);
+			inventory.adjustQuantities(ImmutableMap.of("U0", -1, "U1", -1));
+		}
+		assertEquals(Collections.singletonList(new StockEvent("U0", 0, 0)),
+				eventsOf(events, "U0"));
+		assertEquals(Collections.singletonList(new StockEvent("U1", 10, 10)), eventsOf(events, "U1"));
+		assertEquals(StockEvent.Type.OUT_OF_STOCK, eventsOf(events, "U0").get(0).getType());
+		assertEquals(StockEvent.Type.LOW_STOCK, eventsOf(events, "U1").get(0).getType());
+	}
+
+	private static List<StockEvent> eventsOf(List<StockEvent> events, String upc) {
+		final List<StockEvent> of = new ArrayList<>();
+		synchronized (events) {
+			for (StockEvent event : events) {
+				if (event.getUpc().equals(upc)) {
+					of.add(event);
+				}
+			}
+		}
+		return of;
+	}
+
+	@Test
+	void testNoPublisher() {
+		final Inventory inventory = inventory(1, 1);
+		final List<StockEvent> events = Collections.synchronizedList(new ArrayList<>());
+		try (StockEventPublisher publisher = new StockEventPublisher(16, 0, events::add)) {
+			inventory.setStockEventPublisher(publisher);
+			inventory.setStockEventPublisher(null);
+			inventory.adjustQuantity("U0", -1);
+		}
+		assertEquals(Collections.emptyList(), events);
+	}
+
+	/**
+	 * verify that sales do not wait for a slow subscriber, and that the triggers
+	 * for a UPC are coalesced into events carrying its latest quantity
+	 */
+	@Test
+	void testSlowSubscriber() {
+		final int products = 20;
+		final int sales = 50_000;
+		final Inventory inventory = inventory(products, 0);
+		final Map<String, StockEvent> latest = new ConcurrentHashMap<>();
+		final int[] delivered = { 0 };
+		final long elapsed;
+		try (StockEventPublisher publisher = new StockEventPublisher(products, 0, event -> {
+			try {
+				// a subscriber that takes 20 ms per event (e.g. a remote call)
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			latest.put(event.getUpc(), event);
+			delivered[0]++;
+		})) {
+			inventory.setStockEventPublisher(publisher);
+			final long start = System.nanoTime();
+			for (int s = 0; s < sales; s++) {
+				inventory.adjustQuantity("U" + (s % products), -1);
+			}
+			elapsed = System.nanoTime() - start;
+			assertEquals(0, publisher.getDroppedCount());
+		}
+		// one event per sale would take the subscriber 1000 seconds
+		assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5), "Expected sales not to wait for the subscriber");
+		assertTrue(delivered[0] < sales / 10, "Expected the triggers to be coalesced: delivered=" + delivered[0]);
+		for (int p = 0; p < products; p++) {
+			assertEquals(-sales / products, latest.get("U" + p).getQuantity());
+		}
+	}
+
+	@Test
+	void testFullRingDropsTriggers() throws InterruptedException {
+		final CountDownLatch accepting = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<StockEvent> events = Collections.synchronizedList(new ArrayList<>());
+		try (StockEventPublisher publisher = new StockEventPublisher(1, 0, event -> {
+			accepting.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			events.add(event);
+		})) {
+			publisher.trigger("A", 0);
+			assertTrue(accepting.await(10, TimeUnit.SECONDS));
+			// the subscriber is busy with A, so B fills the ring
+			publisher.trigger("B", 0);
+			publisher.trigger("B", -1);
+			publisher.trigger("C", 0);
+			assertEquals(1, publisher.getDroppedCount());
+			release.countDown();
+		}
+		assertEquals(2, events.size());
+		assertEquals(new StockEvent("B", -1, 0), events.get(1));
+	}
+
+	@Test
+	void testArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new StockEventPublisher(0, 0, event -> {
+		}));
+		assertThrows(NullPointerException.class, () -> new StockEventPublisher(1, 0, null));
+	}
+}
@@ -0,0 +1,199 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class StockReservationsTest {
+
+	private static final Duration HOLD = Duration.ofMinutes(5);
+
+	private static final Duration TICK = Duration.ofSeconds(1);
+
+	private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+	private Inventory inventory;
+
+	private StockReservations reservations;
+
+	@BeforeEach
+	void setup() {
+		inventory = new Inventory(new Product("A123", "Apple", 0.50, 1.00, 1), new Product("B234", "Peach", 0.35, 0.75, 10));
+		// expired by the test, 64 one second ticks
+		reservations = new StockReservations(inventory, HOLD, TICK, 64, clock::get, false);
+	}
+
+	private void advance(Duration duration) {
+		clock.addAndGet(duration.toNanos());
+		reservations.expire();
+	}
+
+	@Test
+	void testLastUnitReservedOnce() {
+		final StockReservations.Hold first = reservations.open();
+		final StockReservations.Hold second = reservations.open();
+		assertTrue(first.reserve("A123", 1));
+		assertFalse(second.reserve("A123", 1));
+		assertFalse(second.reserve("P9889", 1));
+		assertEquals(1, reservations.getReserved("A123"));
+		assertEquals(0, reservations.getAvailable("A123"));
+		first.release();
+		assertEquals(0, reservations.getReserved("A123"));
+		assertTrue(second.reserve("A123", 1));
+		assertThrows(IllegalStateException.class, () -> first.reserve("A123", 1));
+		assertThrows(IllegalArgumentException.class, () -> second.reserve("A123", 0));
+	}
+
+	@Test
+	void testCommit() {
+		final StockReservations.Hold hold = reservations.open();
+		assertTrue(hold.reserve("B234", 3));
+		assertEquals(7, reservations.getAvailable("B234"));
+		// an item sold without a reservation is decreased too
+		hold.commit(ImmutableMap.of("B234", 3, "A123", 1));
+		assertEquals(0, reservations.getReserved("B234"));
+		assertEquals(7, inventory.find("B234").get().getQuantity());
+		assertEquals(0, inventory.find("A123").get().getQuantity());
+		assertThrows(IllegalStateException.class, () -> hold.commit(ImmutableMap.of()));
+		// releasing a committed hold has no effect
+		hold.release();
+		assertEquals(7, inventory.find("B234").get().getQuantity());
+	}
+
+	@Test
+	void testExpiry() {
+		final StockReservations.Hold abandoned = reservations.open();
+		final StockReservations.Hold active = reservations.open();
+		assertTrue(abandoned.reserve("B234", 4));
+		assertTrue(active.reserve("B234", 1));
+		advance(Duration.ofMinutes(4));
+		// scanning renews the hold
+		assertTrue(active.reserve("B234", 1));
+		advance(Duration.ofMinutes(1).plus(TICK));
+		assertEquals(0, abandoned.getHeld("B234"));
+		assertEquals(2, active.getHeld("B234"));
+		assertEquals(2, reservations.getReserved("B234"));
+		advance(Duration.ofMinutes(5));
+		assertEquals(0, reservations.getReserved("B234"));
+		// an expired hold of an open transaction reserves again
+		assertTrue(abandoned.reserve("B234", 10));
+		assertEquals(0, reservations.getAvailable("B234"));
+	}
+
+	@Test
+	void testExpiryAfterLongPause() {
+		final StockReservations.Hold hold = reservations.open();
+		assertTrue(hold.reserve("B234", 1));
+		// more than a turn of the wheel passes between two visits
+		advance(Duration.ofHours(2));
+		assertEquals(0, reservations.getReserved("B234"));
+	}
+
+	@Test
+	void testManyOpenTransactions() throws Exception {
+		final int products = 100;
+		final int quantity = 50;
+		final int transactions = 10_000;
+		final Product[] stock = new Product[products];
+		for (int p = 0; p < products; p++) {
+			stock[p] = new Product("U" + p, "Product " + p, 0.50, 1.00, quantity);
+		}
+		final Inventory shared = new Inventory(stock);
+		final StockReservations many = new StockReservations(shared, HOLD, TICK, 64, clock::get, false);
+		final ExecutorService service = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < transactions; t++) {
+				final int transaction = t;
+				futures.add(service.submit(() -> {
+					final StockReservations.Hold hold = many.open();
+					int reserved = 0;
+					for (int i = 0; i < 3; i++) {
+						if (hold.reserve("U" + ((transaction + i * 37) % products), 1)) {
+							reserved++;
+						}
+					}
+					return reserved;
+				}));
+			}
+			int reserved = 0;
+			for (Future<Integer> future : futures) {
+				reserved += future.get();
+			}
+			// every unit is reserved exactly once
+			assertEquals(products * quantity, reserved);
+			for (int p = 0; p < products; p++) {
+				assertEquals(quantity, many.getReserved("U" + p));
+			}
+		} finally {
+			service.shutdown();
+		}
+		// every hold expires in the first visit after its deadline
+		clock.addAndGet(HOLD.plus(TICK).toNanos());
+		many.expire();
+		for (int p = 0; p < products; p++) {
+			assertEquals(0, many.getReserved("U" + p));
+			assertEquals(quantity, many.getAvailable("U" + p));
+		}
+	}
+
+	@Test
+	void testCashRegistersShareLastUnit() {
+		final CashRegister first = new CashRegister(reservations);
+		final CashRegister second = new CashRegister(reservations);
+		first.beginTransaction();
+		second.beginTransaction();
+		assertTrue(first.scan("A123"));
+		// the second register still sells the apple in hand, but it is not in stock
+		assertFalse(second.scan("A123"));
+		assertTrue(second.scan("B234"));
+		first.pay(BigDecimal.ONE);
+		assertEquals(0, inventory.find("A123").get().getQuantity());
+		assertEquals(0, reservations.getReserved("A123"));
+		assertEquals(1, reservations.getReserved("B234"));
+		second.pay(BigDecimal.TEN);
+		assertEquals(-1, inventory.find("A123").get().getQuantity());
+		assertEquals(9, inventory.find("B234").get().getQuantity());
+		assertEquals(0, reservations.getReserved("B234"));
+		assertThrows(IllegalArgumentException.class,
+				() -> new CashRegister(new Inventory(), null, reservations));
+	}
+
+	@Test
+	void testArguments() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new StockReservations(inventory, Duration.ofMillis(10), TICK, 64, clock::get, false));
+		assertThrows(IllegalArgumentException.class,
+				() -> new StockReservations(inventory, HOLD, TICK, 60, clock::get, false));
+		assertThrows(NullPointerException.class, () -> new StockReservations(null, HOLD));
+	}
+
+	@Test
+	void testExpiryThread() throws InterruptedException {
+		try (StockReservations timed = new StockReservations(inventory, Duration.ofMillis(200))) {
+			final StockReservations.Hold hold = timed.open();
+			assertTrue(hold.reserve("B234", 5));
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (timed.getReserved("B234") > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals(0, timed.getReserved("B234"));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockTest {
+
+	private Stock stock;
+
+	@BeforeEach
+	void setup() {
+		stock = new Stock(new Product("A123", "Apple", 0.50, 1.00, 100), Replenishment.INITIAL);
+	}
+
+	@Test
+	void testNullProduct() {
+		assertThrows(NullPointerException.class, () -> new Stock(null, Replenishment.INITIAL));
+		assertThrows(NullPointerException.class, () -> new Stock(new Product("A123", "Apple", 0.50, 1.00, 100), null));
+	}
+
+	@Test
+	void testAdjust() {
+		assertEquals(99, stock.adjust(-1, Stock.LATEST));
+		assertEquals(109, stock.adjust(10, Stock.LATEST));
+		assertEquals(109, stock.getQuantity(Stock.LATEST));
+		assertEquals(new Product("A123", "Apple", 0.50, 1.00, 109), stock.snapshot(Stock.LATEST).get());
+	}
+
+	@Test
+	void testMerge() {
+		stock.adjust(-10, Stock.LATEST);
+		stock.merge(new Product("A123", "Applesauce", new BigDecimal("0.55"), new BigDecimal("1.05"), 105),
+				Replenishment.INITIAL, 0);
+		assertEquals(195, stock.getQuantity(Stock.LATEST));
+		assertEquals(new Product("A123", "Applesauce", new BigDecimal("0.55"), new BigDecimal("1.05"), 195),
+				stock.snapshot(Stock.LATEST).get());
+	}
+
+	@Test
+	void testSnapshotReusedUntilQuantityChanges() {
+		final Optional<Product> first = stock.snapshot(0);
+		assertSame(first, stock.snapshot(0), "Expected the snapshot to be reused while the quantity is unchanged");
+		stock.adjust(-1, 0);
+		final Optional<Product> second = stock.snapshot(0);
+		assertEquals(99, second.get().getQuantity());
+		assertSame(second, stock.snapshot(0), "Expected the snapshot to be reused while the quantity is unchanged");
+	}
+
+	@Test
+	void testSnapshotOfAdjustedQuantity() {
+		final int adjusted = stock.adjust(-5, 0);
+		stock.adjust(-5, 0);
+		assertEquals(95, stock.snapshot(0, adjusted).get().getQuantity());
+		assertEquals(90, stock.snapshot(0).get().getQuantity());
+	}
+
+	@Test
+	void testMergeVisibleOnceCommitted() {
+		final Replenishment replenishment = new Replenishment();
+		stock.merge(new Product("A123", "Applesauce", 0.55, 1.05, 105), replenishment, 0);
+		assertEquals(new Product("A123", "Apple", 0.50, 1.00, 100), stock.snapshot(0).get());
+		assertEquals(new Product("A123", "Applesauce", 0.55, 1.05, 205), stock.snapshot(Stock.LATEST).get());
+		replenishment.commit(1);
+		assertEquals(new Product("A123", "Applesauce", 0.55, 1.05, 205), stock.snapshot(1).get());
+		assertEquals(new Product("A123", "Apple", 0.50, 1.00, 100), stock.snapshot(0).get(),
+				"Expected a reader of version 0 not to see the replenishment of version 1");
+		// adjustments are not versioned
+		assertEquals(90, stock.adjust(-10, 0));
+		assertEquals(195, stock.getQuantity(1));
+	}
+
+	@Test
+	void testNewStockVisibleOnceCommitted() {
+		final Replenishment replenishment = new Replenishment();
+		final Stock fresh = new Stock(new Product("B456", "Banana", 0.20, 0.40, 10), replenishment);
+		assertFalse(fresh.isVisible(0));
+		assertEquals(Optional.empty(), fresh.snapshot(0));
+		assertTrue(fresh.isVisible(Stock.LATEST));
+		replenishment.commit(1);
+		assertTrue(fresh.isVisible(1));
+		assertEquals(new Product("B456", "Banana", 0.20, 0.40, 10), fresh.snapshot(1).get());
+	}
+
+	@Test
+	void testMergeCollapsesVersionsSeenByEveryPin() {
+		final Replenishment first = new Replenishment();
+		stock.merge(new Product("A123", "Apple v1", 0.50, 1.00, 1), first, 0);
+		first.commit(1);
+		final Replenishment second = new Replenishment();
+		stock.merge(new Product("A123", "Apple v2", 0.50, 1.00, 10), second, 0);
+		second.commit(2);
+		// version 0 is still pinned, so nothing is collapsed
+		assertEquals(new Product("A123", "Apple", 0.50, 1.00, 100), stock.snapshot(0).get());
+		assertEquals(new Product("A123", "Apple v1", 0.50, 1.00, 101), stock.snapshot(1).get());
+		final Replenishment third = new Replenishment();
+		stock.merge(new Product("A123", "Apple v3", 0.50, 1.00, 1000), third, 2);
+		assertEquals(new Product("A123", "Apple v2", 0.50, 1.00, 111), stock.snapshot(2).get());
+		assertEquals(new Product("A123", "Apple v3", 0.50, 1.00, 1111), stock.snapshot(Stock.LATEST).get());
+		// versions older than the oldest pin read the collapsed records
+		assertEquals(new Product("A123", "Apple v2", 0.50, 1.00, 111), stock.snapshot(0).get());
+		third.commit(3);
+		assertEquals(new Product("A123", "Apple v3", 0.50, 1.00, 1111), stock.snapshot(3).get());
+	}
+}
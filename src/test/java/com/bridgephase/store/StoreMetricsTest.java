@@ -0,0 +1,76 @@
+package com.bridgephase.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class StoreMetricsTest {
+
+	private static final String CSV = "upc,name,wholesalePrice,retailPrice,quantity\n"
+			+ "A123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200\nC123,Milk,2.15,4.50,40";
+
+	@Test
+	void testRecordsRegisterAndInventory() {
+		final StoreMetrics metrics = new StoreMetrics();
+		final Inventory inventory = new Inventory();
+		inventory.setMetrics(metrics);
+		inventory.replenish(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, metrics.getReplenishLatency().getCount());
+		assertEquals(3, metrics.getRowsReplenished());
+		assertTrue(metrics.getRowsPerSecond() > 0);
+
+		final CashRegister register = new CashRegister(inventory);
+		register.setMetrics(metrics);
+		register.beginTransaction();
+		assertTrue(register.scan("A123"));
+		assertTrue(register.scan("B234"));
+		assertFalse(register.scan("Z999"));
+		register.pay(BigDecimal.TEN);
+		register.printReceipt(new ByteArrayOutputStream());
+		assertEquals(3, metrics.getScanLatency().getCount());
+		assertEquals(1, metrics.getUnknownUpcScans());
+		assertEquals(3, metrics.getFindLatency().getCount());
+		assertEquals(1, metrics.getPayLatency().getCount());
+		// a payment adjusts the quantities in one batch
+		assertEquals(0, metrics.getAdjustQuantityLatency().getCount());
+		assertEquals(1, metrics.getPrintReceiptLatency().getCount());
+		assertTrue(metrics.getScanLatency().getMaxNanos() > 0);
+
+		inventory.adjustQuantity("A123", -1);
+		inventory.adjustQuantity("Z999", -1);
+		assertEquals(2, metrics.getAdjustQuantityLatency().getCount());
+
+		// nothing is recorded once metrics are no longer recorded
+		inventory.setMetrics(null);
+		register.setMetrics(null);
+		register.beginTransaction();
+		register.scan("A123");
+		assertEquals(3, metrics.getScanLatency().getCount());
+		assertEquals(3, metrics.getFindLatency().getCount());
+	}
+
+	@Test
+	void testDump() {
+		final StoreMetrics metrics = new StoreMetrics();
+		metrics.getScanLatency().record(1_500);
+		metrics.unknownUpcScanned();
+		final String text = metrics.toText();
+		assertTrue(text.contains("cashRegister.scan count=1 mean=1.5us p50=1.5us p90=1.5us p99=1.5us p99.9=1.5us max=1.5us\n"),
+				text);
+		assertTrue(text.contains("inventory.replenish count=0 "), text);
+		assertTrue(text.contains("cashRegister.unknownUpcScans count=1\n"), text);
+		final String json = metrics.toJson();
+		assertTrue(json.startsWith("{\"cashRegister.scan\":{\"count\":1,\"meanNanos\":1500,\"p50Nanos\":1500,"), json);
+		assertTrue(json.contains("\"p99.9Nanos\":1500,\"maxNanos\":1500}"), json);
+		assertTrue(json.endsWith(
+				"\"cashRegister.unknownUpcScans\":1,\"inventory.rowsReplenished\":0,\"inventory.rowsPerSecond\":0}"),
+				json);
+	}
+}
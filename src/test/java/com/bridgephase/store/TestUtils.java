@@ -2,6 +2,9 @@ package com.bridgephase.store;
 
 import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 class TestUtils {
 
@@ -27,4 +30,48 @@ class TestUtils {
   static ByteArrayInputStream bais(String... lines) {
     return new ByteArrayInputStream(bytes(lines));
   }
+
+  /**
+   * @param products the products
+   * @return a copy of the given products sorted by upc
+   */
+  static List<Product> sorted(List<Product> products) {
+    final List<Product> sorted = new ArrayList<>(products);
+    sorted.sort(Comparator.comparing(Product::getUpc));
+    return sorted;
+  }
+
+  /**
+   * Creates a comma separated inventory of the products numbered from the given
+   * number (inclusive) to the given number (exclusive), whose UPCs are 12 digits
+   * and whose quantities are their numbers modulo 1000.
+   * 
+   * @param from the number of the first product
+   * @param to   the number following that of the last product
+   * @return the comma separated inventory, header included
+   */
+  static String csv(int from, int to) {
+    final StringBuilder csv = new StringBuilder("upc,name,wholesalePrice,retailPrice,quantity\n");
+    for (int p = from; p < to; p++) {
+      csv.append(100_000_000_000L + p).append(",Product ").append(p).append(",0.50,1.00,").append(p % 1000)
+          .append('\n');
+    }
+    return csv.toString();
+  }
+
+  /**
+   * Creates an inventory of the given number of products, with UPCs
+   * <code>U0</code>, <code>U1</code>, ... and the given quantity each.
+   * 
+   * @param products the number of products
+   * @param quantity the quantity of every product
+   * @return the inventory
+   */
+  static Inventory inventory(int products, int quantity) {
+    final Product[] stock = new Product[products];
+    for (int p = 0; p < products; p++) {
+      stock[p] = new Product("U" + p, "Product " + p, 0.50, 1.00, quantity);
+    }
+    return new Inventory(stock);
+  }
 }
@@ -0,0 +1,255 @@
+package com.bridgephase.store;
+
+import static com.bridgephase.store.TestUtils.bigdec;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.bridgephase.store.TransactionJournal.Entry;
+
+class TransactionJournalTest {
+
+	@TempDir
+	Path dir;
+
+	private static Transaction paidTransaction(int quantity, BigDecimal amountPaid) {
+		final Transaction transaction = new Transaction();
+		transaction.add(new Product("A123", "Apple", 0.50, 1.00, 100), quantity);
+		transaction.add(new Product("B234", "Peach", 0.35, 0.75, 200), 1);
+		transaction.pay(amountPaid);
+		return transaction;
+	}
+
+	@Test
+	void testAppendAndRead() throws IOException {
+		final Path path = dir.resolve("journal");
+		final Transaction transaction = paidTransaction(2, new BigDecimal("5.000"));
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(transaction);
+			journal.append(paidTransaction(1, bigdec(10.00)));
+		}
+		final List<Entry> entries = TransactionJournal.read(path);
+		assertEquals(2, entries.size());
+		final Entry entry = entries.get(0);
+		assertEquals(transaction.getPaidAt().toEpochMilli(), entry.getPaidAt().toEpochMilli());
+		assertEquals(Arrays.asList("A123", "B234"), new ArrayList<>(entry.getLineItems().keySet()));
+		assertEquals("Apple", entry.getLineItems().get("A123").getName());
+		assertEquals(bigdec(1.00), entry.getLineItems().get("A123").getPrice());
+		assertEquals(2, entry.getLineItems().get("A123").getQuantity());
+		assertEquals(3, entry.getCount());
+		assertEquals(bigdec(2.75), entry.getTotal());
+		assertEquals(new BigDecimal("5.000"), entry.getPaid());
+		assertEquals(new BigDecimal("2.250"), entry.getChange());
+		assertEquals(bigdec(1.75), entries.get(1).getTotal());
+	}
+
+	@Test
+	void testReopenAppendsToExistingJournal() throws IOException {
+		final Path path = dir.resolve("journal");
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(paidTransaction(1, bigdec(2.00)));
+		}
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(paidTransaction(2, bigdec(3.00)));
+		}
+		final List<Entry> entries = TransactionJournal.read(path);
+		assertEquals(2, entries.size());
+		assertEquals(bigdec(2.75), entries.get(1).getTotal());
+	}
+
+	@Test
+	void testRecoverTornRecord() throws IOException {
+		final Path path = dir.resolve("journal");
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(paidTransaction(1, bigdec(2.00)));
+			journal.append(paidTransaction(2, bigdec(3.00)));
+		}
+		final long size = Files.size(path);
+		// simulate a crash part way through writing the second record
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 5);
+		}
+		assertEquals(1, TransactionJournal.read(path).size());
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(paidTransaction(3, bigdec(4.00)));
+		}
+		final List<Entry> entries = TransactionJournal.read(path);
+		assertEquals(2, entries.size());
+		assertEquals(bigdec(1.75), entries.get(0).getTotal());
+		assertEquals(bigdec(3.75), entries.get(1).getTotal());
+	}
+
+	@Test
+	void testRecoverCorruptRecord() throws IOException {
+		final Path path = dir.resolve("journal");
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			journal.append(paidTransaction(1, bigdec(2.00)));
+			journal.append(paidTransaction(2, bigdec(3.00)));
+		}
+		final byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length - 3] ^= 0xff;
+		Files.write(path, bytes);
+		assertEquals(1, TransactionJournal.read(path).size());
+	}
+
+	@Test
+	void testNotAJournal() throws IOException {
+		final Path path = dir.resolve("inventory.csv");
+		Files.write(path, "upc,name,wholesalePrice,retailPrice,quantity\n".getBytes(StandardCharsets.UTF_8));
+		assertThrows(UncheckedIOException.class, () -> new TransactionJournal(path));
+		assertThrows(UncheckedIOException.class, () -> TransactionJournal.read(path));
+	}
+
+	@Test
+	void testAppendUnpaidOrClosed() throws IOException {
+		final TransactionJournal journal = new TransactionJournal(dir.resolve("journal"));
+		assertThrows(NullPointerException.class, () -> journal.append(null));
+		assertThrows(IllegalArgumentException.class, () -> journal.append(new Transaction()));
+		journal.close();
+		assertThrows(IllegalStateException.class, () -> journal.append(paidTransaction(1, bigdec(2.00))));
+	}
+
+	@Test
+	void testCashRegisterAppendsPaidTransactions() throws IOException {
+		final Path path = dir.resolve("journal");
+		final Inventory inventory = new Inventory();
+		inventory.replenish(new ByteArrayInputStream(
+				"upc,name,wholesalePrice,retailPrice,quantity\nA123,Apple,0.50,1.00,100\nB234,Peach,0.35,0.75,200"
+						.getBytes(StandardCharsets.UTF_8)));
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			final CashRegister register = new CashRegister(inventory, journal);
+			register.beginTransaction();
+			register.scan("A123");
+			register.scan("B234");
+			register.scan("A123");
+			register.pay(bigdec(3.00));
+			register.beginTransaction();
+			register.scan("B234");
+			register.pay(bigdec(1.00));
+		}
+		final List<Entry> entries = TransactionJournal.read(path);
+		assertEquals(2, entries.size());
+		assertEquals(3, entries.get(0).getCount());
+		assertEquals(bigdec(0.25), entries.get(0).getChange());
+		assertEquals(bigdec(0.75), entries.get(1).getTotal());
+	}
+
+	/**
+	 * verify that no paid transaction is lost when many registers append at once
+	 * and that appends are forced in groups of at most one force per sale. The
+	 * append throughput is measured by TransactionJournalBenchmark.
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 8, 32 })
+	void testConcurrentAppend(final int registers) throws IOException {
+		final Path path = dir.resolve("journal-" + registers);
+		final int salesPerRegister = 100;
+		final ExecutorService service = Executors.newFixedThreadPool(registers);
+		final long groups;
+		try (TransactionJournal journal = new TransactionJournal(path)) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			final Collection<Future<?>> futures = new ArrayList<>(registers);
+			for (int r = 0; r < registers; r++) {
+				futures.add(service.submit(() -> {
+					latch.await();
+					for (int i = 0; i < salesPerRegister; i++) {
+						journal.append(paidTransaction(1 + i % 5, bigdec(10.00)));
+					}
+					return null;
+				}));
+			}
+			latch.countDown();
+			for (Future<?> f : futures) {
+				try {
+					f.get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			groups = journal.getGroupCount();
+		} finally {
+			service.shutdown();
+		}
+		final int sales = registers * salesPerRegister;
+		assertEquals(sales, TransactionJournal.read(path).size());
+		assertTrue(groups >= 1 && groups <= sales, "groups=" + groups);
+	}
+
+	/**
+	 * verify that the appends queued while a leader forces its group are forced
+	 * together as the next group: the leader is held in its force until every
+	 * other register has queued its transaction
+	 */
+	@Test
+	void testGroupCommit() throws Exception {
+		final Path path = dir.resolve("journal");
+		final int queued = 16;
+		final CountDownLatch forcing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService service = Executors.newFixedThreadPool(queued + 1);
+		try (TransactionJournal journal = new TransactionJournal(path) {
+			@Override
+			void force(FileChannel channel) throws IOException {
+				if (forcing.getCount() > 0) {
+					forcing.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.force(channel);
+			}
+		}) {
+			final List<Future<?>> futures = new ArrayList<>();
+			futures.add(service.submit(() -> journal.append(paidTransaction(1, bigdec(10.00)))));
+			assertTrue(forcing.await(10, TimeUnit.SECONDS), "Expected the leader to force its group");
+			for (int r = 0; r < queued; r++) {
+				futures.add(service.submit(() -> journal.append(paidTransaction(2, bigdec(10.00)))));
+			}
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (journal.getQueuedCount() < queued && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(queued, journal.getQueuedCount());
+			assertEquals(0, journal.getGroupCount());
+			release.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			// the leader's group and one group of every queued append
+			assertEquals(2, journal.getGroupCount());
+		} finally {
+			release.countDown();
+			service.shutdownNow();
+		}
+		assertEquals(queued + 1, TransactionJournal.read(path).size());
+	}
+}